@@ -0,0 +1,37 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package android.app;
+
+import android.content.Context;
+
+/**
+ * Benchmark stub, see {@link org.actimo.benchmark}.
+ */
+public class Activity extends Context {
+
+	/**
+	 * @return <code>false</code>, the benchmarked activity is never finishing,
+	 *         so that its saved state is kept.
+	 */
+	public boolean isFinishing() {
+		return false;
+	}
+
+	/**
+	 * @return 0, the benchmarked activity is never recreated.
+	 */
+	public int getChangingConfigurations() {
+		return 0;
+	}
+
+	/**
+	 * @return <code>false</code>, so that no stale state files are looked for.
+	 */
+	public boolean isTaskRoot() {
+		return false;
+	}
+
+}
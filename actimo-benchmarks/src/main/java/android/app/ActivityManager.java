@@ -0,0 +1,17 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package android.app;
+
+/**
+ * Benchmark stub, see {@link org.actimo.benchmark}.
+ */
+public class ActivityManager {
+
+	public int getMemoryClass() {
+		return 0;
+	}
+
+}
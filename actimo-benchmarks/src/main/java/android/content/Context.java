@@ -0,0 +1,23 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package android.content;
+
+/**
+ * Benchmark stub, see {@link org.actimo.benchmark}.
+ */
+public class Context {
+
+	public static final String ACTIVITY_SERVICE = "activity";
+
+	/**
+	 * @return <code>null</code>, no service is available, so that
+	 *         <code>MemoryBudget</code> keeps its default budget.
+	 */
+	public Object getSystemService(String name) {
+		return null;
+	}
+
+}
@@ -0,0 +1,16 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package android.content.res;
+
+/**
+ * Benchmark stub, see {@link org.actimo.benchmark}.
+ */
+public class Resources {
+
+	public final class Theme {
+	}
+
+}
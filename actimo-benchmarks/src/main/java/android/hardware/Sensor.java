@@ -0,0 +1,20 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package android.hardware;
+
+/**
+ * Benchmark stub, see {@link org.actimo.benchmark}.
+ */
+public final class Sensor {
+
+	public static final int TYPE_ACCELEROMETER = 1;
+
+	public static final int TYPE_MAGNETIC_FIELD = 2;
+
+	Sensor() {
+	}
+
+}
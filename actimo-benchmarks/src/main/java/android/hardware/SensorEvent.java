@@ -0,0 +1,26 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package android.hardware;
+
+/**
+ * Benchmark stub, see {@link org.actimo.benchmark}. Mirrors the fields and
+ * the package-private constructor of the platform class.
+ */
+public class SensorEvent {
+
+	public final float[] values;
+
+	public Sensor sensor;
+
+	public int accuracy;
+
+	public long timestamp;
+
+	SensorEvent(int size) {
+		values = new float[size];
+	}
+
+}
@@ -0,0 +1,17 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package android.hardware;
+
+/**
+ * Benchmark stub, see {@link org.actimo.benchmark}.
+ */
+public interface SensorEventListener {
+
+	public void onSensorChanged(SensorEvent event);
+
+	public void onAccuracyChanged(Sensor sensor, int accuracy);
+
+}
@@ -0,0 +1,12 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package android.view;
+
+/**
+ * Benchmark stub, see {@link org.actimo.benchmark}.
+ */
+public final class MotionEvent {
+}
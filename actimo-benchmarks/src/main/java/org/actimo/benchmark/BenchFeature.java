@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.benchmark;
+
+import org.actimo.feature.core.AbstractFeature;
+
+import android.app.Dialog;
+import android.os.Bundle;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+/**
+ * A feature implementing the benchmarked callbacks with trivial bodies.
+ * Loaded as a distinct class for every benchmarked instance, see
+ * {@link FeatureClasses}.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public class BenchFeature extends AbstractFeature {
+
+	private int calls;
+
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		calls++;
+	}
+
+	@Override
+	public void onStart() {
+		calls++;
+	}
+
+	@Override
+	public void onResume() {
+		calls++;
+	}
+
+	@Override
+	public void onPause() {
+		calls++;
+	}
+
+	@Override
+	public void onStop() {
+		calls++;
+	}
+
+	@Override
+	public void onDestroy() {
+		calls++;
+	}
+
+	@Override
+	public Dialog onCreateDialog(int id) {
+		calls++;
+		return null;
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		calls++;
+		return false;
+	}
+
+	@Override
+	public boolean onKeyDown(int keyCode, KeyEvent event) {
+		calls++;
+		return false;
+	}
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.actimo.activity.core.FeatureManager;
+import org.actimo.feature.core.Feature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+/**
+ * Throughput of {@link FeatureManager} dispatch for activities with various
+ * numbers of features, every one of them implementing the dispatched
+ * callbacks. Run with <code>-prof gc</code> to see allocations as well.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DispatchBenchmark {
+
+	private static final int KEYCODE_BACK = 4;
+
+	@Param({ "1", "10", "50", "200" })
+	private int featureCount;
+
+	private FeatureManager manager;
+
+	private Class<? extends Feature> lastFeatureClass;
+
+	private MotionEvent motionEvent;
+
+	private KeyEvent keyEvent;
+
+	private int dialogId;
+
+	@Setup
+	public void setUp() {
+		manager = new FeatureManager(new Activity());
+		for (int i = 0; i < featureCount; i++) {
+			Feature feature = FeatureClasses.newFeature();
+			manager.addFeature(feature);
+			lastFeatureClass = feature.getClass();
+		}
+		motionEvent = new MotionEvent();
+		keyEvent = new KeyEvent();
+	}
+
+	/**
+	 * A full pass through the lifecycle of an activity.
+	 */
+	@Benchmark
+	public void lifecycle() {
+		manager.onCreate(null);
+		manager.onStart();
+		manager.onResume();
+		manager.onPause();
+		manager.onStop();
+		manager.onDestroy();
+	}
+
+	@Benchmark
+	public boolean touchEvent() {
+		return manager.onTouchEvent(false, motionEvent);
+	}
+
+	@Benchmark
+	public boolean keyDown() {
+		return manager.onKeyDown(false, KEYCODE_BACK, keyEvent);
+	}
+
+	/**
+	 * Asks every feature, as none of them provides the dialog.
+	 */
+	@Benchmark
+	public Dialog createDialog() {
+		return manager.onCreateDialog(dialogId);
+	}
+
+	/**
+	 * Looks up the most recently added feature.
+	 */
+	@Benchmark
+	public Feature getFeature() {
+		return manager.getFeature(lastFeatureClass);
+	}
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.actimo.feature.core.Feature;
+
+/**
+ * Provides any number of distinct feature classes. The manager keys features
+ * by class, and real activities mix many classes, so every benchmarked
+ * feature is an instance of {@link BenchFeature} defined by its own class
+ * loader.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+final class FeatureClasses {
+
+	private static final String NAME = BenchFeature.class.getName();
+
+	private static final byte[] BYTECODE = readBytecode();
+
+	private FeatureClasses() {
+	}
+
+	/**
+	 * @return a new class, distinct from all the others, with the body of
+	 *         {@link BenchFeature}.
+	 */
+	@SuppressWarnings("unchecked")
+	static Class<? extends Feature> newClass() {
+		try {
+			return (Class<? extends Feature>) new Loader().loadClass(NAME);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return a new instance of a new class.
+	 */
+	static Feature newFeature() {
+		try {
+			return newClass().newInstance();
+		} catch (InstantiationException e) {
+			throw new IllegalStateException(e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] readBytecode() {
+		InputStream in = FeatureClasses.class.getClassLoader()
+				.getResourceAsStream(NAME.replace('.', '/') + ".class");
+		try {
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+				return out.toByteArray();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Defines {@link BenchFeature} itself, delegates everything else.
+	 */
+	private static final class Loader extends ClassLoader {
+
+		Loader() {
+			super(FeatureClasses.class.getClassLoader());
+		}
+
+		@Override
+		protected synchronized Class<?> loadClass(String name, boolean resolve)
+				throws ClassNotFoundException {
+			if (!NAME.equals(name)) {
+				return super.loadClass(name, resolve);
+			}
+
+			Class<?> clazz = findLoadedClass(name);
+			if (clazz == null) {
+				clazz = defineClass(name, BYTECODE, 0, BYTECODE.length);
+			}
+			if (resolve) {
+				resolveClass(clazz);
+			}
+			return clazz;
+		}
+
+	}
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.actimo.feature.impl.misc.OrientationFusion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.hardware.Sensor;
+
+/**
+ * Throughput of the orientation fusion, with accelerometer and magnetic field
+ * samples alternating at 100 Hz each, with and without smoothing. Run with
+ * <code>-prof gc</code> to confirm that nothing is allocated.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OrientationBenchmark {
+
+	private static final int SAMPLES = 1024;
+
+	private static final long PERIOD_NANOS = 5000000L;
+
+	@Param({ "0", "0.1" })
+	private float timeConstant;
+
+	private OrientationFusion fusion;
+
+	private float[] samples;
+
+	private final float[] event = new float[3];
+
+	private int index;
+
+	private long timestamp;
+
+	@Setup
+	public void setUp() {
+		fusion = new OrientationFusion(timeConstant);
+
+		Random random = new Random(42);
+		samples = new float[SAMPLES * 3];
+		for (int i = 0; i < SAMPLES; i++) {
+			float noise = (float) random.nextGaussian() * 0.2f;
+			if (i % 2 == 0) {
+				samples[i * 3] = noise;
+				samples[i * 3 + 1] = 1f + noise;
+				samples[i * 3 + 2] = 9.7f + noise;
+			} else {
+				samples[i * 3] = 5f + noise * 10f;
+				samples[i * 3 + 1] = 20f + noise * 10f;
+				samples[i * 3 + 2] = -40f + noise * 10f;
+			}
+		}
+	}
+
+	/**
+	 * A single sample, every other one completing a fused orientation.
+	 */
+	@Benchmark
+	public float sample() {
+		index = (index + 1) % SAMPLES;
+		timestamp += PERIOD_NANOS;
+		int sensorType = index % 2 == 0 ? Sensor.TYPE_ACCELEROMETER
+				: Sensor.TYPE_MAGNETIC_FIELD;
+		// delivered in an array of its own, as by a sensor event
+		System.arraycopy(samples, index * 3, event, 0, 3);
+		fusion.onSample(sensorType, timestamp, event);
+		return fusion.getOrientation()[0];
+	}
+
+}
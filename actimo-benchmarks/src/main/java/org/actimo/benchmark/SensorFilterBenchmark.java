@@ -0,0 +1,98 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.actimo.feature.impl.misc.SensorFilter;
+import org.actimo.feature.impl.misc.SensorFilters;
+import org.actimo.feature.impl.misc.SensorPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-sample cost of the stock sensor filters, alone and chained, on
+ * three-axis samples at 200 Hz. Run with <code>-prof gc</code> to confirm
+ * that nothing is allocated.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SensorFilterBenchmark {
+
+	private static final int DIMENSION = 3;
+
+	private static final int SAMPLES = 1024;
+
+	private static final long PERIOD_NANOS = 5000000L;
+
+	@Param({ "lowPass", "highPass", "decimation", "median", "threshold",
+			"chain" })
+	private String stage;
+
+	private SensorPipeline pipeline;
+
+	private float[] samples;
+
+	private int index;
+
+	private long timestamp;
+
+	@Setup
+	public void setUp() {
+		SensorFilter[] stages;
+		if ("lowPass".equals(stage)) {
+			stages = new SensorFilter[] { SensorFilters.lowPass(DIMENSION, 0.1f) };
+		} else if ("highPass".equals(stage)) {
+			stages = new SensorFilter[] { SensorFilters.highPass(DIMENSION, 0.1f) };
+		} else if ("decimation".equals(stage)) {
+			stages = new SensorFilter[] { SensorFilters.decimation(4) };
+		} else if ("median".equals(stage)) {
+			stages = new SensorFilter[] { SensorFilters.median(DIMENSION, 5) };
+		} else if ("threshold".equals(stage)) {
+			stages = new SensorFilter[] { SensorFilters.threshold(12f) };
+		} else {
+			stages = new SensorFilter[] { SensorFilters.median(DIMENSION, 5),
+					SensorFilters.highPass(DIMENSION, 0.1f),
+					SensorFilters.decimation(2), SensorFilters.threshold(2f) };
+		}
+		pipeline = new SensorPipeline(DIMENSION, stages);
+
+		Random random = new Random(42);
+		samples = new float[SAMPLES * DIMENSION];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (float) random.nextGaussian() * 3f + (i % 3 == 2 ? 9.81f : 0f);
+		}
+	}
+
+	/**
+	 * A single sample through the pipeline.
+	 */
+	@Benchmark
+	public boolean process() {
+		timestamp += PERIOD_NANOS;
+		index = (index + 1) % SAMPLES;
+		return pipeline.process(timestamp, samples, index * DIMENSION,
+				DIMENSION);
+	}
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.actimo.feature.impl.misc.SensorFilters;
+import org.actimo.feature.impl.misc.SensorPipeline;
+import org.actimo.feature.impl.misc.SensorRecorder;
+import org.actimo.feature.impl.misc.SensorReplay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+
+/**
+ * Cost of a recorded accelerometer stream replayed, without pauses, through
+ * the <code>onSensorChanged()</code> path into a filter pipeline. Pass a
+ * recording made on a device with <code>-p recording=/path/to/file</code>,
+ * otherwise a synthetic one is generated.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SensorReplayBenchmark {
+
+	private static final int SYNTHETIC_SAMPLES = 4096;
+
+	private static final long PERIOD_NANOS = 5000000L;
+
+	@Param({ "" })
+	private String recording;
+
+	private File generated;
+
+	private SensorReplay replay;
+
+	private final SensorPipeline pipeline = new SensorPipeline(3,
+			SensorFilters.median(3, 5), SensorFilters.highPass(3, 0.1f),
+			SensorFilters.threshold(2f));
+
+	private int detected;
+
+	private final SensorEventListener listener = new SensorEventListener() {
+		public void onSensorChanged(SensorEvent event) {
+			if (pipeline.process(event.timestamp, event.values)) {
+				detected++;
+			}
+		}
+
+		public void onAccuracyChanged(Sensor sensor, int accuracy) {
+		}
+	};
+
+	@Setup
+	public void setUp() throws IOException {
+		File source;
+		if (recording.length() > 0) {
+			source = new File(recording);
+		} else {
+			generated = File.createTempFile("actimo-replay", ".bin");
+			SensorRecorder recorder = new SensorRecorder(generated,
+					Sensor.TYPE_ACCELEROMETER, 3);
+			Random random = new Random(42);
+			float[] values = new float[3];
+			for (int i = 0; i < SYNTHETIC_SAMPLES; i++) {
+				values[0] = (float) random.nextGaussian();
+				values[1] = (float) random.nextGaussian();
+				values[2] = 9.81f + (float) random.nextGaussian();
+				recorder.write(i * PERIOD_NANOS, values);
+			}
+			recorder.close();
+			source = generated;
+		}
+		replay = new SensorReplay(source);
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (generated != null) {
+			generated.delete();
+		}
+	}
+
+	/**
+	 * The whole recording, once.
+	 */
+	@Benchmark
+	public int replay() {
+		replay.rewind();
+		pipeline.reset();
+		detected = 0;
+		replay.replay(listener, 0);
+		return detected;
+	}
+
+}
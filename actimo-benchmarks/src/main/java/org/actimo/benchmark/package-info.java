@@ -0,0 +1,18 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+/**
+ * JMH benchmarks of the dispatch engine and of the sensor processing. They
+ * run on a desktop JVM, so the module carries minimal stubs of the Android
+ * classes Actimo's signatures refer to, in place of the SDK jar whose methods
+ * only throw.
+ *
+ * <p>
+ * Build with <code>mvn install</code> in the library directory, then
+ * <code>mvn package</code> here, and run
+ * <code>java -jar target/benchmarks.jar -prof gc</code> for throughput and
+ * allocation rates.
+ */
+package org.actimo.benchmark;
@@ -0,0 +1,451 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Generates a <code>FeatureManager</code> subclass for every activity
+ * annotated with <code>DispatchFeatures</code>. The generated manager keeps a
+ * typed field for each declared feature and calls it directly from every
+ * callback the feature implements, leaving only the callbacks with special
+ * semantics (dialog creation, thumbnails, search, retained instances) to the
+ * base class.
+ *
+ * <p>
+ * Works on element names only, so that the processor does not need the
+ * Android platform on its own classpath.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+@SupportedAnnotationTypes(FeatureManagerProcessor.DISPATCH_FEATURES)
+public class FeatureManagerProcessor extends AbstractProcessor {
+
+	static final String DISPATCH_FEATURES = "org.actimo.activity.core.DispatchFeatures";
+
+	private static final String CORE_PACKAGE = "org.actimo.activity.core";
+	private static final String FEATURE = "org.actimo.feature.core.Feature";
+	private static final String ABSTRACT_FEATURE = "org.actimo.feature.core.AbstractFeature";
+	private static final String FEATURE_ACTIVITY = CORE_PACKAGE
+			+ ".FeatureActivity";
+
+	private static final String SUFFIX = "_FeatureManager";
+
+	/** Feature methods that are not callbacks. */
+	private static final Set<String> NON_CALLBACKS = new HashSet<String>(
+			Arrays.asList("setActivity", "getActivity", "getFeature"));
+
+	/**
+	 * Callbacks with conflict detection, non-OR semantics or per-feature
+	 * saved state, always dispatched by the base manager.
+	 */
+	private static final Set<String> BASE_CALLBACKS = new HashSet<String>(
+			Arrays.asList("onCreateDialog", "onPrepareDialog",
+					"onCreateThumbnail", "onSearchRequested",
+					"onRetainNonConfigurationInstance", "onCreate",
+					"onPostCreate", "onRestoreInstanceState",
+					"onSaveInstanceState"));
+
+	/**
+	 * Input callbacks, which stop at the first consumer under the
+	 * FIRST_CONSUMER dispatch policy.
+	 */
+	private static final Set<String> INPUT_CALLBACKS = new HashSet<String>(
+			Arrays.asList("onTouchEvent", "onTrackballEvent", "onKeyDown",
+					"onKeyUp", "onKeyLongPress", "onKeyMultiple",
+					"onOptionsItemSelected", "onContextItemSelected"));
+
+	private Elements elements;
+	private Types types;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+		elements = processingEnv.getElementUtils();
+		types = processingEnv.getTypeUtils();
+
+		TypeElement annotation = elements.getTypeElement(DISPATCH_FEATURES);
+		TypeElement feature = elements.getTypeElement(FEATURE);
+		if (annotation == null || feature == null) {
+			return false;
+		}
+
+		List<ExecutableElement> callbacks = new ArrayList<ExecutableElement>();
+		for (ExecutableElement method : ElementFilter.methodsIn(feature
+				.getEnclosedElements())) {
+			if (!NON_CALLBACKS.contains(method.getSimpleName().toString())) {
+				callbacks.add(method);
+			}
+		}
+
+		for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+			if (element.getKind() != ElementKind.CLASS
+					|| !isSubtype(element.asType(), FEATURE_ACTIVITY)) {
+				error(element, "@DispatchFeatures may only annotate subclasses of "
+						+ FEATURE_ACTIVITY);
+				continue;
+			}
+
+			TypeElement activity = (TypeElement) element;
+			List<TypeElement> features = declaredFeatures(activity, annotation);
+			if (features == null) {
+				continue;
+			}
+
+			try {
+				generate(activity, features, callbacks);
+			} catch (IOException e) {
+				error(activity, "Unable to write the feature manager: " + e);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the feature classes listed in the annotation, or
+	 *         <code>null</code> if any of them is invalid.
+	 */
+	private List<TypeElement> declaredFeatures(TypeElement activity,
+			TypeElement annotation) {
+		List<TypeElement> features = new ArrayList<TypeElement>();
+		boolean valid = true;
+
+		for (AnnotationMirror mirror : activity.getAnnotationMirrors()) {
+			if (!types.isSameType(mirror.getAnnotationType(),
+					annotation.asType())) {
+				continue;
+			}
+
+			for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror
+					.getElementValues().entrySet()) {
+				@SuppressWarnings("unchecked")
+				List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) entry
+						.getValue().getValue();
+
+				for (AnnotationValue value : values) {
+					TypeElement type = (TypeElement) ((DeclaredType) value
+							.getValue()).asElement();
+
+					if (type.getKind() != ElementKind.CLASS
+							|| type.getModifiers().contains(Modifier.ABSTRACT)) {
+						error(activity, type.getQualifiedName()
+								+ " is not a concrete feature class");
+						valid = false;
+					} else if (features.contains(type)) {
+						error(activity, type.getQualifiedName()
+								+ " is declared more than once");
+						valid = false;
+					} else {
+						features.add(type);
+					}
+				}
+			}
+		}
+
+		return valid ? features : null;
+	}
+
+	private void generate(TypeElement activity, List<TypeElement> features,
+			List<ExecutableElement> callbacks) throws IOException {
+		String packageName = elements.getPackageOf(activity).getQualifiedName()
+				.toString();
+		String simpleName = managerName(activity, packageName);
+		String qualifiedName = packageName.length() == 0 ? simpleName
+				: packageName + "." + simpleName;
+
+		// which of the callbacks each feature implements
+		boolean[][] implemented = new boolean[features.size()][callbacks.size()];
+		for (int i = 0; i < features.size(); i++) {
+			for (int j = 0; j < callbacks.size(); j++) {
+				implemented[i][j] = implementsCallback(features.get(i),
+						callbacks.get(j));
+			}
+		}
+
+		PrintWriter out = new PrintWriter(processingEnv.getFiler()
+				.createSourceFile(qualifiedName, activity).openWriter());
+		try {
+			if (packageName.length() != 0) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			out.println("import " + CORE_PACKAGE + ".DispatchPolicy;");
+			out.println("import " + CORE_PACKAGE + ".FeatureCallback;");
+			out.println("import " + CORE_PACKAGE + ".FeatureManager;");
+			out.println("import " + FEATURE + ";");
+			out.println();
+			out.println("/**");
+			out.println(" * Feature manager for {@link "
+					+ activity.getQualifiedName() + "}.");
+			out.println(" * Generated by " + getClass().getName()
+					+ ", do not edit.");
+			out.println(" */");
+			out.println("public class " + simpleName
+					+ " extends FeatureManager {");
+			out.println();
+
+			for (int i = 0; i < features.size(); i++) {
+				out.println("\tprivate " + features.get(i).getQualifiedName()
+						+ " feature" + i + ";");
+			}
+			out.println();
+
+			out.println("\tpublic " + simpleName + "(android.app.Activity act) {");
+			out.println("\t\tsuper(act);");
+			out.println("\t}");
+			out.println();
+
+			writeBind(out, features, callbacks, implemented);
+			writeUnbind(out, features);
+
+			for (int j = 0; j < callbacks.size(); j++) {
+				ExecutableElement callback = callbacks.get(j);
+				if (!isStatic(callback)) {
+					continue;
+				}
+
+				boolean used = false;
+				for (int i = 0; i < features.size(); i++) {
+					used |= implemented[i][j];
+				}
+				if (used) {
+					writeCallback(out, callback, features, implemented, j);
+				}
+			}
+
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeBind(PrintWriter out, List<TypeElement> features,
+			List<ExecutableElement> callbacks, boolean[][] implemented) {
+		out.println("\t@Override");
+		out.println("\tprotected long bind(Feature feature) {");
+		for (int i = 0; i < features.size(); i++) {
+			String type = features.get(i).getQualifiedName().toString();
+
+			StringBuilder mask = new StringBuilder();
+			for (int j = 0; j < callbacks.size(); j++) {
+				if (implemented[i][j] && !isStatic(callbacks.get(j))) {
+					if (mask.length() != 0) {
+						mask.append("\n\t\t\t\t\t| ");
+					}
+					mask.append("FeatureCallback.")
+							.append(constantName(callbacks.get(j)))
+							.append(".mask()");
+				}
+			}
+			if (mask.length() == 0) {
+				mask.append("0L");
+			}
+
+			out.println("\t\tif (feature" + i + " == null && feature.getClass() == "
+					+ type + ".class) {");
+			out.println("\t\t\tfeature" + i + " = (" + type + ") feature;");
+			out.println("\t\t\treturn " + mask + ";");
+			out.println("\t\t}");
+		}
+		out.println("\t\treturn super.bind(feature);");
+		out.println("\t}");
+		out.println();
+	}
+
+	private void writeUnbind(PrintWriter out, List<TypeElement> features) {
+		out.println("\t@Override");
+		out.println("\tprotected void unbind(Feature feature) {");
+		for (int i = 0; i < features.size(); i++) {
+			out.println("\t\tif (feature == feature" + i + ") {");
+			out.println("\t\t\tfeature" + i + " = null;");
+			out.println("\t\t\treturn;");
+			out.println("\t\t}");
+		}
+		out.println("\t\tsuper.unbind(feature);");
+		out.println("\t}");
+		out.println();
+	}
+
+	private void writeCallback(PrintWriter out, ExecutableElement callback,
+			List<TypeElement> features, boolean[][] implemented, int index) {
+		boolean returnsValue = callback.getReturnType().getKind() == TypeKind.BOOLEAN;
+		String name = callback.getSimpleName().toString();
+
+		StringBuilder params = new StringBuilder();
+		StringBuilder args = new StringBuilder();
+		if (returnsValue) {
+			params.append("boolean value");
+		}
+		int p = 0;
+		for (VariableElement parameter : callback.getParameters()) {
+			if (params.length() != 0) {
+				params.append(", ");
+			}
+			if (args.length() != 0) {
+				args.append(", ");
+			}
+			params.append(types.erasure(parameter.asType())).append(" p")
+					.append(p);
+			args.append("p").append(p);
+			p++;
+		}
+
+		out.println("\t@Override");
+		out.println("\tpublic " + (returnsValue ? "boolean " : "void ") + name
+				+ "(" + params + ") {");
+
+		// features added or removed by the features called here are brought
+		// up or down once the whole dispatch has finished
+		out.println("\t\tenterDispatch();");
+		out.println("\t\ttry {");
+
+		// only the features consume input, the value passed in is the
+		// result of the default handling of the activity
+		boolean input = INPUT_CALLBACKS.contains(name);
+		String result = input ? "consumed" : "value";
+		if (input) {
+			out.println("\t\t\tfinal boolean stop = getDispatchPolicy() == DispatchPolicy.FIRST_CONSUMER;");
+			out.println("\t\t\tboolean consumed = false;");
+		}
+		for (int i = 0; i < features.size(); i++) {
+			if (!implemented[i][index]) {
+				continue;
+			}
+			out.println("\t\t\tif (feature" + i + " != null) {");
+			out.println("\t\t\t\t" + (returnsValue ? result + " |= " : "")
+					+ "feature" + i + "." + name + "(" + args + ");");
+			if (input) {
+				out.println("\t\t\t\tif (consumed && stop) {");
+				out.println("\t\t\t\t\treturn true;");
+				out.println("\t\t\t\t}");
+			}
+			out.println("\t\t\t}");
+		}
+		String value = input ? "value | consumed" : "value";
+		String superArgs = returnsValue ? (args.length() == 0 ? value
+				: value + ", " + args) : args.toString();
+		out.println("\t\t\t" + (returnsValue ? "return " : "") + "super."
+				+ name + "(" + superArgs + ");");
+		out.println("\t\t} finally {");
+		out.println("\t\t\texitDispatch();");
+		out.println("\t\t}");
+		out.println("\t}");
+		out.println();
+	}
+
+	/**
+	 * @return <code>true</code> if the generated manager dispatches the
+	 *         callback itself.
+	 */
+	private boolean isStatic(ExecutableElement callback) {
+		TypeKind returnKind = callback.getReturnType().getKind();
+		return (returnKind == TypeKind.VOID || returnKind == TypeKind.BOOLEAN)
+				&& !BASE_CALLBACKS.contains(callback.getSimpleName().toString());
+	}
+
+	/**
+	 * Mirrors the introspection done by the runtime: a feature implements a
+	 * callback if a class between it and AbstractFeature declares it. Features
+	 * not derived from AbstractFeature implement everything.
+	 */
+	private boolean implementsCallback(TypeElement feature,
+			ExecutableElement callback) {
+		if (!isSubtype(feature.asType(), ABSTRACT_FEATURE)) {
+			return true;
+		}
+
+		TypeElement current = feature;
+		while (!current.getQualifiedName().contentEquals(ABSTRACT_FEATURE)) {
+			for (ExecutableElement method : ElementFilter.methodsIn(current
+					.getEnclosedElements())) {
+				if (sameSignature(method, callback)) {
+					return true;
+				}
+			}
+			current = (TypeElement) types.asElement(current.getSuperclass());
+		}
+		return false;
+	}
+
+	private boolean sameSignature(ExecutableElement a, ExecutableElement b) {
+		if (!a.getSimpleName().contentEquals(b.getSimpleName())
+				|| a.getParameters().size() != b.getParameters().size()) {
+			return false;
+		}
+		for (int i = 0; i < a.getParameters().size(); i++) {
+			if (!types.isSameType(
+					types.erasure(a.getParameters().get(i).asType()),
+					types.erasure(b.getParameters().get(i).asType()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isSubtype(TypeMirror type, String superType) {
+		TypeElement superElement = elements.getTypeElement(superType);
+		return superElement != null
+				&& types.isSubtype(types.erasure(type),
+						types.erasure(superElement.asType()));
+	}
+
+	/**
+	 * @return the FeatureCallback constant for the callback, e.g.
+	 *         <code>ON_TOUCH_EVENT</code> for <code>onTouchEvent</code>.
+	 */
+	private static String constantName(ExecutableElement callback) {
+		return callback.getSimpleName().toString()
+				.replaceAll("([A-Z])", "_$1").toUpperCase(Locale.ENGLISH);
+	}
+
+	private static String managerName(TypeElement activity, String packageName) {
+		String name = activity.getQualifiedName().toString();
+		if (packageName.length() != 0) {
+			name = name.substring(packageName.length() + 1);
+		}
+		return name.replace('.', '_') + SUFFIX;
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+	}
+
+}
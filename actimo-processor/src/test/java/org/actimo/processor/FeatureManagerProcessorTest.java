@@ -0,0 +1,297 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.processor;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import junit.framework.Assert;
+
+import org.actimo.activity.core.DispatchPolicy;
+import org.actimo.activity.core.FeatureCallback;
+import org.actimo.activity.core.FeatureManager;
+import org.actimo.feature.core.AbstractFeature;
+import org.actimo.feature.core.Feature;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+/**
+ * Compiles a sample activity with the processor, and checks the generated
+ * feature manager. The manager is run without an activity, so that the stub
+ * Android platform is never called.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public class FeatureManagerProcessorTest {
+
+	private static final String SAMPLE = "package sample;\n"
+			+ "import org.actimo.activity.core.DispatchFeatures;\n"
+			+ "import org.actimo.activity.core.FeatureActivity;\n"
+			+ "import org.actimo.activity.core.FeatureManager;\n"
+			+ "import org.actimo.processor.FeatureManagerProcessorTest;\n"
+			+ "@DispatchFeatures({ FeatureManagerProcessorTest.Consuming.class,\n"
+			+ "		FeatureManagerProcessorTest.Counting.class,\n"
+			+ "		FeatureManagerProcessorTest.Quiet.class,\n"
+			+ "		FeatureManagerProcessorTest.Creating.class })\n"
+			+ "public class SampleActivity extends FeatureActivity {\n"
+			+ "	@Override\n"
+			+ "	protected FeatureManager createFeatureManager() {\n"
+			+ "		return new SampleActivity_FeatureManager(this);\n"
+			+ "	}\n"
+			+ "	@Override\n"
+			+ "	protected void initializeFeatures() {\n"
+			+ "	}\n"
+			+ "}\n";
+
+	private static File outputDir;
+
+	private static Class<?> managerClass;
+
+	private FeatureManager manager;
+
+	private Consuming consuming;
+
+	private Counting counting;
+
+	private Quiet quiet;
+
+	@BeforeClass
+	public static void compileSample() throws Exception {
+		outputDir = File.createTempFile("actimo-processor", "");
+		Assert.assertTrue(outputDir.delete() && outputDir.mkdir());
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		StandardJavaFileManager files = compiler.getStandardFileManager(
+				diagnostics, null, null);
+		files.setLocation(StandardLocation.CLASS_OUTPUT,
+				Collections.singleton(outputDir));
+		files.setLocation(StandardLocation.SOURCE_OUTPUT,
+				Collections.singleton(outputDir));
+
+		JavaFileObject source = new SimpleJavaFileObject(
+				URI.create("string:///sample/SampleActivity.java"),
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return SAMPLE;
+			}
+		};
+		CompilationTask task = compiler.getTask(null, files, diagnostics,
+				Arrays.asList("-classpath", System.getProperty("java.class.path")),
+				null, Collections.singleton(source));
+		task.setProcessors(Collections.singleton(new FeatureManagerProcessor()));
+		boolean compiled = task.call();
+		files.close();
+		Assert.assertTrue(diagnostics.getDiagnostics().toString(), compiled);
+
+		ClassLoader loader = new URLClassLoader(
+				new URL[] { outputDir.toURI().toURL() },
+				FeatureManagerProcessorTest.class.getClassLoader());
+		managerClass = loader.loadClass("sample.SampleActivity_FeatureManager");
+	}
+
+	@AfterClass
+	public static void deleteOutput() {
+		delete(outputDir);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		manager = (FeatureManager) managerClass.getConstructor(Activity.class)
+				.newInstance((Activity) null);
+		consuming = new Consuming();
+		counting = new Counting();
+		quiet = new Quiet();
+		manager.addFeature(consuming);
+		manager.addFeature(counting);
+		manager.addFeature(quiet);
+	}
+
+	@Test
+	public void testDeclaredFeaturesHaveTypedFields() throws Exception {
+		Assert.assertSame(FeatureManager.class, managerClass.getSuperclass());
+		Assert.assertSame(consuming, field(0).get(manager));
+		Assert.assertSame(Consuming.class, field(0).getType());
+		Assert.assertSame(Counting.class, field(1).getType());
+		Assert.assertSame(Quiet.class, field(2).getType());
+
+		manager.removeFeature(counting);
+		Assert.assertNull(field(1).get(manager));
+		Assert.assertSame(quiet, field(2).get(manager));
+	}
+
+	@Test
+	public void testBindMasksMatchIntrospection() throws Exception {
+		Method bind = managerClass.getDeclaredMethod("bind", Feature.class);
+		bind.setAccessible(true);
+		Method subscriptions = FeatureCallback.class.getDeclaredMethod(
+				"subscriptionsOf", Class.class);
+		subscriptions.setAccessible(true);
+		FeatureManager fresh = (FeatureManager) managerClass.getConstructor(
+				Activity.class).newInstance((Activity) null);
+
+		// the callbacks called directly are left out
+		Assert.assertEquals(0L, bind.invoke(fresh, new Consuming()));
+		Assert.assertEquals(0L, bind.invoke(fresh, new Quiet()));
+		Assert.assertEquals(FeatureCallback.ON_CREATE.mask(),
+				bind.invoke(fresh, new Creating()));
+
+		// the field is taken, or the class is not declared
+		Assert.assertEquals(subscriptions.invoke(null, Consuming.class),
+				bind.invoke(fresh, new Consuming()));
+		Assert.assertEquals(subscriptions.invoke(null, CountingSubclass.class),
+				bind.invoke(fresh, new CountingSubclass()));
+	}
+
+	@Test
+	public void testDispatchReachesDeclaredAndOtherFeatures() throws Exception {
+		CountingSubclass other = new CountingSubclass();
+		manager.addFeature(other);
+
+		Assert.assertFalse(manager.onTouchEvent(false, null));
+		Assert.assertEquals(1, consuming.touches);
+		Assert.assertEquals(1, counting.touches);
+		Assert.assertEquals(1, other.touches);
+
+		Assert.assertFalse(manager.onKeyDown(false, 0, null));
+		Assert.assertEquals(1, counting.keys);
+		Assert.assertEquals(1, other.keys);
+	}
+
+	@Test
+	public void testFirstConsumerReturnsEarly() throws Exception {
+		CountingSubclass other = new CountingSubclass();
+		manager.addFeature(other);
+		consuming.consume = true;
+
+		Assert.assertTrue(manager.onTouchEvent(false, null));
+		Assert.assertEquals(1, counting.touches);
+		Assert.assertEquals(1, other.touches);
+
+		manager.setDispatchPolicy(DispatchPolicy.FIRST_CONSUMER);
+		Assert.assertTrue(manager.onTouchEvent(false, null));
+		Assert.assertEquals(2, consuming.touches);
+		Assert.assertEquals(1, counting.touches);
+		Assert.assertEquals(1, other.touches);
+
+		// the features declared later stop the dispatch as well
+		consuming.consume = false;
+		counting.consume = true;
+		Assert.assertTrue(manager.onTouchEvent(false, null));
+		Assert.assertEquals(2, counting.touches);
+		Assert.assertEquals(1, other.touches);
+
+		// handled by the activity as well, which does not stop the features
+		counting.consume = false;
+		Assert.assertTrue(manager.onTouchEvent(true, null));
+		Assert.assertEquals(3, counting.touches);
+		Assert.assertEquals(2, other.touches);
+	}
+
+	@Test
+	public void testRemovalDuringDispatchWaitsForItToFinish() throws Exception {
+		consuming.onTouch = new Runnable() {
+			public void run() {
+				manager.removeFeature(counting);
+			}
+		};
+
+		// still reached, like the features dispatched by the base manager
+		Assert.assertFalse(manager.onTouchEvent(false, null));
+		Assert.assertEquals(1, counting.touches);
+		Assert.assertNull(field(1).get(manager));
+		Assert.assertNull(counting.getActivity());
+
+		consuming.onTouch = null;
+		manager.onTouchEvent(false, null);
+		Assert.assertEquals(1, counting.touches);
+	}
+
+	private Field field(int index) throws NoSuchFieldException {
+		Field field = managerClass.getDeclaredField("feature" + index);
+		field.setAccessible(true);
+		return field;
+	}
+
+	public static class Counting extends AbstractFeature {
+		int touches;
+		int keys;
+		boolean consume;
+
+		@Override
+		public boolean onTouchEvent(MotionEvent event) {
+			touches++;
+			return consume;
+		}
+
+		@Override
+		public boolean onKeyDown(int keyCode, KeyEvent event) {
+			keys++;
+			return false;
+		}
+	}
+
+	public static class Consuming extends AbstractFeature {
+		int touches;
+		boolean consume;
+		Runnable onTouch;
+
+		@Override
+		public boolean onTouchEvent(MotionEvent event) {
+			touches++;
+			if (onTouch != null) {
+				onTouch.run();
+			}
+			return consume;
+		}
+	}
+
+	public static class Quiet extends AbstractFeature {}
+
+	public static class Creating extends Consuming {
+		@Override
+		public void onCreate(Bundle savedInstanceState) {
+		}
+	}
+
+	/** Not declared, hence dispatched by the base manager. */
+	public static class CountingSubclass extends Counting {}
+
+}
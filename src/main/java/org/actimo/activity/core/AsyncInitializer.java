@@ -0,0 +1,109 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.actimo.feature.core.AsyncInitFeature;
+
+/**
+ * Runs {@link AsyncInitFeature#onCreateAsync()} of a set of features on a
+ * bounded worker pool shared by all activities, and waits for completion.
+ * 
+ * @author m.koziarkiewicz
+ * 
+ */
+final class AsyncInitializer {
+
+	private static final int POOL_SIZE = Math.max(1,
+			Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	private static Executor executor;
+
+	private final CountDownLatch done;
+
+	private volatile Throwable failure;
+
+	private volatile AsyncInitFeature failedFeature;
+
+	/**
+	 * Starts the initialization of the given features.
+	 * 
+	 * @param features
+	 *            the features
+	 */
+	AsyncInitializer(AsyncInitFeature[] features) {
+		done = new CountDownLatch(features.length);
+		Executor executor = getExecutor();
+		for (final AsyncInitFeature feature : features) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						feature.onCreateAsync();
+					} catch (Throwable t) {
+						failedFeature = feature;
+						failure = t;
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Blocks until all the features are initialized.
+	 * 
+	 * @throws RuntimeException
+	 *             if the initialization of any feature failed
+	 */
+	void await() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (failure != null) {
+			throw new RuntimeException("Asynchronous initialization of "
+					+ failedFeature.getClass().getSimpleName() + " failed",
+					failure);
+		}
+	}
+
+	private static synchronized Executor getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0,
+					TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "actimo-init-"
+									+ count.incrementAndGet());
+							thread.setDaemon(true);
+							thread.setPriority(Thread.NORM_PRIORITY - 1);
+							return thread;
+						}
+					});
+		}
+		return executor;
+	}
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import org.actimo.feature.core.Feature;
+
+/**
+ * Maps dialog ids to the features owning them. An open-addressing table with
+ * primitive keys, so that lookups neither box nor allocate.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+final class DialogRoutes {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private int[] ids;
+	private Feature[] owners;
+	private int size;
+
+	DialogRoutes() {
+		ids = new int[INITIAL_CAPACITY];
+		owners = new Feature[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * @param id
+	 *            the dialog id
+	 * @return the owner, or <code>null</code> if none.
+	 */
+	Feature get(int id) {
+		if (size == 0) {
+			return null;
+		}
+		int mask = ids.length - 1;
+		for (int i = hash(id) & mask; owners[i] != null; i = (i + 1) & mask) {
+			if (ids[i] == id) {
+				return owners[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param id
+	 *            the dialog id
+	 * @param owner
+	 *            the owner
+	 * @return the previous owner, or <code>null</code> if none.
+	 */
+	Feature put(int id, Feature owner) {
+		if ((size + 1) * 4 > ids.length * 3) {
+			resize(ids.length * 2);
+		}
+		int mask = ids.length - 1;
+		int i = hash(id) & mask;
+		while (owners[i] != null) {
+			if (ids[i] == id) {
+				Feature previous = owners[i];
+				owners[i] = owner;
+				return previous;
+			}
+			i = (i + 1) & mask;
+		}
+		ids[i] = id;
+		owners[i] = owner;
+		size++;
+		return null;
+	}
+
+	/**
+	 * @param id
+	 *            the dialog id
+	 * @return the removed owner, or <code>null</code> if none.
+	 */
+	Feature remove(int id) {
+		int mask = ids.length - 1;
+		int i = hash(id) & mask;
+		while (owners[i] != null && ids[i] != id) {
+			i = (i + 1) & mask;
+		}
+		Feature removed = owners[i];
+		if (removed == null) {
+			return null;
+		}
+
+		// shift back the entries of the same probe sequence
+		int gap = i;
+		for (int j = (gap + 1) & mask; owners[j] != null; j = (j + 1) & mask) {
+			int home = hash(ids[j]) & mask;
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				ids[gap] = ids[j];
+				owners[gap] = owners[j];
+				gap = j;
+			}
+		}
+		owners[gap] = null;
+		size--;
+		return removed;
+	}
+
+	private void resize(int capacity) {
+		int[] oldIds = ids;
+		Feature[] oldOwners = owners;
+		ids = new int[capacity];
+		owners = new Feature[capacity];
+		size = 0;
+		for (int i = 0; i < oldOwners.length; i++) {
+			if (oldOwners[i] != null) {
+				put(oldIds[i], oldOwners[i]);
+			}
+		}
+	}
+
+	static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.actimo.feature.core.Feature;
+
+/**
+ * Declares the features a {@link FeatureActivity} adds in
+ * {@link FeatureActivity#initializeFeatures()}, so that the actimo-processor
+ * annotation processor can generate a dedicated {@link FeatureManager}
+ * subclass for it.
+ *
+ * <p>
+ * The generated class is named after the activity, with the
+ * <code>_FeatureManager</code> suffix (nested class names are joined with
+ * <code>_</code>), and calls the declared features directly, in the declared
+ * order, for every callback they implement. No introspection happens when the
+ * declared features are added. Features of other classes, including
+ * subclasses of the declared ones, are dispatched as usual, after the
+ * declared ones.
+ *
+ * <p>
+ * The activity has to return the generated manager itself:
+ *
+ * <pre>
+ * &#064;DispatchFeatures({ MyListFeature.class, KeepAwakeFeature.class })
+ * public class MyActivity extends FeatureActivity {
+ *
+ * 	&#064;Override
+ * 	protected FeatureManager createFeatureManager() {
+ * 		return new MyActivity_FeatureManager(this);
+ * 	}
+ * 	...
+ * }
+ * </pre>
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface DispatchFeatures {
+
+	/**
+	 * @return the concrete feature classes added by the activity.
+	 */
+	Class<? extends Feature>[] value();
+
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+/**
+ * Determines how {@link FeatureManager} dispatches input callbacks, i.e.
+ * touch, trackball and key events, as well as options and context menu item
+ * selection.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public enum DispatchPolicy {
+
+	/**
+	 * Every feature receives the event, the results are OR-ed. The default.
+	 */
+	BROADCAST,
+
+	/**
+	 * Features receive the event in the order of their priority, dispatch stops
+	 * at the first one that returns <code>true</code>. {@link FeatureActivity}
+	 * dispatches the event to the features before its own default handling,
+	 * which only happens if no feature has consumed it.
+	 */
+	FIRST_CONSUMER;
+
+}
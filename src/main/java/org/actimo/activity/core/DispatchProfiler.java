@@ -0,0 +1,249 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.actimo.feature.core.Feature;
+
+/**
+ * Collects invocation counts and latency histograms of feature callbacks, per
+ * feature class and callback. Obtained from
+ * {@link FeatureManager#getProfiler()} once profiling has been enabled.
+ *
+ * <p>
+ * All the storage is allocated when a feature class is first profiled, so
+ * recording a sample allocates nothing. Not thread-safe: samples are recorded
+ * on the UI thread, so snapshots and resets should be done there as well.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public final class DispatchProfiler {
+
+	/**
+	 * Upper bounds (exclusive) of the histogram buckets, in nanoseconds. The
+	 * last bucket, past the last bound, is open.
+	 */
+	private static final long[] BUCKET_BOUNDS = { 1000L, 4000L, 16000L,
+			64000L, 256000L, 1000000L, 4000000L, 16000000L, 64000000L };
+
+	/** Number of histogram buckets. */
+	public static final int BUCKET_COUNT = BUCKET_BOUNDS.length + 1;
+
+	private static final int CALLBACK_COUNT = FeatureCallback.values().length;
+
+	private final Map<Class<? extends Feature>, Integer> slots = new HashMap<Class<? extends Feature>, Integer>();
+
+	private final List<Class<? extends Feature>> slotClasses = new ArrayList<Class<? extends Feature>>();
+
+	/** Indexed by <code>slot * CALLBACK_COUNT + callback</code>. */
+	private long[] counts = new long[0];
+	private long[] totalNanos = new long[0];
+	private long[] maxNanos = new long[0];
+
+	/**
+	 * Indexed by
+	 * <code>(slot * CALLBACK_COUNT + callback) * BUCKET_COUNT + bucket</code>.
+	 */
+	private long[] histograms = new long[0];
+
+	DispatchProfiler() {
+	}
+
+	/**
+	 * @param featureClass
+	 *            the feature class
+	 * @return the storage slot of the class, allocated if necessary.
+	 */
+	int slotFor(Class<? extends Feature> featureClass) {
+		Integer slot = slots.get(featureClass);
+		if (slot != null) {
+			return slot;
+		}
+
+		int newSlot = slotClasses.size();
+		slots.put(featureClass, newSlot);
+		slotClasses.add(featureClass);
+
+		int size = (newSlot + 1) * CALLBACK_COUNT;
+		counts = grow(counts, size);
+		totalNanos = grow(totalNanos, size);
+		maxNanos = grow(maxNanos, size);
+		histograms = grow(histograms, size * BUCKET_COUNT);
+		return newSlot;
+	}
+
+	/**
+	 * Arrays.copyOf() is not available before Android 2.3.
+	 */
+	private static long[] grow(long[] array, int size) {
+		long[] grown = new long[size];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/**
+	 * Records a single invocation.
+	 *
+	 * @param slot
+	 *            the slot of the feature class
+	 * @param callback
+	 *            the ordinal of the callback
+	 * @param nanos
+	 *            the duration
+	 */
+	void record(int slot, int callback, long nanos) {
+		int index = slot * CALLBACK_COUNT + callback;
+		counts[index]++;
+		totalNanos[index] += nanos;
+		if (nanos > maxNanos[index]) {
+			maxNanos[index] = nanos;
+		}
+
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS.length && nanos >= BUCKET_BOUNDS[bucket]) {
+			bucket++;
+		}
+		histograms[index * BUCKET_COUNT + bucket]++;
+	}
+
+	/**
+	 * Clears all the collected data.
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		Arrays.fill(totalNanos, 0);
+		Arrays.fill(maxNanos, 0);
+		Arrays.fill(histograms, 0);
+	}
+
+	/**
+	 * @return the data collected so far, for every (feature class, callback)
+	 *         pair invoked at least once.
+	 */
+	public List<Record> snapshot() {
+		List<Record> records = new ArrayList<Record>();
+		FeatureCallback[] callbacks = FeatureCallback.values();
+		for (int slot = 0; slot < slotClasses.size(); slot++) {
+			for (int callback = 0; callback < CALLBACK_COUNT; callback++) {
+				int index = slot * CALLBACK_COUNT + callback;
+				if (counts[index] == 0) {
+					continue;
+				}
+				long[] histogram = new long[BUCKET_COUNT];
+				System.arraycopy(histograms, index * BUCKET_COUNT, histogram,
+						0, BUCKET_COUNT);
+				records.add(new Record(slotClasses.get(slot),
+						callbacks[callback], counts[index], totalNanos[index],
+						maxNanos[index], histogram));
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Writes a human-readable report of the collected data, the most expensive
+	 * entries first.
+	 *
+	 * @param writer
+	 *            the target
+	 */
+	public void dump(PrintWriter writer) {
+		List<Record> records = snapshot();
+		Record[] sorted = records.toArray(new Record[records.size()]);
+		Arrays.sort(sorted, new Comparator<Record>() {
+			public int compare(Record a, Record b) {
+				return a.totalNanos < b.totalNanos ? 1
+						: (a.totalNanos == b.totalNanos ? 0 : -1);
+			}
+		});
+
+		writer.print("feature callback count total[us] mean[us] max[us] histogram(<");
+		for (long bound : BUCKET_BOUNDS) {
+			writer.print(' ');
+			writer.print(bound / 1000);
+		}
+		writer.println(" us, rest)");
+
+		for (Record record : sorted) {
+			writer.print(record.featureClass.getName());
+			writer.print(' ');
+			writer.print(record.callback);
+			writer.print(' ');
+			writer.print(record.count);
+			writer.print(' ');
+			writer.print(record.totalNanos / 1000);
+			writer.print(' ');
+			writer.print(record.totalNanos / record.count / 1000);
+			writer.print(' ');
+			writer.print(record.maxNanos / 1000);
+			writer.print(' ');
+			writer.println(Arrays.toString(record.histogram));
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Collected data for a single (feature class, callback) pair.
+	 */
+	public static final class Record {
+
+		private final Class<? extends Feature> featureClass;
+		private final FeatureCallback callback;
+		private final long count;
+		private final long totalNanos;
+		private final long maxNanos;
+		private final long[] histogram;
+
+		Record(Class<? extends Feature> featureClass, FeatureCallback callback,
+				long count, long totalNanos, long maxNanos, long[] histogram) {
+			this.featureClass = featureClass;
+			this.callback = callback;
+			this.count = count;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+			this.histogram = histogram;
+		}
+
+		public Class<? extends Feature> getFeatureClass() {
+			return featureClass;
+		}
+
+		public FeatureCallback getCallback() {
+			return callback;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		/**
+		 * @return the invocation counts per latency bucket; the bounds are
+		 *         1, 4, 16, 64, 256 microseconds, 1, 4, 16, 64 milliseconds,
+		 *         the last bucket holds everything slower.
+		 */
+		public long[] getHistogram() {
+			return histogram.clone();
+		}
+
+	}
+
+}
@@ -6,6 +6,7 @@
 package org.actimo.activity.core;
 
 import org.actimo.feature.core.Feature;
+import org.actimo.feature.core.FeatureFactory;
 
 import android.app.Activity;
 import android.app.Dialog;
@@ -39,10 +40,31 @@ public abstract class FeatureActivity extends Activity implements
 	 */
 	public FeatureActivity() {
 		super();
-		featureManager = new FeatureManager(this);
+		featureManager = createFeatureManager();
 		initializeFeatures();
 	}
 
+	/**
+	 * Creates the manager dispatching callbacks to the features. Called from
+	 * the constructor, before {@link #initializeFeatures()}. Override to
+	 * return the manager generated for activities annotated with
+	 * {@link DispatchFeatures}.
+	 * 
+	 * @return the feature manager
+	 */
+	protected FeatureManager createFeatureManager() {
+		return new FeatureManager(this);
+	}
+
+	/**
+	 * @return whether input callbacks reach the features before the default
+	 *         handling of the activity, which then only happens if no
+	 *         feature has consumed them.
+	 */
+	private boolean featuresFirst() {
+		return featureManager.getDispatchPolicy() == DispatchPolicy.FIRST_CONSUMER;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -54,6 +76,28 @@ public abstract class FeatureActivity extends Activity implements
 		featureManager.addFeature(feature);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.actimo.activity.IFeatureActivity#addFeature(org.actimo.feature.core
+	 * .Feature, int)
+	 */
+	public final void addFeature(Feature feature, int priority) {
+		featureManager.addFeature(feature, priority);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.actimo.activity.IFeatureActivity#addFeature(java.lang.Class,
+	 * org.actimo.feature.core.FeatureFactory)
+	 */
+	public final <T extends Feature> void addFeature(Class<T> clazz,
+			FeatureFactory<? extends T> factory) {
+		featureManager.addFeature(clazz, factory);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -75,6 +119,9 @@ public abstract class FeatureActivity extends Activity implements
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
+		featureManager.reattachRetainedFeatures(super
+				.getLastNonConfigurationInstance());
+		featureManager.startInitialization();
 		featureManager.onCreate(savedInstanceState);
 
 	}
@@ -88,6 +135,7 @@ public abstract class FeatureActivity extends Activity implements
 	@Override
 	protected void onPostCreate(Bundle savedInstanceState) {
 		super.onPostCreate(savedInstanceState);
+		featureManager.awaitInitialization();
 		featureManager.onPostCreate(savedInstanceState);
 	}
 
@@ -122,9 +170,12 @@ public abstract class FeatureActivity extends Activity implements
 		featureManager.onSaveInstanceState(outState);
 	}
 
-	@SuppressWarnings("unchecked")
 	public <T extends Feature> T getFeature(Class<T> clazz) {
-		return (T) featureManager.getFeatures().get(clazz);
+		return featureManager.getFeature(clazz);
+	}
+
+	public <T> T[] getFeatures(Class<T> clazz) {
+		return featureManager.getFeatures(clazz);
 	}
 
 	@Override
@@ -243,6 +294,10 @@ public abstract class FeatureActivity extends Activity implements
 
 	@Override
 	public boolean onContextItemSelected(MenuItem item) {
+		if (featuresFirst()) {
+			return featureManager.onContextItemSelected(false, item)
+					|| super.onContextItemSelected(item);
+		}
 		return featureManager.onContextItemSelected(
 				super.onContextItemSelected(item), item);
 	}
@@ -291,12 +346,20 @@ public abstract class FeatureActivity extends Activity implements
 
 	@Override
 	public boolean onKeyDown(int keyCode, KeyEvent event) {
+		if (featuresFirst()) {
+			return featureManager.onKeyDown(false, keyCode, event)
+					|| super.onKeyDown(keyCode, event);
+		}
 		return featureManager.onKeyDown(super.onKeyDown(keyCode, event),
 				keyCode, event);
 	}
 
 	@Override
 	public boolean onKeyLongPress(int keyCode, KeyEvent event) {
+		if (featuresFirst()) {
+			return featureManager.onKeyLongPress(false, keyCode, event)
+					|| super.onKeyLongPress(keyCode, event);
+		}
 		return featureManager.onKeyLongPress(
 				super.onKeyLongPress(keyCode, event), keyCode, event);
 	}
@@ -304,6 +367,10 @@ public abstract class FeatureActivity extends Activity implements
 	@Override
 	public boolean onKeyMultiple(int keyCode, int repeatCount, KeyEvent event) {
 
+		if (featuresFirst()) {
+			return featureManager.onKeyMultiple(false, keyCode, repeatCount,
+					event) || super.onKeyMultiple(keyCode, repeatCount, event);
+		}
 		return featureManager.onKeyMultiple(
 				super.onKeyMultiple(keyCode, repeatCount, event), keyCode,
 				repeatCount, event);
@@ -312,6 +379,10 @@ public abstract class FeatureActivity extends Activity implements
 	@Override
 	public boolean onKeyUp(int keyCode, KeyEvent event) {
 
+		if (featuresFirst()) {
+			return featureManager.onKeyUp(false, keyCode, event)
+					|| super.onKeyUp(keyCode, event);
+		}
 		return featureManager.onKeyUp(super.onKeyUp(keyCode, event), keyCode,
 				event);
 	}
@@ -347,6 +418,10 @@ public abstract class FeatureActivity extends Activity implements
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 
+		if (featuresFirst()) {
+			return featureManager.onOptionsItemSelected(false, item)
+					|| super.onOptionsItemSelected(item);
+		}
 		return featureManager.onOptionsItemSelected(
 				super.onOptionsItemSelected(item), item);
 	}
@@ -387,6 +462,23 @@ public abstract class FeatureActivity extends Activity implements
 				.onRetainNonConfigurationInstance());
 	}
 
+	/**
+	 * @return the object retained by the activity itself, without the
+	 *         objects retained by its features.
+	 * @see FeatureManager#onRetainNonConfigurationInstance(Object)
+	 */
+	@Override
+	public Object getLastNonConfigurationInstance() {
+		return RetainedInstance.activityInstance(super
+				.getLastNonConfigurationInstance());
+	}
+
+	public Object getLastNonConfigurationInstance(
+			Class<? extends Feature> clazz) {
+		return RetainedInstance.featureInstance(
+				super.getLastNonConfigurationInstance(), clazz);
+	}
+
 	@Override
 	public boolean onSearchRequested() {
 
@@ -403,12 +495,20 @@ public abstract class FeatureActivity extends Activity implements
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
 
+		if (featuresFirst()) {
+			return featureManager.onTouchEvent(false, event)
+					|| super.onTouchEvent(event);
+		}
 		return featureManager.onTouchEvent(super.onTouchEvent(event), event);
 	}
 
 	@Override
 	public boolean onTrackballEvent(MotionEvent event) {
 
+		if (featuresFirst()) {
+			return featureManager.onTrackballEvent(false, event)
+					|| super.onTrackballEvent(event);
+		}
 		return featureManager.onTrackballEvent(super.onTrackballEvent(event),
 				event);
 	}
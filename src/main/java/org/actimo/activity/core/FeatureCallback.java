@@ -0,0 +1,173 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.actimo.feature.core.AbstractFeature;
+import org.actimo.feature.core.Feature;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.content.Intent;
+import android.content.res.Configuration;
+import android.content.res.Resources.Theme;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.view.ContextMenu;
+import android.view.ContextMenu.ContextMenuInfo;
+import android.view.KeyEvent;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.WindowManager.LayoutParams;
+
+/**
+ * The callbacks {@link FeatureManager} dispatches to features. Used to index
+ * features by the callbacks they actually implement, so that dispatch skips
+ * the no-op implementations inherited from {@link AbstractFeature}.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public enum FeatureCallback {
+
+	ON_CREATE("onCreate", Bundle.class),
+	ON_CREATE_DIALOG("onCreateDialog", int.class),
+	ON_DESTROY("onDestroy"),
+	ON_PAUSE("onPause"),
+	ON_POST_CREATE("onPostCreate", Bundle.class),
+	ON_POST_RESUME("onPostResume"),
+	ON_PREPARE_DIALOG("onPrepareDialog", int.class, Dialog.class),
+	ON_RESTART("onRestart"),
+	ON_RESTORE_INSTANCE_STATE("onRestoreInstanceState", Bundle.class),
+	ON_RESUME("onResume"),
+	ON_SAVE_INSTANCE_STATE("onSaveInstanceState", Bundle.class),
+	ON_START("onStart"),
+	ON_STOP("onStop"),
+	ON_ACTIVITY_RESULT("onActivityResult", int.class, int.class, Intent.class),
+	ON_APPLY_THEME_RESOURCE("onApplyThemeResource", Theme.class, int.class,
+			boolean.class),
+	ON_ATTACHED_TO_WINDOW("onAttachedToWindow"),
+	ON_BACK_PRESSED("onBackPressed"),
+	ON_CHILD_TITLE_CHANGED("onChildTitleChanged", Activity.class,
+			CharSequence.class),
+	ON_CONFIGURATION_CHANGED("onConfigurationChanged", Configuration.class),
+	ON_CONTENT_CHANGED("onContentChanged"),
+	ON_CONTEXT_MENU_CLOSED("onContextMenuClosed", Menu.class),
+	ON_CREATE_CONTEXT_MENU("onCreateContextMenu", ContextMenu.class,
+			View.class, ContextMenuInfo.class),
+	ON_DETACHED_FROM_WINDOW("onDetachedFromWindow"),
+	ON_LOW_MEMORY("onLowMemory"),
+	ON_NEW_INTENT("onNewIntent", Intent.class),
+	ON_OPTIONS_MENU_CLOSED("onOptionsMenuClosed", Menu.class),
+	ON_PANEL_CLOSED("onPanelClosed", int.class, Menu.class),
+	ON_TITLE_CHANGED("onTitleChanged", CharSequence.class, int.class),
+	ON_USER_INTERACTION("onUserInteraction"),
+	ON_USER_LEAVE_HINT("onUserLeaveHint"),
+	ON_WINDOW_ATTRIBUTES_CHANGED("onWindowAttributesChanged",
+			LayoutParams.class),
+	ON_WINDOW_FOCUS_CHANGED("onWindowFocusChanged", boolean.class),
+	ON_CONTEXT_ITEM_SELECTED("onContextItemSelected", MenuItem.class),
+	ON_CREATE_OPTIONS_MENU("onCreateOptionsMenu", Menu.class),
+	ON_CREATE_THUMBNAIL("onCreateThumbnail", Bitmap.class, Canvas.class),
+	ON_MENU_ITEM_SELECTED("onMenuItemSelected", int.class, MenuItem.class),
+	ON_MENU_OPENED("onMenuOpened", int.class, Menu.class),
+	ON_OPTIONS_ITEM_SELECTED("onOptionsItemSelected", MenuItem.class),
+	ON_TRACKBALL_EVENT("onTrackballEvent", MotionEvent.class),
+	ON_TOUCH_EVENT("onTouchEvent", MotionEvent.class),
+	ON_SEARCH_REQUESTED("onSearchRequested"),
+	ON_RETAIN_NON_CONFIGURATION_INSTANCE("onRetainNonConfigurationInstance"),
+	ON_CREATE_PANEL_MENU("onCreatePanelMenu", int.class, Menu.class),
+	ON_KEY_DOWN("onKeyDown", int.class, KeyEvent.class),
+	ON_KEY_LONG_PRESS("onKeyLongPress", int.class, KeyEvent.class),
+	ON_KEY_MULTIPLE("onKeyMultiple", int.class, int.class, KeyEvent.class),
+	ON_KEY_UP("onKeyUp", int.class, KeyEvent.class),
+	ON_PREPARE_PANEL("onPreparePanel", int.class, View.class, Menu.class),
+	ON_PREPARE_OPTIONS_MENU("onPrepareOptionsMenu", Menu.class);
+
+	/** Mask with every callback set. */
+	static final long ALL = (1L << values().length) - 1;
+
+	/** Introspection results, shared between all managers. */
+	private static final Map<Class<?>, Long> MASK_CACHE = new HashMap<Class<?>, Long>();
+
+	private final String methodName;
+
+	private final Class<?>[] parameterTypes;
+
+	private FeatureCallback(String methodName, Class<?>... parameterTypes) {
+		this.methodName = methodName;
+		this.parameterTypes = parameterTypes;
+	}
+
+	/**
+	 * @return the bit representing this callback in a subscription mask.
+	 */
+	public long mask() {
+		return 1L << ordinal();
+	}
+
+	/**
+	 * @param mask
+	 *            a subscription mask
+	 * @return <code>true</code> if this callback is set in the given mask.
+	 */
+	boolean isIn(long mask) {
+		return (mask & mask()) != 0;
+	}
+
+	/**
+	 * Computes the callbacks the given feature class actually implements, i.e.
+	 * does not inherit from {@link AbstractFeature}. Features not derived from
+	 * {@link AbstractFeature} are considered to implement every callback. The
+	 * result is cached per class.
+	 *
+	 * @param clazz
+	 *            the feature class
+	 * @return the subscription mask
+	 */
+	static long subscriptionsOf(Class<? extends Feature> clazz) {
+		synchronized (MASK_CACHE) {
+			Long cached = MASK_CACHE.get(clazz);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		long mask;
+		if (!AbstractFeature.class.isAssignableFrom(clazz)) {
+			mask = ALL;
+		} else {
+			mask = 0;
+			for (FeatureCallback callback : values()) {
+				if (callback.isOverriddenBy(clazz)) {
+					mask |= callback.mask();
+				}
+			}
+		}
+
+		synchronized (MASK_CACHE) {
+			MASK_CACHE.put(clazz, mask);
+		}
+		return mask;
+	}
+
+	private boolean isOverriddenBy(Class<?> clazz) {
+		try {
+			Method method = clazz.getMethod(methodName, parameterTypes);
+			return method.getDeclaringClass() != AbstractFeature.class;
+		} catch (NoSuchMethodException e) {
+			// cannot happen for Feature implementations, stay on the safe side
+			return true;
+		}
+	}
+
+}
@@ -5,14 +5,23 @@
  */
 package org.actimo.activity.core;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.actimo.feature.core.AsyncInitFeature;
+import org.actimo.feature.core.ConfigurationStableFeature;
+import org.actimo.feature.core.DialogOwnerFeature;
 import org.actimo.feature.core.Feature;
+import org.actimo.feature.core.FeatureFactory;
 
 import android.app.Activity;
 import android.app.Dialog;
@@ -46,466 +55,1825 @@ public class FeatureManager {
 	 */
 	private static final String CONFLICT_MSG = "Another feature or the activity provides this functionality, conflict class: ";
 	
-	/** The feature map and list. */
-	private List<Feature> features;
+	private static final Feature[] NO_FEATURES = new Feature[0];
+	
+	/** See {@link #addMemoryListener(MemoryListener)}. */
+	private static final List<MemoryListener> MEMORY_LISTENERS = new CopyOnWriteArrayList<MemoryListener>();
+	
+	/**
+	 * The number of started activities of all the managers, to tell when the
+	 * application goes to the background. Only touched on the main thread;
+	 * package-private for the tests.
+	 */
+	static int startedActivities;
+	
+	/**
+	 * The lifecycle states of the activity, as far as features created late
+	 * need to know.
+	 */
+	private enum Lifecycle {
+		INITIALIZED, CREATED, STARTED, RESUMED, DESTROYED
+	}
+	
+	/**
+	 * The feature map and list. The list is a snapshot, replaced on every
+	 * addition and removal.
+	 */
+	private Feature[] features;
 	private Map<Class<? extends Feature>,Feature> featureMap;
 	private Activity act;
 	
+	/** Features registered with a factory and not created yet. */
+	private Map<Class<? extends Feature>, LazyFeature> lazyFeatures;
+	
+	/** Lifecycle tracking, used to bring lazily created features up to date. */
+	private Lifecycle lifecycle;
+	private Bundle savedInstanceState;
+	private Bundle restoredInstanceState;
+	private boolean postCreated;
+	private boolean postResumed;
+	
+	/**
+	 * Classes of the features put in place by
+	 * {@link #reattachRetainedFeatures(Object)}, which are skipped by the
+	 * following {@link #onCreate(Bundle)}; <code>null</code> if none.
+	 */
+	private Set<Class<? extends Feature>> reattached;
+	
+	/** Whether this manager is counted in {@link #startedActivities}. */
+	private boolean started;
+	
+	/** Whether {@link #startInitialization()} has been called. */
+	private boolean initializationStarted;
+	
+	/** Asynchronous initialization in progress, <code>null</code> if none. */
+	private AsyncInitializer initializer;
+	
+	/**
+	 * The features subscribed to each callback, indexed by
+	 * {@link FeatureCallback#ordinal()}. The arrays are never modified in
+	 * place, only replaced, so features added or removed during a dispatch
+	 * take part from the next one on.
+	 */
+	private Feature[][] subscribers;
+	
+	/** The callbacks each feature is subscribed to. */
+	private Map<Feature, Long> masks;
+	
+	/** The saved states of the features. */
+	private FeatureStates states;
+	
+	/** Owners of dialogs, see {@link DialogOwnerFeature}. */
+	private DialogRoutes dialogRoutes;
+	
+	/**
+	 * Results of {@link #getFeatures(Class)}, by requested type. Cleared
+	 * whenever the feature set changes.
+	 */
+	private Map<Class<?>, Object[]> lookupCache;
+	
+	/** Priorities of the features, higher ones are dispatched to first. */
+	private Map<Feature, Integer> priorities;
+	
+	private DispatchPolicy dispatchPolicy;
+	
+	/**
+	 * Cached <code>dispatchPolicy == FIRST_CONSUMER</code>, checked in the input
+	 * dispatch loops.
+	 */
+	private boolean stopOnConsume;
+	
+	/** Collects the dispatch timings, <code>null</code> until first enabled. */
+	private DispatchProfiler profiler;
+	
+	/**
+	 * The timing wrappers swapped into the subscriber arrays, by feature;
+	 * <code>null</code> while profiling is disabled.
+	 */
+	private Map<Feature, ProfilingFeature> wrappers;
+	
+	/** The number of dispatches in progress, nested ones included. */
+	private int dispatchDepth;
+	
+	/**
+	 * Features added during a dispatch, waiting for the lifecycle callbacks
+	 * they missed until the outermost dispatch has finished.
+	 */
+	private List<Feature> pendingAdditions;
+	
+	/**
+	 * Features removed during a dispatch, waiting to be brought down until the
+	 * outermost dispatch has finished.
+	 */
+	private List<Feature> pendingRemovals;
+	
+	/**
+	 * Create a new instance of the manager.
+	 * @param act the activity to attach to.
+	 */
+	public FeatureManager(Activity act) {
+		features = NO_FEATURES;
+		featureMap = new HashMap<Class<? extends Feature>, Feature>();
+		lazyFeatures = new HashMap<Class<? extends Feature>, LazyFeature>();
+		lifecycle = Lifecycle.INITIALIZED;
+		subscribers = new Feature[FeatureCallback.values().length][];
+		Arrays.fill(subscribers, NO_FEATURES);
+		priorities = new IdentityHashMap<Feature, Integer>();
+		masks = new IdentityHashMap<Feature, Long>();
+		lookupCache = new HashMap<Class<?>, Object[]>();
+		dialogRoutes = new DialogRoutes();
+		states = new FeatureStates(act);
+		dispatchPolicy = DispatchPolicy.BROADCAST;
+		pendingAdditions = new ArrayList<Feature>();
+		pendingRemovals = new ArrayList<Feature>();
+		this.act = act;
+	}
+	
+	/**
+	 * Registers a listener, process-wide, for the memory held for the
+	 * activities to be given back. Thread-safe.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public static void addMemoryListener(MemoryListener listener) {
+		MEMORY_LISTENERS.add(listener);
+	}
+	
+	/**
+	 * Unregisters a listener registered with
+	 * {@link #addMemoryListener(MemoryListener)}. Thread-safe.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public static void removeMemoryListener(MemoryListener listener) {
+		MEMORY_LISTENERS.remove(listener);
+	}
+	
+	/**
+	 * @return the policy used to dispatch input callbacks.
+	 */
+	public DispatchPolicy getDispatchPolicy() {
+		return dispatchPolicy;
+	}
+	
+	/**
+	 * Sets the policy used to dispatch input callbacks. Usually called from
+	 * {@link FeatureActivity#initializeFeatures()}.
+	 * @param dispatchPolicy the new policy
+	 */
+	public void setDispatchPolicy(DispatchPolicy dispatchPolicy) {
+		if (dispatchPolicy == null) {
+			throw new IllegalArgumentException("The dispatch policy may not be null");
+		}
+		this.dispatchPolicy = dispatchPolicy;
+		stopOnConsume = dispatchPolicy == DispatchPolicy.FIRST_CONSUMER;
+	}
+	
+	
+	/**
+	 * Enables or disables profiling of the callbacks dispatched by this
+	 * manager. While enabled, every callback is timed per feature, see
+	 * {@link #getProfiler()}. The collected data is kept when profiling is
+	 * disabled, and extended when it is enabled again.
+	 * 
+	 * <p>
+	 * Callbacks that generated managers (see {@link DispatchFeatures}) call
+	 * directly are not profiled.
+	 * 
+	 * @param enabled
+	 *            whether to profile
+	 */
+	public void setProfilingEnabled(boolean enabled) {
+		if (enabled == (wrappers != null)) {
+			return;
+		}
+
+		if (enabled) {
+			if (profiler == null) {
+				profiler = new DispatchProfiler();
+			}
+			wrappers = new IdentityHashMap<Feature, ProfilingFeature>();
+		} else {
+			for (ProfilingFeature wrapper : wrappers.values()) {
+				priorities.remove(wrapper);
+			}
+			wrappers = null;
+		}
+
+		for (int i = 0; i < subscribers.length; i++) {
+			Feature[] updated = new Feature[subscribers[i].length];
+			for (int j = 0; j < updated.length; j++) {
+				Feature target = subscribers[i][j];
+				if (target instanceof ProfilingFeature) {
+					target = ((ProfilingFeature) target).getDelegate();
+				}
+				updated[j] = dispatchTarget(target);
+			}
+			subscribers[i] = updated.length == 0 ? NO_FEATURES : updated;
+		}
+	}
+	
+	/**
+	 * @return whether callbacks are being profiled.
+	 */
+	public boolean isProfilingEnabled() {
+		return wrappers != null;
+	}
+	
+	/**
+	 * @return the collected profiling data, or <code>null</code> if profiling
+	 *         has never been enabled.
+	 */
+	public DispatchProfiler getProfiler() {
+		return profiler;
+	}
+	
+	/**
+	 * Enables or disables measuring the size of the state each feature saves,
+	 * see {@link #getSavedStateSizes()}. Measuring marshals every state once
+	 * more.
+	 * 
+	 * @param enabled
+	 *            whether to measure
+	 */
+	public void setStateAccountingEnabled(boolean enabled) {
+		states.setAccountingEnabled(enabled);
+	}
+	
+	/**
+	 * @return the marshaled size, in bytes, of the state each feature saved
+	 *         in the last {@link #onSaveInstanceState(Bundle)}, by feature
+	 *         class; empty unless state accounting or spilling is enabled.
+	 */
+	public Map<Class<? extends Feature>, Integer> getSavedStateSizes() {
+		return Collections.unmodifiableMap(states.getSizes());
+	}
+	
+	/**
+	 * Sets the size above which the state of a feature is written to an
+	 * app-private file instead of the bundle of the activity, keeping the
+	 * bundle small and quick to marshal. Such a state is read back when the
+	 * feature first receives it, and the file is deleted once a later save, or
+	 * the finishing of the activity, supersedes it. Files left behind by dead
+	 * processes are deleted when the root activity of a task is first created.
+	 * If the file cannot be written, the state stays in the bundle; if it
+	 * cannot be read, the feature receives an empty state.
+	 * 
+	 * <p>
+	 * The files are written and read synchronously, on the main thread, while
+	 * the activity saves and restores its state.
+	 * 
+	 * @param bytes
+	 *            the threshold, or <code>0</code> to never spill, the default
+	 */
+	public void setStateSpillThreshold(int bytes) {
+		states.setSpillThreshold(bytes);
+	}
+	
+	/**
+	 * @param saved
+	 *            the bundle of the activity
+	 * @param target
+	 *            an element of a subscriber array
+	 * @return the state of the feature: a bundle of its own, nested in the
+	 *         one of the activity, so that the keys of different features
+	 *         never collide. <code>null</code> if the activity has no saved
+	 *         state.
+	 */
+	private Bundle stateOf(Bundle saved, Feature target) {
+		return states.get(saved, featureClass(target));
+	}
+	
+	/**
+	 * @param clazz
+	 *            the feature class
+	 * @return the state a feature of the class is created with, see
+	 *         {@link #stateOf(Bundle, Feature)}.
+	 */
+	final Bundle savedStateOf(Class<? extends Feature> clazz) {
+		return states.get(savedInstanceState, clazz);
+	}
+	
+	/**
+	 * Add a feature to the collection, with the default priority of 0.
+	 * 
+	 * @param feature
+	 *            the new Feature
+	 * @throws UnsupportedOperationException
+	 *             if the contributor is already installed or shared with
+	 *             another activity.
+	 * @throws IllegalStateException
+	 *             if the method is unable the set the serviced activity.
+	 */
+	public final void addFeature(Feature feature) {
+		addFeature(feature, 0);
+	}
+	
+	/**
+	 * Add a feature to the collection. Features with higher priority receive
+	 * callbacks first, features with equal priority in the order of addition.
+	 * 
+	 * <p>
+	 * A feature added after {@link #onCreate(Bundle)}, e.g. when the screen
+	 * changes, first receives the lifecycle callbacks it missed, up to the
+	 * current state of the activity. A feature added from inside a callback
+	 * receives them once the outermost dispatch in progress has finished, so
+	 * that the state it catches up with includes that callback.
+	 * 
+	 * @param feature
+	 *            the new Feature
+	 * @param priority
+	 *            the dispatch priority
+	 * @throws UnsupportedOperationException
+	 *             if the contributor is already installed or shared with
+	 *             another activity.
+	 * @throws IllegalStateException
+	 *             if the method is unable the set the serviced activity, or
+	 *             the activity is already destroyed.
+	 * @see DispatchPolicy#FIRST_CONSUMER
+	 */
+	public final void addFeature(Feature feature, int priority) {
+		checkNotIncluded(feature.getClass());
+		checkNotDestroyed(feature.getClass());
+		// removed during the same dispatch, and not brought down yet
+		boolean readded = pendingRemovals.remove(feature);
+		if (readded) {
+			// still bound, see removeFeature(Feature)
+			unbind(feature);
+		} else {
+			attach(feature);
+		}
+		checkDialogNotOwned(feature);
+		if (!readded && initializationStarted
+				&& feature instanceof AsyncInitFeature) {
+			// too late to run in parallel with anything
+			((AsyncInitFeature) feature).onCreateAsync();
+		}
+
+		featureMap.put(feature.getClass(),feature);
+		lookupCache.clear();
+		priorities.put(feature, priority);
+		features = insert(features, feature);
+		subscribe(feature, routeDialogs(feature, bind(feature)));
+
+		if (readded) {
+			return;
+		}
+		if (dispatchDepth > 0) {
+			pendingAdditions.add(feature);
+		} else {
+			replayLifecycle(feature);
+		}
+	}
+	
+	/**
+	 * Register a feature to be created on first use, with the default priority
+	 * of 0.
+	 * 
+	 * @see #addFeature(Class, FeatureFactory, int)
+	 */
+	public final <T extends Feature> void addFeature(Class<T> clazz,
+			FeatureFactory<? extends T> factory) {
+		addFeature(clazz, factory, 0);
+	}
+	
+	/**
+	 * Register a feature to be created on first use: the first call to
+	 * {@link #getFeature(Class)} for it, or the first callback it implements.
+	 * On creation, the feature receives the lifecycle callbacks it missed, up
+	 * to the current state of the activity.
+	 * 
+	 * @param clazz
+	 *            the feature class; the factory has to create instances of
+	 *            exactly this class
+	 * @param factory
+	 *            creates the feature
+	 * @param priority
+	 *            the dispatch priority
+	 * @throws UnsupportedOperationException
+	 *             if a feature of this class is already included.
+	 */
+	public final <T extends Feature> void addFeature(Class<T> clazz,
+			FeatureFactory<? extends T> factory, int priority) {
+		checkNotIncluded(clazz);
+
+		LazyFeature placeholder = new LazyFeature(this, clazz, factory);
+		lazyFeatures.put(clazz, placeholder);
+		lookupCache.clear();
+		priorities.put(placeholder, priority);
+		features = insert(features, placeholder);
+		subscribe(placeholder, FeatureCallback.subscriptionsOf(clazz));
+	}
+	
+	/**
+	 * Get the given feature, creating it if it was registered with a factory.
+	 * If no feature is of exactly the given class, the first one, in dispatch
+	 * order, of a class extending or implementing it is returned.
+	 * @param <T> the feature type
+	 * @param clazz the feature's class object, or a supertype of it
+	 * @return the feature instance, or <code>null</code> if not attached.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Feature> T getFeature(Class<T> clazz) {
+		Feature feature = featureMap.get(clazz);
+		if (feature == null) {
+			LazyFeature placeholder = lazyFeatures.get(clazz);
+			if (placeholder != null) {
+				feature = materialize(placeholder);
+			} else {
+				T[] matches = getFeatures(clazz);
+				feature = matches.length == 0 ? null : matches[0];
+			}
+		}
+		return (T) feature;
+	}
+	
+	/**
+	 * Get all the features of a class extending or implementing the given
+	 * one, creating those registered with a factory. The result is cached
+	 * until the feature set changes, so repeated lookups are cheap.
+	 * @param <T> the requested type
+	 * @param clazz the requested type's class object
+	 * @return the matching features, in dispatch order; shared, must not be
+	 *         modified.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T[] getFeatures(Class<T> clazz) {
+		Object[] matches = lookupCache.get(clazz);
+		if (matches != null) {
+			return (T[]) matches;
+		}
+
+		if (!lazyFeatures.isEmpty()) {
+			LazyFeature[] placeholders = lazyFeatures.values().toArray(
+					new LazyFeature[lazyFeatures.size()]);
+			for (LazyFeature placeholder : placeholders) {
+				if (clazz.isAssignableFrom(placeholder.getFeatureClass())) {
+					materialize(placeholder);
+				}
+			}
+		}
+
+		int count = 0;
+		for (Feature feature : features) {
+			if (clazz.isInstance(feature)) {
+				count++;
+			}
+		}
+		matches = (Object[]) Array.newInstance(clazz, count);
+		count = 0;
+		for (Feature feature : features) {
+			if (clazz.isInstance(feature)) {
+				matches[count++] = feature;
+			}
+		}
+
+		lookupCache.put(clazz, matches);
+		return (T[]) matches;
+	}
+	
+	/**
+	 * Creates the feature a placeholder stands for, and replaces the
+	 * placeholder with it.
+	 * 
+	 * @param placeholder
+	 *            the placeholder
+	 * @return the created feature
+	 * @throws IllegalStateException
+	 *             if the activity is already destroyed, or the factory
+	 *             misbehaves
+	 */
+	final Feature materialize(LazyFeature placeholder) {
+		if (placeholder.getInstance() != null) {
+			return placeholder.getInstance();
+		}
+
+		Class<? extends Feature> clazz = placeholder.getFeatureClass();
+		checkNotDestroyed(clazz);
+
+		Feature feature = placeholder.getFactory().create();
+		if (feature == null || feature.getClass() != clazz) {
+			throw new IllegalStateException("The factory for "
+					+ clazz.getSimpleName()
+					+ " has to create instances of exactly that class");
+		}
+		attach(feature);
+		checkDialogNotOwned(feature);
+		if (initializationStarted && feature instanceof AsyncInitFeature) {
+			// too late to run in parallel with anything
+			((AsyncInitFeature) feature).onCreateAsync();
+		}
+
+		placeholder.setInstance(feature);
+		lazyFeatures.remove(clazz);
+		featureMap.put(clazz, feature);
+		lookupCache.clear();
+		priorities.put(feature, priorities.remove(placeholder));
+		features = insert(without(features, placeholder), feature);
+		unsubscribe(placeholder);
+		subscribe(feature, routeDialogs(feature, bind(feature)));
+
+		replayLifecycle(feature);
+		return feature;
+	}
+	
+	/**
+	 * Starts {@link AsyncInitFeature#onCreateAsync()} of the features
+	 * implementing it on worker threads, but for the features reattached by
+	 * {@link #reattachRetainedFeatures(Object)}, which are initialized
+	 * already. Called by {@link FeatureActivity} right before
+	 * {@link #onCreate(Bundle)}.
+	 */
+	public void startInitialization() {
+		if (initializationStarted) {
+			return;
+		}
+		initializationStarted = true;
+
+		int count = 0;
+		for (Feature feature : features) {
+			if (needsInitialization(feature)) {
+				count++;
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+
+		AsyncInitFeature[] asyncFeatures = new AsyncInitFeature[count];
+		count = 0;
+		for (Feature feature : features) {
+			if (needsInitialization(feature)) {
+				asyncFeatures[count++] = (AsyncInitFeature) feature;
+			}
+		}
+		initializer = new AsyncInitializer(asyncFeatures);
+	}
+	
+	private boolean needsInitialization(Feature feature) {
+		return feature instanceof AsyncInitFeature
+				&& (reattached == null || !reattached.contains(feature
+						.getClass()));
+	}
+	
+	/**
+	 * Blocks until the initialization started by
+	 * {@link #startInitialization()} completes. Called by
+	 * {@link FeatureActivity} right before {@link #onPostCreate(Bundle)};
+	 * features that need the results earlier may call it themselves.
+	 * 
+	 * @throws RuntimeException
+	 *             if the initialization of any feature failed
+	 */
+	public void awaitInitialization() {
+		AsyncInitializer pending = initializer;
+		if (pending != null) {
+			initializer = null;
+			pending.await();
+		}
+	}
+	
+	/**
+	 * Calls the lifecycle callbacks the activity has already gone through on a
+	 * newly created feature.
+	 * 
+	 * @param feature
+	 *            the feature
+	 */
+	private void replayLifecycle(Feature feature) {
+		if (lifecycle == Lifecycle.INITIALIZED) {
+			return;
+		}
+
+		feature.onCreate(stateOf(savedInstanceState, feature));
+		if (lifecycle == Lifecycle.STARTED || lifecycle == Lifecycle.RESUMED) {
+			feature.onStart();
+		}
+		if (restoredInstanceState != null) {
+			feature.onRestoreInstanceState(stateOf(restoredInstanceState,
+					feature));
+		}
+		if (postCreated) {
+			feature.onPostCreate(stateOf(savedInstanceState, feature));
+		}
+		if (lifecycle == Lifecycle.RESUMED) {
+			feature.onResume();
+		}
+		if (postResumed) {
+			feature.onPostResume();
+		}
+	}
+	
+	/**
+	 * @throws UnsupportedOperationException
+	 *             if a feature of this class is already included.
+	 */
+	private void checkNotIncluded(Class<? extends Feature> clazz) {
+		if (featureMap.containsKey(clazz) || lazyFeatures.containsKey(clazz)) {
+			throw new UnsupportedOperationException(
+					"Feature already included!");
+		}
+	}
+	
+	/**
+	 * @throws IllegalStateException
+	 *             if the activity is already destroyed.
+	 */
+	private void checkNotDestroyed(Class<? extends Feature> clazz) {
+		if (lifecycle == Lifecycle.DESTROYED) {
+			throw new IllegalStateException("Cannot create the feature "
+					+ clazz.getSimpleName() + " after onDestroy()");
+		}
+	}
+	
+	/**
+	 * Calls the lifecycle callbacks that bring a removed feature down from the
+	 * current state of the activity, the counterpart of
+	 * {@link #replayLifecycle(Feature)}.
+	 * 
+	 * @param feature
+	 *            the feature
+	 */
+	private void tearDownLifecycle(Feature feature) {
+		if (lifecycle == Lifecycle.INITIALIZED
+				|| lifecycle == Lifecycle.DESTROYED) {
+			return;
+		}
+
+		if (lifecycle == Lifecycle.RESUMED) {
+			feature.onPause();
+		}
+		if (lifecycle == Lifecycle.STARTED || lifecycle == Lifecycle.RESUMED) {
+			feature.onStop();
+		}
+		feature.onDestroy();
+	}
+	
+	/**
+	 * Detaches the feature again if it would own a dialog that already has an
+	 * owner.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if another feature owns the same dialog.
+	 */
+	private void checkDialogNotOwned(Feature feature) {
+		if (!(feature instanceof DialogOwnerFeature)) {
+			return;
+		}
+
+		int id = ((DialogOwnerFeature) feature).getDialogId();
+		Feature owner = dialogRoutes.get(id);
+		if (owner != null) {
+			feature.setActivity(null);
+			throw new UnsupportedOperationException("Feature "
+					+ feature.getClass().getSimpleName()
+					+ " provides the dialog " + id + " already provided by "
+					+ owner.getClass().getSimpleName());
+		}
+	}
+	
+	/**
+	 * Sets the activity of a feature.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the feature is shared with another activity.
+	 * @throws IllegalStateException
+	 *             if the method is unable the set the serviced activity.
+	 */
+	private void attach(Feature feature) {
+		if (feature.getActivity() != null) {
+			throw new UnsupportedOperationException(
+					"A contributor may only be added once to any Activity!");
+		}
+
+		feature.setActivity(act);
+
+		if (feature.getActivity() != act) {
+			throw new IllegalStateException(
+					"Setting activity for the contributor of type "
+							+ feature.getClass().getSimpleName()
+							+ " check it's getActivity() and setActivity() implementation.");
+		}
+	}
+	
+	/**
+	 * Removes a feature. A feature removed after {@link #onCreate(Bundle)}
+	 * receives the lifecycle callbacks that bring it down from the current
+	 * state of the activity, up to {@link Feature#onDestroy()}. The feature is
+	 * detached from the activity afterwards, so it may be added again later.
+	 * 
+	 * <p>
+	 * Safe to call from inside a callback: a dispatch in progress still
+	 * reaches all the features it started with, and the removed feature is
+	 * brought down and detached once the outermost dispatch has finished.
+	 * 
+	 * @param feature
+	 *            the Feature to be removed
+	 * @throws UnsupportedOperationException
+	 *             if the contributor is not registered for this activity.
+	 */
+	public final void removeFeature(Feature feature) {
+		if (!featureMap.containsKey(feature.getClass())) {
+			throw new UnsupportedOperationException(
+					"Trying to remove a non-existing contributor ("
+							+ feature.getClass().getSimpleName()
+							+ "). Check your code!");
+		}
+
+		Feature registered = featureMap.get(feature.getClass());
+		unregister(registered);
+
+		if (pendingAdditions.remove(registered)) {
+			// added during the same dispatch, never brought up
+			unbind(registered);
+			registered.setActivity(null);
+		} else if (dispatchDepth > 0) {
+			// unbound only then, so that generated managers keep calling it
+			// for the rest of the dispatch, like the subscriber arrays do
+			pendingRemovals.add(registered);
+		} else {
+			unbind(registered);
+			tearDownLifecycle(registered);
+			registered.setActivity(null);
+		}
+	}
+	
+	/**
+	 * Takes a feature out of all the structures of this manager, but for the
+	 * binding of generated managers, see {@link #unbind(Feature)}.
+	 * 
+	 * @param registered
+	 *            the feature, either created or a placeholder
+	 */
+	private void unregister(Feature registered) {
+		if (registered instanceof DialogOwnerFeature) {
+			dialogRoutes.remove(((DialogOwnerFeature) registered)
+					.getDialogId());
+		}
+		unsubscribe(registered);
+		if (registered instanceof LazyFeature) {
+			lazyFeatures.remove(((LazyFeature) registered).getFeatureClass());
+		} else {
+			featureMap.remove(registered.getClass());
+		}
+		features = without(features, registered);
+		priorities.remove(registered);
+		lookupCache.clear();
+	}
+	
+	/**
+	 * Puts the configuration-stable features retained by the previous
+	 * instance of the activity in place of the features of the same classes
+	 * added by this one, keeping their priorities. Retained features whose
+	 * class this activity does not add receive {@link Feature#onDestroy()},
+	 * which they missed, and are detached. Features registered with
+	 * a factory are not created at all if one of their class is retained.
+	 * The retained features receive
+	 * {@link ConfigurationStableFeature#onReattach()} right away, instead of
+	 * the following {@link #onCreate(Bundle)}. Called by
+	 * {@link FeatureActivity} right before {@link #onCreate(Bundle)}.
+	 * 
+	 * @param lastNonConfigurationInstance
+	 *            the last non-configuration instance of the activity, as
+	 *            returned by {@link #onRetainNonConfigurationInstance(Object)}
+	 * @see ConfigurationStableFeature
+	 */
+	public void reattachRetainedFeatures(Object lastNonConfigurationInstance) {
+		Map<Class<? extends Feature>, Feature> stable = RetainedInstance
+				.stableFeatures(lastNonConfigurationInstance);
+		if (stable == null) {
+			return;
+		}
+
+		for (Map.Entry<Class<? extends Feature>, Feature> entry : stable
+				.entrySet()) {
+			Feature added = featureMap.get(entry.getKey());
+			if (added == null) {
+				added = lazyFeatures.get(entry.getKey());
+			}
+			if (added == null) {
+				// not wanted anymore, destroyed along with the old activity
+				entry.getValue().onDestroy();
+				entry.getValue().setActivity(null);
+				continue;
+			}
+
+			int priority = priorities.get(added);
+			unregister(added);
+			if (!(added instanceof LazyFeature)) {
+				unbind(added);
+				added.setActivity(null);
+			}
+
+			Feature retained = entry.getValue();
+			retained.setActivity(null);
+			addFeature(retained, priority);
+			if (reattached == null) {
+				reattached = new HashSet<Class<? extends Feature>>();
+			}
+			reattached.add(entry.getKey());
+			((ConfigurationStableFeature) retained).onReattach();
+		}
+	}
+	
 	/**
-	 * Create a new instance of the manager.
-	 * @param act the activity to attach to.
+	 * Called when a feature is added, determines the callbacks this manager
+	 * dispatches to it. Overridden by generated managers (see
+	 * {@link DispatchFeatures}) that call the features they know about
+	 * directly, and so return only the callbacks they leave to this class.
+	 * 
+	 * @param feature
+	 *            the added feature
+	 * @return the mask of callbacks (see {@link FeatureCallback#mask()}) to
+	 *         dispatch to the feature
 	 */
-	public FeatureManager(Activity act) {
-		features = new ArrayList<Feature>();
-		featureMap = new HashMap<Class<? extends Feature>, Feature>();
-		this.act = act;
+	protected long bind(Feature feature) {
+		return FeatureCallback.subscriptionsOf(feature.getClass());
+	}
+
+	/**
+	 * Called when a feature is removed. Counterpart of {@link #bind(Feature)}.
+	 * A feature removed during a dispatch is unbound once the dispatch has
+	 * finished, so that it still receives the callback in progress, as from
+	 * the subscriber arrays.
+	 * 
+	 * @param feature
+	 *            the removed feature
+	 */
+	protected void unbind(Feature feature) {
 	}
-	
 	
 	/**
-	 * Add a feature to the collection.
+	 * Registers the feature as the owner of its dialog, if it is a
+	 * {@link DialogOwnerFeature}.
 	 * 
 	 * @param feature
-	 *            the new Feature
-	 * @throws UnsupportedOperationException
-	 *             if the contributor is already installed or shared with
-	 *             another activity.
-	 * @throws IllegalStateException
-	 *             if the method is unable the set the serviced activity.
+	 *            the added feature
+	 * @param mask
+	 *            the callbacks to dispatch to the feature
+	 * @return the callbacks to dispatch to the feature through the subscriber
+	 *         arrays: without the dialog callbacks for an owner, as they are
+	 *         routed by id.
 	 */
-	public final void addFeature(Feature feature) {
-		if (featureMap.containsKey(feature.getClass())) {
-			throw new UnsupportedOperationException(
-					"Feature already included!");
+	private long routeDialogs(Feature feature, long mask) {
+		if (!(feature instanceof DialogOwnerFeature)) {
+			return mask;
 		}
 
-		if (feature.getActivity() != null) {
-			throw new UnsupportedOperationException(
-					"A contributor may only be added once to any Activity!");
+		dialogRoutes.put(((DialogOwnerFeature) feature).getDialogId(), feature);
+		return mask
+				& ~(FeatureCallback.ON_CREATE_DIALOG.mask() | FeatureCallback.ON_PREPARE_DIALOG
+						.mask());
+	}
+	
+	/**
+	 * Adds the feature to the subscriber arrays of the given callbacks.
+	 * @param feature the feature
+	 * @param mask the callbacks
+	 */
+	private void subscribe(Feature feature, long mask) {
+		masks.put(feature, mask);
+		Feature target = dispatchTarget(feature);
+		for (FeatureCallback callback : FeatureCallback.values()) {
+			if (callback.isIn(mask)) {
+				subscribers[callback.ordinal()] = insert(
+						subscribers[callback.ordinal()], target);
+			}
 		}
-
-		feature.setActivity(act);
-
-		if (feature.getActivity() != act) {
-			throw new IllegalStateException(
-					"Setting activity for the contributor of type "
-							+ feature.getClass().getSimpleName()
-							+ " check it's getActivity() and setActivity() implementation.");
+	}
+	
+	/**
+	 * Removes the feature from the subscriber arrays it is in.
+	 * @param feature the feature
+	 */
+	private void unsubscribe(Feature feature) {
+		long mask = masks.remove(feature);
+		Feature target = dispatchTarget(feature);
+		for (FeatureCallback callback : FeatureCallback.values()) {
+			if (callback.isIn(mask)) {
+				subscribers[callback.ordinal()] = without(
+						subscribers[callback.ordinal()], target);
+			}
+		}
+		if (wrappers != null) {
+			wrappers.remove(feature);
+			priorities.remove(target);
 		}
-
-		featureMap.put(feature.getClass(),feature);
-		features.add(feature);
 	}
 	
 	/**
 	 * @param feature
-	 *            the Feature to be removed
-	 * @throws UnsupportedOperationException
-	 *             if the contributor is not registered for this activity.
+	 *            the feature
+	 * @return the object to put in the subscriber arrays for the feature: the
+	 *         feature itself, or its timing wrapper while profiling.
 	 */
-	public final void removeFeature(Feature feature) {
-		if (!featureMap.containsKey(feature.getClass())) {
-			throw new UnsupportedOperationException(
-					"Trying to remove a non-existing contributor ("
-							+ feature.getClass().getSimpleName()
-							+ "). Check your code!");
+	private Feature dispatchTarget(Feature feature) {
+		if (wrappers == null) {
+			return feature;
+		}
+
+		ProfilingFeature wrapper = wrappers.get(feature);
+		if (wrapper == null) {
+			wrapper = new ProfilingFeature(feature, featureClass(feature),
+					profiler);
+			wrappers.put(feature, wrapper);
+			priorities.put(wrapper, priorities.get(feature));
+		}
+		return wrapper;
+	}
+	
+	/**
+	 * @param target
+	 *            an element of a subscriber array
+	 * @return the class of the feature the element stands for.
+	 */
+	private static Class<? extends Feature> featureClass(Feature target) {
+		if (target instanceof ProfilingFeature) {
+			target = ((ProfilingFeature) target).getDelegate();
+		}
+		if (target instanceof LazyFeature) {
+			return ((LazyFeature) target).getFeatureClass();
+		}
+		return target.getClass();
+	}
+	
+	/**
+	 * @return a copy of the array with the feature added after all the
+	 *         features of the same or higher priority.
+	 */
+	private Feature[] insert(Feature[] array, Feature feature) {
+		int priority = priorities.get(feature);
+		int position = array.length;
+		while (position > 0 && priorities.get(array[position - 1]) < priority) {
+			position--;
 		}
 
-		features.remove(feature.getClass());
-		featureMap.remove(feature.getClass());
+		Feature[] updated = new Feature[array.length + 1];
+		System.arraycopy(array, 0, updated, 0, position);
+		updated[position] = feature;
+		System.arraycopy(array, position, updated, position + 1, array.length
+				- position);
+		return updated;
+	}
+	
+	/**
+	 * @return a copy of the array without the feature, or the array itself if
+	 *         it does not contain the feature.
+	 */
+	private static Feature[] without(Feature[] array, Feature feature) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == feature) {
+				if (array.length == 1) {
+					return NO_FEATURES;
+				}
+				Feature[] updated = new Feature[array.length - 1];
+				System.arraycopy(array, 0, updated, 0, i);
+				System.arraycopy(array, i + 1, updated, i, array.length - i - 1);
+				return updated;
+			}
+		}
+		return array;
+	}
+	
+	/**
+	 * @param callback the callback
+	 * @return the features implementing the given callback, in dispatch order.
+	 */
+	private Feature[] subscribers(FeatureCallback callback) {
+		return subscribers[callback.ordinal()];
+	}
+	
+	/**
+	 * Marks the start of a dispatch. Features added or removed until the
+	 * matching {@link #exitDispatch()} are brought up or down only after it,
+	 * when the state of the activity reflects the callback. Every dispatch
+	 * method calls it, as do the dispatch methods of generated managers.
+	 */
+	protected final void enterDispatch() {
+		dispatchDepth++;
+	}
+	
+	/**
+	 * Marks the end of a dispatch started with {@link #enterDispatch()}. Has
+	 * to be called from a <code>finally</code> block.
+	 */
+	protected final void exitDispatch() {
+		dispatchDepth--;
+		if (dispatchDepth == 0
+				&& !(pendingAdditions.isEmpty() && pendingRemovals.isEmpty())) {
+			applyPendingChanges();
+		}
+	}
+	
+	/**
+	 * Brings the features added and removed during the dispatch that just
+	 * finished up or down. Changes made by the callbacks called here are
+	 * deferred, and applied, the same way.
+	 */
+	private void applyPendingChanges() {
+		dispatchDepth++;
+		try {
+			while (!pendingRemovals.isEmpty() || !pendingAdditions.isEmpty()) {
+				if (!pendingRemovals.isEmpty()) {
+					Feature removed = pendingRemovals.remove(0);
+					unbind(removed);
+					tearDownLifecycle(removed);
+					removed.setActivity(null);
+				} else {
+					replayLifecycle(pendingAdditions.remove(0));
+				}
+			}
+		} finally {
+			dispatchDepth--;
+		}
 	}
 	
 	public void onCreate(Bundle savedInstanceState) {
-		for (Feature feature : features) {
-			feature.onCreate(savedInstanceState);
+		enterDispatch();
+		try {
+			states.onCreate(savedInstanceState);
+			final Feature[] targets = subscribers(FeatureCallback.ON_CREATE);
+			for (int i = 0; i < targets.length; i++) {
+				if (reattached == null
+						|| !reattached.contains(featureClass(targets[i]))) {
+					targets[i].onCreate(stateOf(savedInstanceState, targets[i]));
+				}
+			}
+			reattached = null;
+			this.savedInstanceState = savedInstanceState;
+			lifecycle = Lifecycle.CREATED;
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onRestoreInstanceState(Bundle savedInstanceState) {
-		for (Feature feature : features) {
-			feature.onRestoreInstanceState(savedInstanceState);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_RESTORE_INSTANCE_STATE);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onRestoreInstanceState(stateOf(savedInstanceState,
+						targets[i]));
+			}
+			restoredInstanceState = savedInstanceState;
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onPostCreate(Bundle savedInstanceState) {
-		for (Feature feature : features) {
-			feature.onPostCreate(savedInstanceState);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_POST_CREATE);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onPostCreate(stateOf(savedInstanceState, targets[i]));
+			}
+			postCreated = true;
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onStart() {
-		for (Feature feature : features) {
-			feature.onStart();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_START);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onStart();
+			}
+			lifecycle = Lifecycle.STARTED;
+			if (!started) {
+				started = true;
+				startedActivities++;
+			}
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onRestart() {
-		for (Feature feature : features) {
-			feature.onRestart();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_RESTART);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onRestart();
+			}
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onResume() {
-		for (Feature feature : features) {
-			feature.onResume();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_RESUME);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onResume();
+			}
+			lifecycle = Lifecycle.RESUMED;
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onPostResume() {
-		for (Feature feature : features) {
-			feature.onPostResume();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_POST_RESUME);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onPostResume();
+			}
+			postResumed = true;
+		} finally {
+			exitDispatch();
 		}
 	}
 	
+	/**
+	 * @return the features by class. Features registered with a factory are
+	 *         included once created.
+	 */
 	public Map<Class<? extends Feature>, Feature> getFeatures() {
 		return featureMap;
 	}
 
+	/**
+	 * Hands each feature a bundle of its own to save its state to, see
+	 * {@link #stateOf(Bundle, Feature)}.
+	 * 
+	 * @param outState
+	 *            the bundle of the activity
+	 */
 	public void onSaveInstanceState(Bundle outState) {
-		for (Feature feature : features) {
-			feature.onSaveInstanceState(outState);
+		enterDispatch();
+		try {
+			states.startSave();
+			final Feature[] targets = subscribers(FeatureCallback.ON_SAVE_INSTANCE_STATE);
+			for (int i = 0; i < targets.length; i++) {
+				Bundle state = new Bundle();
+				targets[i].onSaveInstanceState(state);
+				states.put(outState, featureClass(targets[i]), state);
+			}
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onPause() {
-		for (Feature feature : features) {
-			feature.onPause();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_PAUSE);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onPause();
+			}
+			lifecycle = Lifecycle.STARTED;
+			postResumed = false;
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onStop() {
-		for (Feature feature : features) {
-			feature.onStop();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_STOP);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onStop();
+			}
+			lifecycle = Lifecycle.CREATED;
+			if (started) {
+				started = false;
+				// the next activity, if any, has been started already
+				if (--startedActivities == 0
+						&& act.getChangingConfigurations() == 0) {
+					for (MemoryListener listener : MEMORY_LISTENERS) {
+						listener.onBackground();
+					}
+				}
+			}
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onDestroy() {
-		for (Feature feature : features) {
-			feature.onDestroy();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_DESTROY);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onDestroy();
+			}
+			for (Feature feature : features) {
+				if (feature instanceof DialogOwnerFeature) {
+					((DialogOwnerFeature) feature).destroyDialog();
+				}
+			}
+			lifecycle = Lifecycle.DESTROYED;
+			if (act.isFinishing()) {
+				// the saved state will not be restored
+				states.deleteSpillFiles();
+			}
+		} finally {
+			exitDispatch();
 		}
 	}
 	
 	public final Dialog onCreateDialog(int id) {
-		Dialog dialog = null;
-		Dialog testDialog = null;
-
-		//find the dialog responsible
-		for (Feature feature : features) {
-			testDialog = feature.onCreateDialog(id);
-
-			// developer error handling
-			if (testDialog != null && dialog != null) {
-				Set<Feature> featuresDebug = new HashSet<Feature>(features);
-				boolean first = false;
-
-				// no point to add StringBuilder/StringBuffer here...
-				String output = "[";
-				for (Feature featuresTest : featuresDebug) {
-					if (featuresTest == feature) {
-						break;
-					}
+		enterDispatch();
+		try {
+			Feature owner = dialogRoutes.get(id);
+			if (owner != null) {
+				return dispatchTarget(owner).onCreateDialog(id);
+			}
 
-					if (first) {
-						first = false;
-					} else {
-						output += ", ";
+			Dialog dialog = null;
+			Dialog testDialog = null;
+
+			//find the dialog responsible
+			final Feature[] targets = subscribers(FeatureCallback.ON_CREATE_DIALOG);
+			for (int i = 0; i < targets.length; i++) {
+				final Feature feature = targets[i];
+				testDialog = feature.onCreateDialog(id);
+
+				// developer error handling
+				if (testDialog != null && dialog != null) {
+					boolean first = true;
+
+					// no point to add StringBuilder/StringBuffer here...
+					String output = "[";
+					for (Feature featuresTest : features) {
+						if (featuresTest == feature) {
+							break;
+						}
+
+						if (first) {
+							first = false;
+						} else {
+							output += ", ";
+						}
+
+						output += featuresTest.getClass().getSimpleName();
 					}
+					output += "]";
 
-					output += featuresTest.getClass().getSimpleName();
+					throw new UnsupportedOperationException(
+							"Feature "
+									+ feature.getClass().getSimpleName()
+									+ " tried to initialize a dialog when one was already created by a previous contributor. Previous contributor list: "
+									+ output);
 				}
-				output += "]";
 
-				throw new UnsupportedOperationException(
-						"Feature "
-								+ feature.getClass().getSimpleName()
-								+ " tried to initialize a dialog when one was already created by a previous contributor. Previous contributor list: "
-								+ output);
+				//we've found the dialog responsible, go ahead
+				if (testDialog != null) {
+					dialog = testDialog;
+				}
 			}
 
-			//we've found the dialog responsible, go ahead
-			if (testDialog != null) {
-				dialog = testDialog;
-			}
+			return dialog;
+		} finally {
+			exitDispatch();
 		}
-
-		return dialog;
 	}
 
 	public final void onPrepareDialog(int id, Dialog dialog) {
-		for (Feature feature : features) {
-			feature.onPrepareDialog(id, dialog);
+		enterDispatch();
+		try {
+			Feature owner = dialogRoutes.get(id);
+			if (owner != null) {
+				dispatchTarget(owner).onPrepareDialog(id, dialog);
+				return;
+			}
+
+			final Feature[] targets = subscribers(FeatureCallback.ON_PREPARE_DIALOG);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onPrepareDialog(id, dialog);
+			}
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onActivityResult(int requestCode, int resultCode, Intent data) {
-		for (Feature feature : features) {
-			feature.onActivityResult(requestCode, resultCode, data);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_ACTIVITY_RESULT);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onActivityResult(requestCode, resultCode, data);
+			}
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onApplyThemeResource(Theme theme, int resid, boolean first) {
-		for (Feature feature : features) {
-			feature.onApplyThemeResource(theme, resid, first);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_APPLY_THEME_RESOURCE);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onApplyThemeResource(theme, resid, first);
+			}
+		} finally {
+			exitDispatch();
 		}
 	}
 
 	public void onAttachedToWindow() {
-		for (Feature feature : features) {
-			feature.onAttachedToWindow();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_ATTACHED_TO_WINDOW);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onAttachedToWindow();
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onBackPressed() {
-		for (Feature feature : features) {
-			feature.onBackPressed();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_BACK_PRESSED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onBackPressed();
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onChildTitleChanged(Activity childActivity, CharSequence title) {
-		for (Feature feature : features) {
-			feature.onChildTitleChanged(childActivity, title);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_CHILD_TITLE_CHANGED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onChildTitleChanged(childActivity, title);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onConfigurationChanged(Configuration newConfig) {
-		for (Feature feature : features) {
-			feature.onConfigurationChanged(newConfig);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_CONFIGURATION_CHANGED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onConfigurationChanged(newConfig);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onContentChanged() {
-		for (Feature feature : features) {
-			feature.onContentChanged();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_CONTENT_CHANGED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onContentChanged();
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onContextMenuClosed(Menu menu) {
-		for (Feature feature : features) {
-			feature.onContextMenuClosed(menu);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_CONTEXT_MENU_CLOSED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onContextMenuClosed(menu);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onCreateContextMenu(ContextMenu menu, View v,
 			ContextMenuInfo menuInfo) {
-		for (Feature feature : features) {
-			feature.onCreateContextMenu(menu, v, menuInfo);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_CREATE_CONTEXT_MENU);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onCreateContextMenu(menu, v, menuInfo);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onDetachedFromWindow() {
-		for (Feature feature : features) {
-			feature.onDetachedFromWindow();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_DETACHED_FROM_WINDOW);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onDetachedFromWindow();
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onLowMemory() {
-		for (Feature feature : features) {
-			feature.onLowMemory();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_LOW_MEMORY);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onLowMemory();
+			}
+			for (Feature feature : features) {
+				if (feature instanceof DialogOwnerFeature) {
+					((DialogOwnerFeature) feature).releaseDialog();
+				}
+			}
+			for (MemoryListener listener : MEMORY_LISTENERS) {
+				listener.onLowMemory();
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onNewIntent(Intent intent) {
-		for (Feature feature : features) {
-			feature.onNewIntent(intent);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_NEW_INTENT);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onNewIntent(intent);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onOptionsMenuClosed(Menu menu) {
-		for (Feature feature : features) {
-			feature.onOptionsMenuClosed(menu);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_OPTIONS_MENU_CLOSED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onOptionsMenuClosed(menu);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onPanelClosed(int featureId, Menu menu) {
-		for (Feature feature : features) {
-			feature.onPanelClosed(featureId, menu);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_PANEL_CLOSED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onPanelClosed(featureId, menu);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onTitleChanged(CharSequence title, int color) {
-		for (Feature feature : features) {
-			feature.onTitleChanged(title, color);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_TITLE_CHANGED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onTitleChanged(title, color);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onUserInteraction() {
-		for (Feature feature : features) {
-			feature.onUserInteraction();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_USER_INTERACTION);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onUserInteraction();
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onUserLeaveHint() {
-		for (Feature feature : features) {
-			feature.onUserLeaveHint();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_USER_LEAVE_HINT);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onUserLeaveHint();
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onWindowAttributesChanged(LayoutParams params) {
-		for (Feature feature : features) {
-			feature.onWindowAttributesChanged(params);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_WINDOW_ATTRIBUTES_CHANGED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onWindowAttributesChanged(params);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public void onWindowFocusChanged(boolean hasFocus) {
-		for (Feature feature : features) {
-			feature.onWindowFocusChanged(hasFocus);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_WINDOW_FOCUS_CHANGED);
+			for (int i = 0; i < targets.length; i++) {
+				targets[i].onWindowFocusChanged(hasFocus);
+			}
+		} finally {
+			exitDispatch();
 		}
-
 	}
 
 	public boolean onContextItemSelected(boolean value, MenuItem item) {
-
-		for (Feature feature : features) {
-			value |= feature.onContextItemSelected(item);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_CONTEXT_ITEM_SELECTED);
+			boolean consumed = false;
+			for (int i = 0; i < targets.length && !(consumed && stopOnConsume); i++) {
+				consumed |= targets[i].onContextItemSelected(item);
+			}
+			return value | consumed;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onCreateOptionsMenu(boolean value, Menu menu) {
-		for (Feature feature : features) {
-			value |= feature.onCreateOptionsMenu(menu);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_CREATE_OPTIONS_MENU);
+			for (int i = 0; i < targets.length; i++) {
+				value |= targets[i].onCreateOptionsMenu(menu);
+			}
+			return value;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onCreateThumbnail(boolean value, Bitmap outBitmap,
 			Canvas canvas) {
-		for (Feature feature : features) {
-			boolean tempVal = feature.onCreateThumbnail(outBitmap, canvas);
-			if (tempVal && value) {
-				throw new IllegalStateException(CONFLICT_MSG
-						+ feature.getClass());
-			}
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_CREATE_THUMBNAIL);
+			for (int i = 0; i < targets.length; i++) {
+				final Feature feature = targets[i];
+				boolean tempVal = feature.onCreateThumbnail(outBitmap, canvas);
+				if (tempVal && value) {
+					throw new IllegalStateException(CONFLICT_MSG
+							+ feature.getClass());
+				}
 
-			value |= tempVal;
+				value |= tempVal;
+			}
+			return value;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onMenuItemSelected(boolean value, int featureId,
 			MenuItem item) {
-		for (Feature feature : features) {
-			value |= feature.onMenuItemSelected(featureId, item);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_MENU_ITEM_SELECTED);
+			for (int i = 0; i < targets.length; i++) {
+				value |= targets[i].onMenuItemSelected(featureId, item);
+			}
+			return value;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onMenuOpened(boolean value, int featureId, Menu menu) {
-		for (Feature feature : features) {
-			value |= feature.onMenuOpened(featureId, menu);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_MENU_OPENED);
+			for (int i = 0; i < targets.length; i++) {
+				value |= targets[i].onMenuOpened(featureId, menu);
+			}
+			return value;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onOptionsItemSelected(boolean value, MenuItem item) {
-		for (Feature feature : features) {
-			value |= feature.onOptionsItemSelected(item);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_OPTIONS_ITEM_SELECTED);
+			boolean consumed = false;
+			for (int i = 0; i < targets.length && !(consumed && stopOnConsume); i++) {
+				consumed |= targets[i].onOptionsItemSelected(item);
+			}
+			return value | consumed;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onTrackballEvent(boolean value, MotionEvent event) {
-		for (Feature feature : features) {
-			value |= feature.onTrackballEvent(event);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_TRACKBALL_EVENT);
+			boolean consumed = false;
+			for (int i = 0; i < targets.length && !(consumed && stopOnConsume); i++) {
+				consumed |= targets[i].onTrackballEvent(event);
+			}
+			return value | consumed;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onTouchEvent(boolean value, MotionEvent event) {
-		for (Feature feature : features) {
-			value |= feature.onTouchEvent(event);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_TOUCH_EVENT);
+			boolean consumed = false;
+			for (int i = 0; i < targets.length && !(consumed && stopOnConsume); i++) {
+				consumed |= targets[i].onTouchEvent(event);
+			}
+			return value | consumed;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onSearchRequested(boolean value) {
-		for (Feature feature : features) {
-			// Here, the behavior is opposite - if one feature
-			// blocks, it is blocked. This is consistent with the
-			// semantics of the method.
-			value &= feature.onSearchRequested();
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_SEARCH_REQUESTED);
+			for (int i = 0; i < targets.length; i++) {
+				// Here, the behavior is opposite - if one feature
+				// blocks, it is blocked. This is consistent with the
+				// semantics of the method.
+				value &= targets[i].onSearchRequested();
+			}
+			return value;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
+	/**
+	 * Collects the objects the features retain across a configuration change.
+	 * Each feature gets its own object back from
+	 * {@link FeatureActivity#getLastNonConfigurationInstance(Class)}, the
+	 * activity from {@link FeatureActivity#getLastNonConfigurationInstance()}.
+	 * Also retains, and removes from this manager, the features implementing
+	 * {@link ConfigurationStableFeature}, see
+	 * {@link #reattachRetainedFeatures(Object)}.
+	 * 
+	 * @param value
+	 *            the object retained by the activity itself
+	 * @return the object to retain
+	 */
 	public Object onRetainNonConfigurationInstance(Object value) {
-		for (Feature feature : features) {
-			Object tempVal = feature.onRetainNonConfigurationInstance();
-			if (tempVal != null && value != null) {
-				throw new IllegalStateException(CONFLICT_MSG
-						+ feature.getClass());
+		enterDispatch();
+		try {
+			Map<Class<? extends Feature>, Feature> stable = null;
+			for (Feature feature : features) {
+				if (feature instanceof ConfigurationStableFeature) {
+					if (stable == null) {
+						stable = new HashMap<Class<? extends Feature>, Feature>();
+					}
+					stable.put(feature.getClass(), feature);
+				}
+			}
+
+			Map<Class<? extends Feature>, Object> retained = null;
+			final Feature[] targets = subscribers(FeatureCallback.ON_RETAIN_NON_CONFIGURATION_INSTANCE);
+			for (int i = 0; i < targets.length; i++) {
+				final Feature feature = targets[i];
+				Object tempVal = feature.onRetainNonConfigurationInstance();
+				if (tempVal != null) {
+					if (retained == null) {
+						retained = new HashMap<Class<? extends Feature>, Object>();
+					}
+					retained.put(featureClass(feature), tempVal);
+				}
+			}
+
+			if (stable != null) {
+				// carried over, so they must not receive onDestroy()
+				for (Feature feature : stable.values()) {
+					unregister(feature);
+					unbind(feature);
+				}
 			}
 
-			value = tempVal;
+			return retained == null && stable == null ? value
+					: new RetainedInstance(value, retained, stable);
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onCreatePanelMenu(boolean value, int featureId, Menu menu) {
-		for (Feature feature : features) {
-			value |= feature.onCreatePanelMenu(featureId, menu);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_CREATE_PANEL_MENU);
+			for (int i = 0; i < targets.length; i++) {
+				value |= targets[i].onCreatePanelMenu(featureId, menu);
+			}
+			return value;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onKeyDown(boolean value, int keyCode, KeyEvent event) {
-		for (Feature feature : features) {
-			value |= feature.onKeyDown(keyCode, event);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_KEY_DOWN);
+			boolean consumed = false;
+			for (int i = 0; i < targets.length && !(consumed && stopOnConsume); i++) {
+				consumed |= targets[i].onKeyDown(keyCode, event);
+			}
+			return value | consumed;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onKeyLongPress(boolean value, int keyCode, KeyEvent event) {
-		for (Feature feature : features) {
-			value |= feature.onKeyLongPress(keyCode, event);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_KEY_LONG_PRESS);
+			boolean consumed = false;
+			for (int i = 0; i < targets.length && !(consumed && stopOnConsume); i++) {
+				consumed |= targets[i].onKeyLongPress(keyCode, event);
+			}
+			return value | consumed;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onKeyMultiple(boolean value, int keyCode, int repeatCount,
 			KeyEvent event) {
-		for (Feature feature : features) {
-			value |= feature.onKeyMultiple(keyCode, repeatCount, event);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_KEY_MULTIPLE);
+			boolean consumed = false;
+			for (int i = 0; i < targets.length && !(consumed && stopOnConsume); i++) {
+				consumed |= targets[i].onKeyMultiple(keyCode, repeatCount, event);
+			}
+			return value | consumed;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onKeyUp(boolean value, int keyCode, KeyEvent event) {
-		for (Feature feature : features) {
-			value |= feature.onKeyUp(keyCode, event);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_KEY_UP);
+			boolean consumed = false;
+			for (int i = 0; i < targets.length && !(consumed && stopOnConsume); i++) {
+				consumed |= targets[i].onKeyUp(keyCode, event);
+			}
+			return value | consumed;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onPreparePanel(boolean value, int featureId, View view,
 			Menu menu) {
-		for (Feature feature : features) {
-			value |= feature.onPreparePanel(featureId, view, menu);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_PREPARE_PANEL);
+			for (int i = 0; i < targets.length; i++) {
+				value |= targets[i].onPreparePanel(featureId, view, menu);
+			}
+			return value;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 	public boolean onPrepareOptionsMenu(boolean value, Menu menu) {
-		for (Feature feature : features) {
-			value |= feature.onPrepareOptionsMenu(menu);
+		enterDispatch();
+		try {
+			final Feature[] targets = subscribers(FeatureCallback.ON_PREPARE_OPTIONS_MENU);
+			for (int i = 0; i < targets.length; i++) {
+				value |= targets[i].onPrepareOptionsMenu(menu);
+			}
+			return value;
+		} finally {
+			exitDispatch();
 		}
-		return value;
 	}
 
 }
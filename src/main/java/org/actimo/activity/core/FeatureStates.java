@@ -0,0 +1,290 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.actimo.feature.core.Feature;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcel;
+
+/**
+ * Keeps the saved state of each feature in its own bundle, nested in the
+ * bundle of the activity under a key derived from the feature class. Bundles
+ * above a size threshold are spilled to app-private files, and read back when
+ * the feature first asks for its state. A file is kept until a later save
+ * supersedes the state referring to it, since the platform may restore the
+ * same state more than once. Spilling and reading back are synchronous file
+ * operations, done on the main thread while the activity saves and restores
+ * its state.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+final class FeatureStates {
+
+	/** Prefix of the keys of nested feature states. */
+	private static final String STATE_KEY = "org.actimo.state:";
+
+	/** Prefix of the keys of the names of spill files. */
+	private static final String SPILL_KEY = "org.actimo.spill:";
+
+	/** Prefix of the names of spill files. */
+	private static final String SPILL_FILE = "actimo-state-";
+
+	private static int spillCount;
+
+	/** Whether the files of dead processes have been looked for. */
+	private static boolean staleFilesChecked;
+
+	private final Activity act;
+
+	private boolean accounting;
+
+	/** Size above which states are spilled, 0 for none. */
+	private int spillThreshold;
+
+	/** Sizes measured by the last save. */
+	private Map<Class<? extends Feature>, Integer> sizes;
+
+	/**
+	 * Files written by the last save, or read from the restored state, to be
+	 * deleted once superseded.
+	 */
+	private List<String> spillFiles;
+
+	/** The bundle the states below were read from. */
+	private Bundle source;
+
+	/** States already read, so that each is read and allocated once. */
+	private Map<Class<? extends Feature>, Bundle> restored;
+
+	FeatureStates(Activity act) {
+		this.act = act;
+		sizes = Collections.emptyMap();
+		spillFiles = new ArrayList<String>();
+		restored = new HashMap<Class<? extends Feature>, Bundle>();
+	}
+
+	void setAccountingEnabled(boolean accounting) {
+		this.accounting = accounting;
+	}
+
+	void setSpillThreshold(int spillThreshold) {
+		this.spillThreshold = spillThreshold;
+	}
+
+	Map<Class<? extends Feature>, Integer> getSizes() {
+		return sizes;
+	}
+
+	/**
+	 * @param saved
+	 *            the bundle of the activity
+	 * @param clazz
+	 *            the feature class
+	 * @return the state of the feature, empty if it saved none, or
+	 *         <code>null</code> if the activity has no saved state.
+	 */
+	Bundle get(Bundle saved, Class<? extends Feature> clazz) {
+		if (saved == null) {
+			return null;
+		}
+		if (saved != source) {
+			source = saved;
+			restored.clear();
+		}
+
+		Bundle state = restored.get(clazz);
+		if (state == null) {
+			state = saved.getBundle(STATE_KEY + clazz.getName());
+			if (state == null) {
+				String file = saved.getString(SPILL_KEY + clazz.getName());
+				state = file == null ? null : unspill(file, clazz);
+			}
+			if (state == null) {
+				state = new Bundle();
+			}
+			restored.put(clazz, state);
+		}
+		return state;
+	}
+
+	/**
+	 * Called when the activity is created. The first time the root activity
+	 * of a task is created in the process, deletes the spill files left behind
+	 * by dead processes, but for those the restored state refers to: the
+	 * activities above the root in the back stack, whose states could refer
+	 * to others, have been restored or finished before it. Activities of other
+	 * tasks are not accounted for.
+	 *
+	 * @param saved
+	 *            the bundle of the activity, <code>null</code> if none
+	 */
+	void onCreate(Bundle saved) {
+		if (!act.isTaskRoot() || !claimStaleFilesCheck()) {
+			return;
+		}
+
+		String[] files = act.fileList();
+		if (files == null) {
+			return;
+		}
+		for (String file : files) {
+			if (file.startsWith(SPILL_FILE) && !refersTo(saved, file)) {
+				act.deleteFile(file);
+			}
+		}
+	}
+
+	private static boolean refersTo(Bundle saved, String file) {
+		if (saved == null) {
+			return false;
+		}
+		for (String key : saved.keySet()) {
+			if (key.startsWith(SPILL_KEY) && file.equals(saved.getString(key))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Called before the features save their states.
+	 */
+	void startSave() {
+		deleteSpillFiles();
+		if (accounting || spillThreshold > 0) {
+			sizes = new HashMap<Class<? extends Feature>, Integer>();
+		}
+	}
+
+	/**
+	 * @param outState
+	 *            the bundle of the activity
+	 * @param clazz
+	 *            the feature class
+	 * @param state
+	 *            the state the feature saved
+	 */
+	void put(Bundle outState, Class<? extends Feature> clazz, Bundle state) {
+		if (state.isEmpty()) {
+			return;
+		}
+		if (!accounting && spillThreshold <= 0) {
+			outState.putBundle(STATE_KEY + clazz.getName(), state);
+			return;
+		}
+
+		Parcel parcel = Parcel.obtain();
+		try {
+			parcel.writeBundle(state);
+			int size = parcel.dataSize();
+			sizes.put(clazz, size);
+
+			if (spillThreshold > 0 && size > spillThreshold) {
+				String file = spill(parcel.marshall());
+				if (file != null) {
+					outState.putString(SPILL_KEY + clazz.getName(), file);
+					return;
+				}
+			}
+		} finally {
+			parcel.recycle();
+		}
+		outState.putBundle(STATE_KEY + clazz.getName(), state);
+	}
+
+	/**
+	 * Deletes the files of the last save, or of the restored state, which
+	 * will not be restored anymore.
+	 */
+	void deleteSpillFiles() {
+		for (String file : spillFiles) {
+			act.deleteFile(file);
+		}
+		spillFiles.clear();
+	}
+
+	/**
+	 * @return the name of the file, or <code>null</code> if it could not be
+	 *         written.
+	 */
+	private String spill(byte[] data) {
+		String file = SPILL_FILE + System.currentTimeMillis() + "-"
+				+ nextSpillCount();
+		try {
+			FileOutputStream out = act.openFileOutput(file,
+					Context.MODE_PRIVATE);
+			try {
+				out.write(data);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			act.deleteFile(file);
+			return null;
+		}
+		spillFiles.add(file);
+		return file;
+	}
+
+	/**
+	 * @return the state read from the file, which is kept until superseded,
+	 *         or <code>null</code> if it could not be read.
+	 */
+	private Bundle unspill(String file, Class<? extends Feature> clazz) {
+		byte[] data;
+		try {
+			FileInputStream in = act.openFileInput(file);
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					bytes.write(buffer, 0, read);
+				}
+				data = bytes.toByteArray();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		spillFiles.add(file);
+
+		Parcel parcel = Parcel.obtain();
+		try {
+			parcel.unmarshall(data, 0, data.length);
+			parcel.setDataPosition(0);
+			return parcel.readBundle(clazz.getClassLoader());
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	private static synchronized int nextSpillCount() {
+		return spillCount++;
+	}
+
+	private static synchronized boolean claimStaleFilesCheck() {
+		boolean claimed = !staleFilesChecked;
+		staleFilesChecked = true;
+		return claimed;
+	}
+
+}
@@ -6,6 +6,7 @@
 package org.actimo.activity.core;
 
 import org.actimo.feature.core.Feature;
+import org.actimo.feature.core.FeatureFactory;
 
 /**
  * Interface for additional, feature-specific activity methods.
@@ -19,6 +20,17 @@ public interface IFeatureActivity {
 	 */
 	public abstract void addFeature(Feature feature);
 
+	/**
+	 * @see FeatureManager#addFeature(Feature, int)
+	 */
+	public abstract void addFeature(Feature feature, int priority);
+
+	/**
+	 * @see FeatureManager#addFeature(Class, FeatureFactory)
+	 */
+	public abstract <T extends Feature> void addFeature(Class<T> clazz,
+			FeatureFactory<? extends T> factory);
+
 	/**
 	 * @param feature
 	 *            the Feature to be removed
@@ -30,11 +42,28 @@ public interface IFeatureActivity {
 	/**
 	 * Get the given feature.
 	 * @param <T> the feature type
-	 * @param clazz the feature's class object
+	 * @param clazz the feature's class object, or a supertype of it
 	 * @return the feature instance, or <code>null</code> if not attached.
+	 * @see FeatureManager#getFeature(Class)
 	 */
 	public abstract <T extends Feature> T getFeature(Class<T> clazz);
 
+	/**
+	 * @see FeatureManager#getFeatures(Class)
+	 */
+	public abstract <T> T[] getFeatures(Class<T> clazz);
+
+	/**
+	 * @param clazz
+	 *            the feature class
+	 * @return the object the feature of the given class returned from
+	 *         {@link Feature#onRetainNonConfigurationInstance()} before the
+	 *         last configuration change, or <code>null</code> if none.
+	 * @see FeatureManager#onRetainNonConfigurationInstance(Object)
+	 */
+	public abstract Object getLastNonConfigurationInstance(
+			Class<? extends Feature> clazz);
+
 	
 	
 }
\ No newline at end of file
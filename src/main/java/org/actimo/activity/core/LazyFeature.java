@@ -0,0 +1,306 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import org.actimo.feature.core.Feature;
+import org.actimo.feature.core.FeatureFactory;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.content.Intent;
+import android.content.res.Configuration;
+import android.content.res.Resources.Theme;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.view.ContextMenu;
+import android.view.ContextMenu.ContextMenuInfo;
+import android.view.KeyEvent;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.WindowManager.LayoutParams;
+
+/**
+ * Stands in for a feature registered with a {@link FeatureFactory} until the
+ * feature is created. Subscribed to the callbacks the feature class
+ * implements; the first of them to arrive creates the feature through
+ * {@link FeatureManager} and is forwarded to it. The callbacks that only
+ * bring a feature down, or save or release what it holds, do not create it,
+ * as a feature that was never needed has nothing to pause, save or destroy.
+ * 
+ * @author m.koziarkiewicz
+ * 
+ */
+final class LazyFeature implements Feature {
+
+	private final FeatureManager manager;
+
+	private final Class<? extends Feature> featureClass;
+
+	private final FeatureFactory<? extends Feature> factory;
+
+	/** The created feature, <code>null</code> until then. */
+	private Feature instance;
+
+	LazyFeature(FeatureManager manager, Class<? extends Feature> featureClass,
+			FeatureFactory<? extends Feature> factory) {
+		this.manager = manager;
+		this.featureClass = featureClass;
+		this.factory = factory;
+	}
+
+	Class<? extends Feature> getFeatureClass() {
+		return featureClass;
+	}
+
+	FeatureFactory<? extends Feature> getFactory() {
+		return factory;
+	}
+
+	Feature getInstance() {
+		return instance;
+	}
+
+	void setInstance(Feature instance) {
+		this.instance = instance;
+	}
+
+	/**
+	 * @return the feature, created if necessary.
+	 */
+	private Feature feature() {
+		return instance != null ? instance : manager.materialize(this);
+	}
+
+	public void setActivity(Activity activity) {
+		throw new UnsupportedOperationException(
+				"The activity of a lazily created feature is set on creation");
+	}
+
+	public Activity getActivity() {
+		return feature().getActivity();
+	}
+
+	public <T extends Feature> T getFeature(Class<T> clazz) {
+		return feature().getFeature(clazz);
+	}
+
+	public void onCreate(Bundle savedInstanceState) {
+		feature().onCreate(savedInstanceState);
+	}
+
+	public Dialog onCreateDialog(int id) {
+		return feature().onCreateDialog(id);
+	}
+
+	public void onDestroy() {
+		if (instance != null) {
+			instance.onDestroy();
+		}
+	}
+
+	public void onPause() {
+		if (instance != null) {
+			instance.onPause();
+		}
+	}
+
+	public void onPostCreate(Bundle savedInstanceState) {
+		feature().onPostCreate(savedInstanceState);
+	}
+
+	public void onPostResume() {
+		feature().onPostResume();
+	}
+
+	public void onPrepareDialog(int id, Dialog dialog) {
+		feature().onPrepareDialog(id, dialog);
+	}
+
+	public void onRestart() {
+		feature().onRestart();
+	}
+
+	public void onRestoreInstanceState(Bundle savedInstanceState) {
+		feature().onRestoreInstanceState(savedInstanceState);
+	}
+
+	public void onResume() {
+		feature().onResume();
+	}
+
+	public void onSaveInstanceState(Bundle outState) {
+		if (instance != null) {
+			instance.onSaveInstanceState(outState);
+		} else {
+			// carried over for when the feature is finally created
+			Bundle saved = manager.savedStateOf(featureClass);
+			if (saved != null) {
+				outState.putAll(saved);
+			}
+		}
+	}
+
+	public void onStart() {
+		feature().onStart();
+	}
+
+	public void onStop() {
+		if (instance != null) {
+			instance.onStop();
+		}
+	}
+
+	public void onActivityResult(int requestCode, int resultCode, Intent data) {
+		feature().onActivityResult(requestCode, resultCode, data);
+	}
+
+	public void onApplyThemeResource(Theme theme, int resid, boolean first) {
+		feature().onApplyThemeResource(theme, resid, first);
+	}
+
+	public void onAttachedToWindow() {
+		feature().onAttachedToWindow();
+	}
+
+	public void onBackPressed() {
+		feature().onBackPressed();
+	}
+
+	public void onChildTitleChanged(Activity childActivity, CharSequence title) {
+		feature().onChildTitleChanged(childActivity, title);
+	}
+
+	public void onConfigurationChanged(Configuration newConfig) {
+		feature().onConfigurationChanged(newConfig);
+	}
+
+	public void onContentChanged() {
+		feature().onContentChanged();
+	}
+
+	public void onContextMenuClosed(Menu menu) {
+		feature().onContextMenuClosed(menu);
+	}
+
+	public void onCreateContextMenu(ContextMenu menu, View v, ContextMenuInfo menuInfo) {
+		feature().onCreateContextMenu(menu, v, menuInfo);
+	}
+
+	public void onDetachedFromWindow() {
+		feature().onDetachedFromWindow();
+	}
+
+	public void onLowMemory() {
+		if (instance != null) {
+			instance.onLowMemory();
+		}
+	}
+
+	public void onNewIntent(Intent intent) {
+		feature().onNewIntent(intent);
+	}
+
+	public void onOptionsMenuClosed(Menu menu) {
+		feature().onOptionsMenuClosed(menu);
+	}
+
+	public void onPanelClosed(int featureId, Menu menu) {
+		feature().onPanelClosed(featureId, menu);
+	}
+
+	public void onTitleChanged(CharSequence title, int color) {
+		feature().onTitleChanged(title, color);
+	}
+
+	public void onUserInteraction() {
+		feature().onUserInteraction();
+	}
+
+	public void onUserLeaveHint() {
+		feature().onUserLeaveHint();
+	}
+
+	public void onWindowAttributesChanged(LayoutParams params) {
+		feature().onWindowAttributesChanged(params);
+	}
+
+	public void onWindowFocusChanged(boolean hasFocus) {
+		feature().onWindowFocusChanged(hasFocus);
+	}
+
+	public boolean onContextItemSelected(MenuItem item) {
+		return feature().onContextItemSelected(item);
+	}
+
+	public boolean onCreateOptionsMenu(Menu menu) {
+		return feature().onCreateOptionsMenu(menu);
+	}
+
+	public boolean onCreateThumbnail(Bitmap outBitmap, Canvas canvas) {
+		return feature().onCreateThumbnail(outBitmap, canvas);
+	}
+
+	public boolean onMenuItemSelected(int featureId, MenuItem item) {
+		return feature().onMenuItemSelected(featureId, item);
+	}
+
+	public boolean onMenuOpened(int featureId, Menu menu) {
+		return feature().onMenuOpened(featureId, menu);
+	}
+
+	public boolean onOptionsItemSelected(MenuItem item) {
+		return feature().onOptionsItemSelected(item);
+	}
+
+	public boolean onTrackballEvent(MotionEvent event) {
+		return feature().onTrackballEvent(event);
+	}
+
+	public boolean onTouchEvent(MotionEvent event) {
+		return feature().onTouchEvent(event);
+	}
+
+	public boolean onSearchRequested() {
+		return feature().onSearchRequested();
+	}
+
+	public Object onRetainNonConfigurationInstance() {
+		return instance != null ? instance.onRetainNonConfigurationInstance()
+				: null;
+	}
+
+	public boolean onCreatePanelMenu(int featureId, Menu menu) {
+		return feature().onCreatePanelMenu(featureId, menu);
+	}
+
+	public boolean onKeyDown(int keyCode, KeyEvent event) {
+		return feature().onKeyDown(keyCode, event);
+	}
+
+	public boolean onKeyLongPress(int keyCode, KeyEvent event) {
+		return feature().onKeyLongPress(keyCode, event);
+	}
+
+	public boolean onKeyMultiple(int keyCode, int repeatCount, KeyEvent event) {
+		return feature().onKeyMultiple(keyCode, repeatCount, event);
+	}
+
+	public boolean onKeyUp(int keyCode, KeyEvent event) {
+		return feature().onKeyUp(keyCode, event);
+	}
+
+	public boolean onPreparePanel(int featureId, View view, Menu menu) {
+		return feature().onPreparePanel(featureId, view, menu);
+	}
+
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		return feature().onPrepareOptionsMenu(menu);
+	}
+
+}
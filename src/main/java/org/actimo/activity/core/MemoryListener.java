@@ -0,0 +1,31 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+/**
+ * Notified, process-wide, when memory held for the activities can be given
+ * back: when the application goes to the background, and on low memory.
+ * Meant for caches shared by the activities, which register themselves with
+ * {@link FeatureManager#addMemoryListener(MemoryListener)}. Called on the main
+ * thread.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public interface MemoryListener {
+
+	/**
+	 * Called when no feature activity of the application is started anymore,
+	 * other than because of a configuration change.
+	 */
+	public void onBackground();
+
+	/**
+	 * Called after {@link FeatureManager#onLowMemory()} has been dispatched.
+	 */
+	public void onLowMemory();
+
+}
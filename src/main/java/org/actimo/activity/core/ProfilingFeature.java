@@ -0,0 +1,385 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import org.actimo.feature.core.Feature;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.content.Intent;
+import android.content.res.Configuration;
+import android.content.res.Resources.Theme;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.view.ContextMenu;
+import android.view.ContextMenu.ContextMenuInfo;
+import android.view.KeyEvent;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.WindowManager.LayoutParams;
+
+/**
+ * Times the callbacks of a feature into a {@link DispatchProfiler}. Swapped
+ * into the subscriber arrays of {@link FeatureManager} while profiling is
+ * enabled, so that there is no cost otherwise.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+final class ProfilingFeature implements Feature {
+
+	private final Feature delegate;
+
+	private final DispatchProfiler profiler;
+
+	private final int slot;
+
+	ProfilingFeature(Feature delegate, Class<? extends Feature> featureClass,
+			DispatchProfiler profiler) {
+		this.delegate = delegate;
+		this.profiler = profiler;
+		this.slot = profiler.slotFor(featureClass);
+	}
+
+	/**
+	 * @return the wrapped feature.
+	 */
+	Feature getDelegate() {
+		return delegate;
+	}
+
+	private void record(FeatureCallback callback, long start) {
+		profiler.record(slot, callback.ordinal(), System.nanoTime() - start);
+	}
+
+	public void setActivity(Activity activity) {
+		delegate.setActivity(activity);
+	}
+
+	public Activity getActivity() {
+		return delegate.getActivity();
+	}
+
+	public <T extends Feature> T getFeature(Class<T> clazz) {
+		return delegate.getFeature(clazz);
+	}
+
+	public void onCreate(Bundle savedInstanceState) {
+		final long start = System.nanoTime();
+		delegate.onCreate(savedInstanceState);
+		record(FeatureCallback.ON_CREATE, start);
+	}
+
+	public Dialog onCreateDialog(int id) {
+		final long start = System.nanoTime();
+		final Dialog result = delegate.onCreateDialog(id);
+		record(FeatureCallback.ON_CREATE_DIALOG, start);
+		return result;
+	}
+
+	public void onDestroy() {
+		final long start = System.nanoTime();
+		delegate.onDestroy();
+		record(FeatureCallback.ON_DESTROY, start);
+	}
+
+	public void onPause() {
+		final long start = System.nanoTime();
+		delegate.onPause();
+		record(FeatureCallback.ON_PAUSE, start);
+	}
+
+	public void onPostCreate(Bundle savedInstanceState) {
+		final long start = System.nanoTime();
+		delegate.onPostCreate(savedInstanceState);
+		record(FeatureCallback.ON_POST_CREATE, start);
+	}
+
+	public void onPostResume() {
+		final long start = System.nanoTime();
+		delegate.onPostResume();
+		record(FeatureCallback.ON_POST_RESUME, start);
+	}
+
+	public void onPrepareDialog(int id, Dialog dialog) {
+		final long start = System.nanoTime();
+		delegate.onPrepareDialog(id, dialog);
+		record(FeatureCallback.ON_PREPARE_DIALOG, start);
+	}
+
+	public void onRestart() {
+		final long start = System.nanoTime();
+		delegate.onRestart();
+		record(FeatureCallback.ON_RESTART, start);
+	}
+
+	public void onRestoreInstanceState(Bundle savedInstanceState) {
+		final long start = System.nanoTime();
+		delegate.onRestoreInstanceState(savedInstanceState);
+		record(FeatureCallback.ON_RESTORE_INSTANCE_STATE, start);
+	}
+
+	public void onResume() {
+		final long start = System.nanoTime();
+		delegate.onResume();
+		record(FeatureCallback.ON_RESUME, start);
+	}
+
+	public void onSaveInstanceState(Bundle outState) {
+		final long start = System.nanoTime();
+		delegate.onSaveInstanceState(outState);
+		record(FeatureCallback.ON_SAVE_INSTANCE_STATE, start);
+	}
+
+	public void onStart() {
+		final long start = System.nanoTime();
+		delegate.onStart();
+		record(FeatureCallback.ON_START, start);
+	}
+
+	public void onStop() {
+		final long start = System.nanoTime();
+		delegate.onStop();
+		record(FeatureCallback.ON_STOP, start);
+	}
+
+	public void onActivityResult(int requestCode, int resultCode, Intent data) {
+		final long start = System.nanoTime();
+		delegate.onActivityResult(requestCode, resultCode, data);
+		record(FeatureCallback.ON_ACTIVITY_RESULT, start);
+	}
+
+	public void onApplyThemeResource(Theme theme, int resid, boolean first) {
+		final long start = System.nanoTime();
+		delegate.onApplyThemeResource(theme, resid, first);
+		record(FeatureCallback.ON_APPLY_THEME_RESOURCE, start);
+	}
+
+	public void onAttachedToWindow() {
+		final long start = System.nanoTime();
+		delegate.onAttachedToWindow();
+		record(FeatureCallback.ON_ATTACHED_TO_WINDOW, start);
+	}
+
+	public void onBackPressed() {
+		final long start = System.nanoTime();
+		delegate.onBackPressed();
+		record(FeatureCallback.ON_BACK_PRESSED, start);
+	}
+
+	public void onChildTitleChanged(Activity childActivity, CharSequence title) {
+		final long start = System.nanoTime();
+		delegate.onChildTitleChanged(childActivity, title);
+		record(FeatureCallback.ON_CHILD_TITLE_CHANGED, start);
+	}
+
+	public void onConfigurationChanged(Configuration newConfig) {
+		final long start = System.nanoTime();
+		delegate.onConfigurationChanged(newConfig);
+		record(FeatureCallback.ON_CONFIGURATION_CHANGED, start);
+	}
+
+	public void onContentChanged() {
+		final long start = System.nanoTime();
+		delegate.onContentChanged();
+		record(FeatureCallback.ON_CONTENT_CHANGED, start);
+	}
+
+	public void onContextMenuClosed(Menu menu) {
+		final long start = System.nanoTime();
+		delegate.onContextMenuClosed(menu);
+		record(FeatureCallback.ON_CONTEXT_MENU_CLOSED, start);
+	}
+
+	public void onCreateContextMenu(ContextMenu menu, View v, ContextMenuInfo menuInfo) {
+		final long start = System.nanoTime();
+		delegate.onCreateContextMenu(menu, v, menuInfo);
+		record(FeatureCallback.ON_CREATE_CONTEXT_MENU, start);
+	}
+
+	public void onDetachedFromWindow() {
+		final long start = System.nanoTime();
+		delegate.onDetachedFromWindow();
+		record(FeatureCallback.ON_DETACHED_FROM_WINDOW, start);
+	}
+
+	public void onLowMemory() {
+		final long start = System.nanoTime();
+		delegate.onLowMemory();
+		record(FeatureCallback.ON_LOW_MEMORY, start);
+	}
+
+	public void onNewIntent(Intent intent) {
+		final long start = System.nanoTime();
+		delegate.onNewIntent(intent);
+		record(FeatureCallback.ON_NEW_INTENT, start);
+	}
+
+	public void onOptionsMenuClosed(Menu menu) {
+		final long start = System.nanoTime();
+		delegate.onOptionsMenuClosed(menu);
+		record(FeatureCallback.ON_OPTIONS_MENU_CLOSED, start);
+	}
+
+	public void onPanelClosed(int featureId, Menu menu) {
+		final long start = System.nanoTime();
+		delegate.onPanelClosed(featureId, menu);
+		record(FeatureCallback.ON_PANEL_CLOSED, start);
+	}
+
+	public void onTitleChanged(CharSequence title, int color) {
+		final long start = System.nanoTime();
+		delegate.onTitleChanged(title, color);
+		record(FeatureCallback.ON_TITLE_CHANGED, start);
+	}
+
+	public void onUserInteraction() {
+		final long start = System.nanoTime();
+		delegate.onUserInteraction();
+		record(FeatureCallback.ON_USER_INTERACTION, start);
+	}
+
+	public void onUserLeaveHint() {
+		final long start = System.nanoTime();
+		delegate.onUserLeaveHint();
+		record(FeatureCallback.ON_USER_LEAVE_HINT, start);
+	}
+
+	public void onWindowAttributesChanged(LayoutParams params) {
+		final long start = System.nanoTime();
+		delegate.onWindowAttributesChanged(params);
+		record(FeatureCallback.ON_WINDOW_ATTRIBUTES_CHANGED, start);
+	}
+
+	public void onWindowFocusChanged(boolean hasFocus) {
+		final long start = System.nanoTime();
+		delegate.onWindowFocusChanged(hasFocus);
+		record(FeatureCallback.ON_WINDOW_FOCUS_CHANGED, start);
+	}
+
+	public boolean onContextItemSelected(MenuItem item) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onContextItemSelected(item);
+		record(FeatureCallback.ON_CONTEXT_ITEM_SELECTED, start);
+		return result;
+	}
+
+	public boolean onCreateOptionsMenu(Menu menu) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onCreateOptionsMenu(menu);
+		record(FeatureCallback.ON_CREATE_OPTIONS_MENU, start);
+		return result;
+	}
+
+	public boolean onCreateThumbnail(Bitmap outBitmap, Canvas canvas) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onCreateThumbnail(outBitmap, canvas);
+		record(FeatureCallback.ON_CREATE_THUMBNAIL, start);
+		return result;
+	}
+
+	public boolean onMenuItemSelected(int featureId, MenuItem item) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onMenuItemSelected(featureId, item);
+		record(FeatureCallback.ON_MENU_ITEM_SELECTED, start);
+		return result;
+	}
+
+	public boolean onMenuOpened(int featureId, Menu menu) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onMenuOpened(featureId, menu);
+		record(FeatureCallback.ON_MENU_OPENED, start);
+		return result;
+	}
+
+	public boolean onOptionsItemSelected(MenuItem item) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onOptionsItemSelected(item);
+		record(FeatureCallback.ON_OPTIONS_ITEM_SELECTED, start);
+		return result;
+	}
+
+	public boolean onTrackballEvent(MotionEvent event) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onTrackballEvent(event);
+		record(FeatureCallback.ON_TRACKBALL_EVENT, start);
+		return result;
+	}
+
+	public boolean onTouchEvent(MotionEvent event) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onTouchEvent(event);
+		record(FeatureCallback.ON_TOUCH_EVENT, start);
+		return result;
+	}
+
+	public boolean onSearchRequested() {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onSearchRequested();
+		record(FeatureCallback.ON_SEARCH_REQUESTED, start);
+		return result;
+	}
+
+	public Object onRetainNonConfigurationInstance() {
+		final long start = System.nanoTime();
+		final Object result = delegate.onRetainNonConfigurationInstance();
+		record(FeatureCallback.ON_RETAIN_NON_CONFIGURATION_INSTANCE, start);
+		return result;
+	}
+
+	public boolean onCreatePanelMenu(int featureId, Menu menu) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onCreatePanelMenu(featureId, menu);
+		record(FeatureCallback.ON_CREATE_PANEL_MENU, start);
+		return result;
+	}
+
+	public boolean onKeyDown(int keyCode, KeyEvent event) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onKeyDown(keyCode, event);
+		record(FeatureCallback.ON_KEY_DOWN, start);
+		return result;
+	}
+
+	public boolean onKeyLongPress(int keyCode, KeyEvent event) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onKeyLongPress(keyCode, event);
+		record(FeatureCallback.ON_KEY_LONG_PRESS, start);
+		return result;
+	}
+
+	public boolean onKeyMultiple(int keyCode, int repeatCount, KeyEvent event) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onKeyMultiple(keyCode, repeatCount, event);
+		record(FeatureCallback.ON_KEY_MULTIPLE, start);
+		return result;
+	}
+
+	public boolean onKeyUp(int keyCode, KeyEvent event) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onKeyUp(keyCode, event);
+		record(FeatureCallback.ON_KEY_UP, start);
+		return result;
+	}
+
+	public boolean onPreparePanel(int featureId, View view, Menu menu) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onPreparePanel(featureId, view, menu);
+		record(FeatureCallback.ON_PREPARE_PANEL, start);
+		return result;
+	}
+
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		final long start = System.nanoTime();
+		final boolean result = delegate.onPrepareOptionsMenu(menu);
+		record(FeatureCallback.ON_PREPARE_OPTIONS_MENU, start);
+		return result;
+	}
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import java.util.Map;
+
+import org.actimo.feature.core.Feature;
+
+/**
+ * The object {@link FeatureActivity} retains across a configuration change
+ * when any of its features retains something: the activity's own object,
+ * along with the objects of the features and the configuration-stable
+ * features themselves, by feature class.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+final class RetainedInstance {
+
+	private final Object activityInstance;
+
+	private final Map<Class<? extends Feature>, Object> featureInstances;
+
+	private final Map<Class<? extends Feature>, Feature> stableFeatures;
+
+	RetainedInstance(Object activityInstance,
+			Map<Class<? extends Feature>, Object> featureInstances,
+			Map<Class<? extends Feature>, Feature> stableFeatures) {
+		this.activityInstance = activityInstance;
+		this.featureInstances = featureInstances;
+		this.stableFeatures = stableFeatures;
+	}
+
+	/**
+	 * @param last
+	 *            the last non-configuration instance of the activity
+	 * @return the object retained by the activity itself.
+	 */
+	static Object activityInstance(Object last) {
+		return last instanceof RetainedInstance ? ((RetainedInstance) last).activityInstance
+				: last;
+	}
+
+	/**
+	 * @param last
+	 *            the last non-configuration instance of the activity
+	 * @param clazz
+	 *            the feature class
+	 * @return the object retained by the feature of the given class, or
+	 *         <code>null</code> if none.
+	 */
+	static Object featureInstance(Object last, Class<? extends Feature> clazz) {
+		if (!(last instanceof RetainedInstance)) {
+			return null;
+		}
+		Map<Class<? extends Feature>, Object> instances = ((RetainedInstance) last).featureInstances;
+		return instances == null ? null : instances.get(clazz);
+	}
+
+	/**
+	 * @param last
+	 *            the last non-configuration instance of the activity
+	 * @return the retained configuration-stable features, or
+	 *         <code>null</code> if none.
+	 */
+	static Map<Class<? extends Feature>, Feature> stableFeatures(Object last) {
+		return last instanceof RetainedInstance ? ((RetainedInstance) last).stableFeatures
+				: null;
+	}
+
+}
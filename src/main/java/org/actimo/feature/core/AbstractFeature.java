@@ -104,6 +104,24 @@ public abstract class AbstractFeature implements Feature {
 		
 	}
 
+	/**
+	 * @return the object this feature returned from
+	 *         {@link #onRetainNonConfigurationInstance()} before the last
+	 *         configuration change, or <code>null</code> if none.
+	 * @see IFeatureActivity#getLastNonConfigurationInstance(Class)
+	 */
+	protected final Object getLastNonConfigurationInstance() {
+		return ((IFeatureActivity) activity)
+				.getLastNonConfigurationInstance(getClass());
+	}
+
+	/**
+	 * @see IFeatureActivity#getFeatures(Class)
+	 */
+	protected final <T> T[] getFeatures(Class<T> clazz) {
+		return ((IFeatureActivity) activity).getFeatures(clazz);
+	}
+
 	public void onActivityResult(int requestCode, int resultCode, Intent data) {
 		
 		
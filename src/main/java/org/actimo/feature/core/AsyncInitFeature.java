@@ -0,0 +1,30 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.core;
+
+import android.app.Activity;
+import android.os.Bundle;
+
+/**
+ * A feature with expensive setup (parsing, opening databases, warming caches)
+ * that is safe to run off the UI thread, in parallel with the setup of other
+ * features.
+ *
+ * @author m.koziarkiewicz
+ */
+public interface AsyncInitFeature extends Feature {
+
+	/**
+	 * Called on a worker thread when the activity is created, concurrently with
+	 * {@link #onCreate(Bundle)} and the other features. Guaranteed to complete
+	 * before {@link #onPostCreate(Bundle)} is called on any feature. Must not
+	 * touch views.
+	 *
+	 * @see Activity#onCreate(Bundle)
+	 */
+	public void onCreateAsync();
+
+}
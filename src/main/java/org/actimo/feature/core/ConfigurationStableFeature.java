@@ -0,0 +1,39 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.core;
+
+import android.app.Activity;
+import android.os.Bundle;
+
+/**
+ * A feature that does not depend on the configuration of its activity, and
+ * so survives configuration changes: the instance is carried over to the
+ * activity re-created after the change, in place of the one that activity
+ * adds. {@link #setActivity(Activity)} is called again with the new
+ * activity, followed by {@link #onReattach()} instead of
+ * {@link #onCreate(Bundle)}; {@link #onDestroy()} is not called on the old
+ * activity. The lifecycle continues from {@link #onStart()}.
+ *
+ * <p>
+ * Register such features with a factory, see
+ * <code>FeatureManager.addFeature(Class, FeatureFactory)</code>, so that the
+ * re-created activity does not create an instance only to throw it away.
+ *
+ * <p>
+ * Implementations must not keep references to views, resources, or
+ * anything else bound to the old activity.
+ *
+ * @author m.koziarkiewicz
+ */
+public interface ConfigurationStableFeature extends Feature {
+
+	/**
+	 * Called in place of {@link #onCreate(Bundle)} when the feature has been
+	 * carried over to a re-created activity, already set.
+	 */
+	public void onReattach();
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.core;
+
+import android.app.Dialog;
+
+/**
+ * A feature that alone provides the dialog with a given id. The
+ * {@link Feature#onCreateDialog(int)} and
+ * {@link Feature#onPrepareDialog(int, Dialog)} calls for that id are routed
+ * straight to it, and it receives no calls for other ids. The manager also
+ * lets it release the dialog on low memory and drop it on destruction,
+ * without the feature having to implement those callbacks.
+ *
+ * @author m.koziarkiewicz
+ */
+public interface DialogOwnerFeature extends Feature {
+
+	/**
+	 * @return the id of the dialog, fixed once the feature is attached to an
+	 *         activity.
+	 */
+	public int getDialogId();
+
+	/**
+	 * Drops the dialog, unless it is showing, so that it is built again when
+	 * needed. Called after {@link Feature#onLowMemory()} has been dispatched.
+	 */
+	public void releaseDialog();
+
+	/**
+	 * Drops the dialog and cancels any work scheduled for it. Called after
+	 * {@link Feature#onDestroy()} has been dispatched.
+	 */
+	public void destroyDialog();
+
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.core;
+
+/**
+ * Creates a feature on demand. Used to register features that are only
+ * constructed when first needed.
+ *
+ * @param <T>
+ *            the feature type
+ * @author m.koziarkiewicz
+ *
+ */
+public interface FeatureFactory<T extends Feature> {
+
+	/**
+	 * @return a new, unattached feature instance.
+	 */
+	public T create();
+
+}
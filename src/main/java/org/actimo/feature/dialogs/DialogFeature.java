@@ -6,17 +6,73 @@
 package org.actimo.feature.dialogs;
 
 import org.actimo.feature.core.AbstractFeature;
+import org.actimo.feature.core.DialogOwnerFeature;
 
 import android.app.Activity;
 import android.app.Dialog;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue.IdleHandler;
+import android.os.SystemClock;
 
 
 /**
  * A convenience class for creating contributors that add a dialog.
  * 
+ * <p>
+ * Optionally, the dialog is built ahead of time, when the main thread is idle
+ * after the feature is added (see {@link #isPrebuiltOnIdle()}), and released
+ * when memory runs low or it has not been shown for a while (see
+ * {@link #getReleaseTimeout()}). The feature manager releases the dialog on
+ * low memory and drops it on destruction by itself, so subclasses are free
+ * to override {@link #onLowMemory()} and {@link #onDestroy()}.
+ * 
  * @author Mikołaj Koziarkiewicz
  */
-public abstract class DialogFeature extends AbstractFeature {
+public abstract class DialogFeature extends AbstractFeature implements
+		DialogOwnerFeature {
+
+	/** The int ID, cached so that dialog callbacks need no lookup. */
+	private int dialogId;
+
+	/** Built on idle, handed over to the activity on first show. */
+	private Dialog prebuilt;
+
+	/** The dialog the activity manages, <code>null</code> if none. */
+	private Dialog managed;
+
+	/** Uptime of the last show, for the release timeout. */
+	private long lastShown;
+
+	private Handler handler;
+
+	private boolean prebuildScheduled;
+
+	private final IdleHandler prebuild = new IdleHandler() {
+		public boolean queueIdle() {
+			prebuildScheduled = false;
+			if (getActivity() != null && managed == null && prebuilt == null) {
+				prebuilt = createDialog();
+				lastShown = SystemClock.uptimeMillis();
+				scheduleRelease(getReleaseTimeout());
+			}
+			return false;
+		}
+	};
+
+	private final Runnable releaseCheck = new Runnable() {
+		public void run() {
+			long timeout = getReleaseTimeout();
+			long unused = SystemClock.uptimeMillis() - lastShown;
+			if (managed != null && managed.isShowing()) {
+				scheduleRelease(timeout);
+			} else if (unused < timeout) {
+				scheduleRelease(timeout - unused);
+			} else {
+				release();
+			}
+		}
+	};
 
 	
 	/**
@@ -44,24 +100,62 @@ public abstract class DialogFeature extends AbstractFeature {
 	 */
 	protected abstract String getId();
 
+	/**
+	 * Whether to build the dialog when the main thread is first idle after
+	 * the feature is added, i.e. usually once the activity is shown, so that
+	 * showing it for the first time is instant. <code>false</code> by
+	 * default.
+	 * 
+	 * @return <code>true</code> to build the dialog ahead of time
+	 */
+	protected boolean isPrebuiltOnIdle() {
+		return false;
+	}
+
+	/**
+	 * The time after which a dialog that has not been shown is released, to
+	 * be built again when needed. Dialogs are also released on
+	 * {@link Activity#onLowMemory()}. <code>0</code>, i.e. never, by default.
+	 * 
+	 * @return the timeout in milliseconds, or <code>0</code> for none
+	 */
+	protected long getReleaseTimeout() {
+		return 0;
+	}
+
 	/**
 	 * Shortcut for {@link Activity#showDialog(int)}.
 	 */
 	public final void show() {
-		getActivity().showDialog(DialogManager.get().getId(getId()));
+		getActivity().showDialog(dialogId);
 	}
 	
 	@Override
 	protected void onSetActivity() {
-		if (!DialogManager.get().hasId(getId())) {
-			DialogManager.get().registerId(getId());
+		dialogId = DialogManager.get().obtainId(getId());
+		if (getActivity() == null) {
+			// removed, possibly without ever being destroyed
+			cancelScheduled();
+			prebuilt = null;
+		} else if (isPrebuiltOnIdle() && !prebuildScheduled) {
+			prebuildScheduled = true;
+			Looper.myQueue().addIdleHandler(prebuild);
 		}
 	}
 
+	/**
+	 * @return the int ID of the dialog, registered with {@link DialogManager}.
+	 */
+	public final int getDialogId() {
+		return dialogId;
+	}
+
 	@Override
 	public final Dialog onCreateDialog(int id) {
-		if (DialogManager.get().getId(getId()) == id) {
-			return createDialog();
+		if (dialogId == id) {
+			managed = prebuilt != null ? prebuilt : createDialog();
+			prebuilt = null;
+			return managed;
 		} else {
 			return null;
 		}
@@ -69,13 +163,66 @@ public abstract class DialogFeature extends AbstractFeature {
 
 	@Override
 	public final void onPrepareDialog(int id, Dialog dialog) {
-		if (DialogManager.get().getId(getId()) == id) {
+		if (dialogId == id) {
+			lastShown = SystemClock.uptimeMillis();
+			scheduleRelease(getReleaseTimeout());
 			prepareDialog(dialog);
 		}
 	}
+
+	public final void releaseDialog() {
+		release();
+	}
+
+	public final void destroyDialog() {
+		cancelScheduled();
+		prebuilt = null;
+		managed = null;
+	}
+
+	private void cancelScheduled() {
+		if (prebuildScheduled) {
+			prebuildScheduled = false;
+			Looper.myQueue().removeIdleHandler(prebuild);
+		}
+		if (handler != null) {
+			handler.removeCallbacks(releaseCheck);
+		}
+	}
+
+	/**
+	 * Drops the dialog, unless it is showing, so that it is built again
+	 * when needed.
+	 */
+	public final void release() {
+		if (handler != null) {
+			handler.removeCallbacks(releaseCheck);
+		}
+		prebuilt = null;
+		if (managed == null) {
+			return;
+		}
+		if (managed.isShowing()) {
+			scheduleRelease(getReleaseTimeout());
+		} else if (getActivity() != null) {
+			managed = null;
+			getActivity().removeDialog(dialogId);
+		}
+	}
+
+	private void scheduleRelease(long delay) {
+		if (getReleaseTimeout() <= 0) {
+			return;
+		}
+		if (handler == null) {
+			handler = new Handler(Looper.getMainLooper());
+		}
+		handler.removeCallbacks(releaseCheck);
+		handler.postDelayed(releaseCheck, delay);
+	}
 	
 	public final void dismiss() {
-		getActivity().dismissDialog(DialogManager.get().getId(getId()));
+		getActivity().dismissDialog(dialogId);
 	}
 
 
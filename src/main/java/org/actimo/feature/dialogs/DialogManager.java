@@ -9,15 +9,13 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Manages dialog IDs in order to prevent and minimize conflicts.
+ * Manages dialog IDs in order to prevent and minimize conflicts. Thread-safe.
  * 
  * @author Mikołaj Koziarkiewicz
  * 
  */
 public final class DialogManager {
 
-	private static DialogManager instance;
-
 	private static int START_ID = 1000;
 
 	private int lastId;
@@ -29,15 +27,19 @@ public final class DialogManager {
 		idMap = new HashMap<String, Integer>();
 	}
 
+	/**
+	 * Lazily initialized by the class loader, which also makes the
+	 * initialization thread-safe.
+	 */
+	private static final class Holder {
+		private static final DialogManager INSTANCE = new DialogManager();
+	}
+
 	/**
 	 * @return the Manager instance
 	 */
 	public static DialogManager get() {
-		if (instance == null) {
-			instance = new DialogManager(); 
-		}
-
-		return instance;
+		return Holder.INSTANCE;
 	}
 
 	private int newId() {
@@ -53,7 +55,7 @@ public final class DialogManager {
 	 * @throws IllegalStateException
 	 *             if this string ID is already registered
 	 */
-	protected int registerId(String id) {
+	protected synchronized int registerId(String id) {
 		if (idMap.containsKey(id)) {
 			throw new IllegalStateException("Dialog ID '" + id
 					+ "' already registered!");
@@ -69,7 +71,7 @@ public final class DialogManager {
 	 *            the string ID
 	 * @return the corresponding int ID
 	 */
-	public int getId(String id) {
+	public synchronized int getId(String id) {
 		return idMap.get(id);
 	}
 
@@ -79,8 +81,23 @@ public final class DialogManager {
 	 * @return <code>true</code> if the ID is already registered,
 	 *         <code>false</code> otherwise
 	 */
-	protected boolean hasId(String id) {
+	protected synchronized boolean hasId(String id) {
 		return idMap.containsKey(id);
 	}
 
+	/**
+	 * Registers an int ID for this string ID, unless already registered.
+	 * 
+	 * @param id
+	 *            the string ID
+	 * @return the corresponding int ID
+	 */
+	protected synchronized int obtainId(String id) {
+		Integer intId = idMap.get(id);
+		if (intId != null) {
+			return intId;
+		}
+		return registerId(id);
+	}
+
 }
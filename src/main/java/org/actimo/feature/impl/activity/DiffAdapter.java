@@ -0,0 +1,67 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+import java.util.Collections;
+import java.util.List;
+
+import android.widget.BaseAdapter;
+
+/**
+ * An adapter over an immutable list of items, replaced as a whole by
+ * {@link ListFeature#loadListData(DiffAdapter, ListLoader, ItemMatcher)}
+ * along with the difference to the previous one. Subclasses only create the
+ * views.
+ *
+ * @param <T>
+ *            the item type
+ * @author m.koziarkiewicz
+ *
+ */
+public abstract class DiffAdapter<T> extends BaseAdapter {
+
+	private List<T> items;
+
+	public DiffAdapter() {
+		this(Collections.<T> emptyList());
+	}
+
+	/**
+	 * @param items
+	 *            the initial items, which should not be modified afterwards
+	 */
+	public DiffAdapter(List<T> items) {
+		this.items = items;
+	}
+
+	/**
+	 * @return the current items; the list should not be modified.
+	 */
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * Replaces the items without notifying the observers; the caller does it
+	 * as appropriate to the difference.
+	 */
+	void swapItems(List<T> newItems) {
+		items = newItems;
+	}
+
+	public int getCount() {
+		return items.size();
+	}
+
+	public T getItem(int position) {
+		return items.get(position);
+	}
+
+	public long getItemId(int position) {
+		return position;
+	}
+
+}
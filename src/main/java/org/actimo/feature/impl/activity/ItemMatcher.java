@@ -0,0 +1,32 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+/**
+ * Tells {@link ListDiff} how to compare list items. Called on a background
+ * thread.
+ *
+ * @param <T>
+ *            the item type
+ * @author m.koziarkiewicz
+ *
+ */
+public interface ItemMatcher<T> {
+
+	/**
+	 * @return whether both objects represent the same item, e.g. have the
+	 *         same id.
+	 */
+	public boolean isSameItem(T oldItem, T newItem);
+
+	/**
+	 * Called only for the same items.
+	 *
+	 * @return whether the item would be displayed the same way.
+	 */
+	public boolean hasSameContents(T oldItem, T newItem);
+
+}
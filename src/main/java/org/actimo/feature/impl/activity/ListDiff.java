@@ -0,0 +1,246 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+import java.util.List;
+
+/**
+ * The difference between two versions of a list: which old items remain, at
+ * which new positions, and which of them have changed. Computed with the
+ * Myers algorithm after skipping the common prefix and suffix; if the lists
+ * differ by more than a given number of insertions and deletions, they are
+ * treated as entirely different instead.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public final class ListDiff {
+
+	/** The default limit of insertions and deletions. */
+	public static final int DEFAULT_MAX_EDITS = 500;
+
+	private final int[] oldToNew;
+
+	/** The new positions of changed or inserted items. */
+	private final boolean[] changed;
+
+	private final boolean structural;
+
+	private final int changedCount;
+
+	private ListDiff(int[] oldToNew, boolean[] changed) {
+		this.oldToNew = oldToNew;
+		this.changed = changed;
+
+		boolean structural = oldToNew.length != changed.length;
+		for (int i = 0; i < oldToNew.length && !structural; i++) {
+			structural = oldToNew[i] != i;
+		}
+		this.structural = structural;
+
+		int count = 0;
+		for (boolean value : changed) {
+			if (value) {
+				count++;
+			}
+		}
+		changedCount = count;
+	}
+
+	/**
+	 * Compares two lists with the default limit of edits.
+	 *
+	 * @see #compute(List, List, ItemMatcher, int)
+	 */
+	public static <T> ListDiff compute(List<T> oldItems, List<T> newItems,
+			ItemMatcher<? super T> matcher) {
+		return compute(oldItems, newItems, matcher, DEFAULT_MAX_EDITS);
+	}
+
+	/**
+	 * Compares two lists. Both should support fast random access.
+	 *
+	 * @param oldItems
+	 *            the old version
+	 * @param newItems
+	 *            the new version
+	 * @param matcher
+	 *            compares the items
+	 * @param maxEdits
+	 *            the number of insertions and deletions, past the common
+	 *            prefix and suffix, above which the lists are treated as
+	 *            entirely different; bounds the memory used, which is
+	 *            quadratic in it
+	 * @return the difference
+	 */
+	public static <T> ListDiff compute(List<T> oldItems, List<T> newItems,
+			ItemMatcher<? super T> matcher, int maxEdits) {
+		int oldSize = oldItems.size();
+		int newSize = newItems.size();
+		int[] oldToNew = new int[oldSize];
+		boolean[] changed = new boolean[newSize];
+		for (int i = 0; i < oldSize; i++) {
+			oldToNew[i] = -1;
+		}
+		for (int i = 0; i < newSize; i++) {
+			changed[i] = true;
+		}
+
+		int start = 0;
+		while (start < oldSize && start < newSize
+				&& matcher.isSameItem(oldItems.get(start), newItems.get(start))) {
+			oldToNew[start] = start;
+			start++;
+		}
+		int oldEnd = oldSize;
+		int newEnd = newSize;
+		while (oldEnd > start
+				&& newEnd > start
+				&& matcher.isSameItem(oldItems.get(oldEnd - 1),
+						newItems.get(newEnd - 1))) {
+			oldEnd--;
+			newEnd--;
+			oldToNew[oldEnd] = newEnd;
+		}
+
+		if (oldEnd > start && newEnd > start) {
+			match(oldItems, newItems, matcher, start, oldEnd, start, newEnd,
+					maxEdits, oldToNew);
+		}
+
+		for (int i = 0; i < oldSize; i++) {
+			int j = oldToNew[i];
+			if (j != -1) {
+				changed[j] = !matcher.hasSameContents(oldItems.get(i),
+						newItems.get(j));
+			}
+		}
+		return new ListDiff(oldToNew, changed);
+	}
+
+	/**
+	 * Fills in the old-to-new mapping of the matched items of the given
+	 * ranges, leaving it as is if there are more than the allowed edits.
+	 */
+	private static <T> void match(List<T> oldItems, List<T> newItems,
+			ItemMatcher<? super T> matcher, int oldStart, int oldEnd,
+			int newStart, int newEnd, int maxEdits, int[] oldToNew) {
+		int n = oldEnd - oldStart;
+		int m = newEnd - newStart;
+		int limit = Math.min(n + m, maxEdits);
+		int offset = limit + 1;
+
+		// furthest x reached on every diagonal k = x - y, for every d
+		int[] v = new int[2 * offset + 1];
+		int[][] trace = new int[limit + 1][];
+		int found = -1;
+
+		for (int d = 0; d <= limit && found == -1; d++) {
+			for (int k = -d; k <= d; k += 2) {
+				int x;
+				if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+					x = v[offset + k + 1];
+				} else {
+					x = v[offset + k - 1] + 1;
+				}
+				int y = x - k;
+				while (x < n
+						&& y < m
+						&& matcher.isSameItem(oldItems.get(oldStart + x),
+								newItems.get(newStart + y))) {
+					x++;
+					y++;
+				}
+				v[offset + k] = x;
+				if (x >= n && y >= m) {
+					found = d;
+					break;
+				}
+			}
+			// only the diagonals reachable in d steps are kept
+			int[] snapshot = new int[2 * d + 1];
+			System.arraycopy(v, offset - d, snapshot, 0, snapshot.length);
+			trace[d] = snapshot;
+		}
+
+		if (found == -1) {
+			return;
+		}
+
+		int x = n;
+		int y = m;
+		for (int d = found; d > 0; d--) {
+			int[] previous = trace[d - 1];
+			int k = x - y;
+			int previousK;
+			if (k == -d
+					|| (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1])) {
+				previousK = k + 1;
+			} else {
+				previousK = k - 1;
+			}
+			int previousX = previous[previousK + d - 1];
+			int previousY = previousX - previousK;
+
+			while (x > previousX && y > previousY) {
+				x--;
+				y--;
+				oldToNew[oldStart + x] = newStart + y;
+			}
+			x = previousX;
+			y = previousY;
+		}
+		while (x > 0 && y > 0) {
+			x--;
+			y--;
+			oldToNew[oldStart + x] = newStart + y;
+		}
+	}
+
+	/**
+	 * @param oldPosition
+	 *            a position in the old list
+	 * @return the position of the item in the new list, or -1 if it has been
+	 *         removed.
+	 */
+	public int getNewPosition(int oldPosition) {
+		return oldToNew[oldPosition];
+	}
+
+	/**
+	 * @param newPosition
+	 *            a position in the new list
+	 * @return whether the item has been inserted or its contents have
+	 *         changed.
+	 */
+	public boolean isChanged(int newPosition) {
+		return changed[newPosition];
+	}
+
+	/**
+	 * @return whether items have been inserted, removed or moved, as opposed
+	 *         to only changed in place.
+	 */
+	public boolean hasStructuralChanges() {
+		return structural;
+	}
+
+	/**
+	 * @return the number of inserted or changed items.
+	 */
+	public int getChangedCount() {
+		return changedCount;
+	}
+
+	public int getOldSize() {
+		return oldToNew.length;
+	}
+
+	public int getNewSize() {
+		return changed.length;
+	}
+
+}
@@ -23,12 +23,20 @@
  */
 package org.actimo.feature.impl.activity;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import org.actimo.feature.core.AbstractFeature;
 
 import android.app.Activity;
 import android.content.res.Resources;
 import android.os.Bundle;
 import android.os.Handler;
+import android.util.Log;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ListAdapter;
@@ -37,10 +45,16 @@ import android.widget.ListView;
 /**
  * Reimplementation of ListActivity as a Feature. Conforms to Android 2.1-2.3, not 
  * tested on 3+.
+ * <p>
+ * Additionally, list data can be loaded and compared with the data shown on a
+ * background thread, see {@link #loadListData(DiffAdapter, ListLoader, ItemMatcher)},
+ * or paged in as the list scrolls, see {@link #setPagedListAdapter(PagedAdapter)}.
  * @author m.koziarkiewicz
  *
  */
 public class ListFeature extends AbstractFeature {
+    private static final String TAG = "ListFeature";
+
     /**
      * This field should be made private, so it is hidden from the SDK.
      * {@hide}
@@ -55,6 +69,18 @@ public class ListFeature extends AbstractFeature {
     private Handler mHandler = new Handler();
     private boolean mFinishedStart = false;
 
+    /**
+     * Shared by all the list features, loads run one at a time. Paged
+     * adapters load their pages on a thread of their own.
+     */
+    private static Executor sLoadExecutor;
+
+    /**
+     * Incremented on the UI thread by every load, so that the results of
+     * superseded loads are dropped.
+     */
+    private volatile int mLoadGeneration;
+
     private Runnable mRequestFocus = new Runnable() {
         public void run() {
             mList.focusableViewAvailable(mList);
@@ -93,6 +119,7 @@ public class ListFeature extends AbstractFeature {
     @Override
     public void onDestroy() {
         mHandler.removeCallbacks(mRequestFocus);
+        mLoadGeneration++;
         super.onDestroy();
     }
 
@@ -118,6 +145,10 @@ public class ListFeature extends AbstractFeature {
         mList.setOnItemClickListener(mOnClickListener);
         if (mFinishedStart) {
             setListAdapter(mAdapter);
+            if (mAdapter instanceof PagedAdapter) {
+                // the new list has to report its scrolling as well
+                mList.setOnScrollListener((PagedAdapter<?>) mAdapter);
+            }
         }
         mHandler.post(mRequestFocus);
         mFinishedStart = true;
@@ -134,6 +165,163 @@ public class ListFeature extends AbstractFeature {
         }
     }
 
+    /**
+     * Provide a paged adapter for the list view, which then receives the
+     * scroll events of the list, and start loading its data.
+     * 
+     * @param adapter the adapter
+     */
+    public void setPagedListAdapter(PagedAdapter<?> adapter) {
+        setListAdapter(adapter);
+        mList.setOnScrollListener(adapter);
+        adapter.refresh();
+    }
+
+    /**
+     * Loads the list data on a background thread and computes its difference
+     * to the data currently in the adapter, also in the background. Then, on
+     * the UI thread, if only the contents of some items have changed, just the
+     * visible rows showing them are rebound; otherwise the adapter is notified
+     * and the first visible item is kept in place. A load supersedes any
+     * earlier one still in progress. The adapter becomes the list adapter if
+     * it is not yet.
+     * 
+     * @param adapter the adapter receiving the data
+     * @param loader loads the data
+     * @param matcher compares the old and new items
+     */
+    public <T> void loadListData(final DiffAdapter<T> adapter,
+            final ListLoader<T> loader, final ItemMatcher<? super T> matcher) {
+        final int generation = ++mLoadGeneration;
+        final List<T> oldItems = adapter.getItems();
+        getLoadExecutor().execute(new Runnable() {
+            public void run() {
+                if (generation != mLoadGeneration) {
+                    return;
+                }
+                final List<T> newItems;
+                final ListDiff diff;
+                try {
+                    newItems = loader.load();
+                    diff = ListDiff.compute(oldItems, newItems, matcher);
+                } catch (final Throwable t) {
+                    mHandler.post(new Runnable() {
+                        public void run() {
+                            if (generation == mLoadGeneration) {
+                                onListLoadFailed(t);
+                            }
+                        }
+                    });
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (generation == mLoadGeneration) {
+                            applyListData(adapter, oldItems, newItems, diff);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Called on the UI thread when loading list data has failed. By default
+     * the failure is logged and the adapter keeps its current items;
+     * subclasses may show an error, retry, or rethrow.
+     * 
+     * @param failure the exception thrown by the loader
+     */
+    protected void onListLoadFailed(Throwable failure) {
+        Log.w(TAG, "Loading list data failed", failure);
+    }
+
+    private <T> void applyListData(DiffAdapter<T> adapter, List<T> oldItems,
+            List<T> newItems, ListDiff diff) {
+        boolean diffApplies = adapter.getItems() == oldItems;
+        adapter.swapItems(newItems);
+        if (mAdapter != adapter) {
+            setListAdapter(adapter);
+            return;
+        }
+        if (!diffApplies) {
+            adapter.notifyDataSetChanged();
+        } else if (diff.hasStructuralChanges()) {
+            notifyKeepingPosition(adapter, diff);
+        } else if (diff.getChangedCount() > 0 && !rebindChangedRows(adapter, diff)) {
+            adapter.notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Notifies the adapter of a structural change, keeping the first visible
+     * item, or the next one still present, at the same place.
+     */
+    private void notifyKeepingPosition(DiffAdapter<?> adapter, ListDiff diff) {
+        int headers = mList.getHeaderViewsCount();
+        int first = mList.getFirstVisiblePosition() - headers;
+        View top = mList.getChildAt(0);
+        int offset = (top == null) ? 0 : top.getTop();
+
+        adapter.notifyDataSetChanged();
+
+        for (int position = Math.max(first, 0); position < diff.getOldSize(); position++) {
+            int newPosition = diff.getNewPosition(position);
+            if (newPosition != -1) {
+                if (newPosition != position) {
+                    mList.setSelectionFromTop(newPosition + headers, offset);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Rebinds the visible rows of the changed items into their current views.
+     * 
+     * @return false if the adapter has not reused a view, so the list has to
+     *         be refreshed after all.
+     */
+    private boolean rebindChangedRows(DiffAdapter<?> adapter, ListDiff diff) {
+        int first = mList.getFirstVisiblePosition() - mList.getHeaderViewsCount();
+        int count = adapter.getCount();
+        for (int i = 0; i < mList.getChildCount(); i++) {
+            int position = first + i;
+            if (position < 0 || position >= count || !diff.isChanged(position)) {
+                continue;
+            }
+            View child = mList.getChildAt(i);
+            if (adapter.getView(position, child, mList) != child) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static synchronized Executor getLoadExecutor() {
+        if (sLoadExecutor == null) {
+            sLoadExecutor = newLoadExecutor("actimo-list");
+        }
+        return sLoadExecutor;
+    }
+
+    /**
+     * @param threadName the name of the thread
+     * @return an executor running tasks one at a time, in order, on a daemon
+     *         thread of slightly lowered priority
+     */
+    static Executor newLoadExecutor(final String threadName) {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+    }
+
     /**
      * Set the currently selected list item to the specified
      * position with the adapter's data
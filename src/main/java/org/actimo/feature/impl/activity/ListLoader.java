@@ -0,0 +1,28 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+import java.util.List;
+
+/**
+ * Loads the data of a list on a background thread, see
+ * {@link ListFeature#loadListData(DiffAdapter, ListLoader, ItemMatcher)}.
+ *
+ * @param <T>
+ *            the item type
+ * @author m.koziarkiewicz
+ *
+ */
+public interface ListLoader<T> {
+
+	/**
+	 * @return the items; the list is not modified afterwards.
+	 * @throws Exception
+	 *             if the items cannot be loaded
+	 */
+	public List<T> load() throws Exception;
+
+}
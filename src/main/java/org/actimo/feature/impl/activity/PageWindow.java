@@ -0,0 +1,160 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+/**
+ * Tracks the scroll velocity of a list and decides which pages of a
+ * {@link PagedAdapter} should be in memory: the visible ones, those the list
+ * is expected to reach within {@link #PREFETCH_MILLIS} in the direction of
+ * scrolling, and one page behind, as far as the limit of pages allows.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+final class PageWindow {
+
+	/** How far ahead, in scrolling time, pages are prefetched. */
+	static final long PREFETCH_MILLIS = 1000L;
+
+	/** The weight of the latest measurement in the smoothed velocity. */
+	private static final float SMOOTHING = 0.5f;
+
+	private final int pageSize;
+
+	private final int maxPages;
+
+	private int lastFirst = -1;
+
+	private long lastTime;
+
+	/** In rows per second, positive when scrolling down. */
+	private float velocity;
+
+	private int firstPage;
+
+	private int lastPage = -1;
+
+	private int firstVisiblePage;
+
+	private int lastVisiblePage = -1;
+
+	/**
+	 * @param pageSize
+	 *            the number of rows per page
+	 * @param maxPages
+	 *            the number of pages kept in memory, at least 3
+	 */
+	PageWindow(int pageSize, int maxPages) {
+		if (pageSize <= 0 || maxPages < 3) {
+			throw new IllegalArgumentException(
+					"A page has to have rows, and the window at least 3 pages");
+		}
+		this.pageSize = pageSize;
+		this.maxPages = maxPages;
+	}
+
+	/**
+	 * Updates the velocity and the wanted pages.
+	 *
+	 * @param first
+	 *            the first visible row
+	 * @param visibleCount
+	 *            the number of visible rows
+	 * @param count
+	 *            the total number of rows
+	 * @param now
+	 *            the current uptime, in milliseconds
+	 */
+	void onScroll(int first, int visibleCount, int count, long now) {
+		if (first != lastFirst) {
+			if (lastFirst != -1 && now > lastTime) {
+				float measured = (first - lastFirst) * 1000f / (now - lastTime);
+				velocity += SMOOTHING * (measured - velocity);
+			}
+			lastFirst = first;
+			lastTime = now;
+		}
+
+		if (count == 0) {
+			firstPage = firstVisiblePage = 0;
+			lastPage = lastVisiblePage = -1;
+			return;
+		}
+
+		int last = Math.min(first + Math.max(visibleCount, 1), count) - 1;
+		int finalPage = (count - 1) / pageSize;
+		firstVisiblePage = first / pageSize;
+		lastVisiblePage = last / pageSize;
+
+		int spare = maxPages - (lastVisiblePage - firstVisiblePage + 1);
+		int aheadRows = visibleCount
+				+ (int) (Math.abs(velocity) * PREFETCH_MILLIS / 1000f);
+		int aheadPages = Math.min(Math.max(spare - 1, 0),
+				(aheadRows + pageSize - 1) / pageSize);
+		int behindPages = Math.max(Math.min(spare - aheadPages, 1), 0);
+
+		if (velocity >= 0) {
+			firstPage = Math.max(firstVisiblePage - behindPages, 0);
+			lastPage = Math.min(lastVisiblePage + aheadPages, finalPage);
+		} else {
+			firstPage = Math.max(firstVisiblePage - aheadPages, 0);
+			lastPage = Math.min(lastVisiblePage + behindPages, finalPage);
+		}
+	}
+
+	/**
+	 * The list has stopped scrolling.
+	 */
+	void onIdle() {
+		velocity = 0;
+	}
+
+	/**
+	 * Forgets the scroll history and the wanted pages.
+	 */
+	void reset() {
+		lastFirst = -1;
+		velocity = 0;
+		firstPage = firstVisiblePage = 0;
+		lastPage = lastVisiblePage = -1;
+	}
+
+	boolean isWanted(int page) {
+		return page >= firstPage && page <= lastPage;
+	}
+
+	boolean isVisible(int page) {
+		return page >= firstVisiblePage && page <= lastVisiblePage;
+	}
+
+	/**
+	 * @return whether the list is scrolling up.
+	 */
+	boolean isScrollingBack() {
+		return velocity < 0;
+	}
+
+	float getVelocity() {
+		return velocity;
+	}
+
+	int getFirstPage() {
+		return firstPage;
+	}
+
+	int getLastPage() {
+		return lastPage;
+	}
+
+	int getFirstVisiblePage() {
+		return firstVisiblePage;
+	}
+
+	int getLastVisiblePage() {
+		return lastVisiblePage;
+	}
+
+}
@@ -0,0 +1,344 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+
+/**
+ * An adapter over a large {@link PagedDataSource}, loading fixed-size pages
+ * on a background thread as they are needed and keeping only a bounded
+ * window of them in memory. Pages ahead of the visible ones are prefetched,
+ * the further the faster the list scrolls. Rows of pages not loaded yet are
+ * shown as placeholders. Has to be created, and used, on the UI thread.
+ *
+ * <p>
+ * Set with {@link ListFeature#setPagedListAdapter(PagedAdapter)}, which also
+ * routes the scroll events of the list here.
+ *
+ * @param <T>
+ *            the item type
+ * @author m.koziarkiewicz
+ *
+ */
+public abstract class PagedAdapter<T> extends BaseAdapter implements
+		AbsListView.OnScrollListener {
+
+	/**
+	 * Shared by all the paged adapters, so that neither the list loads nor
+	 * the diffs of {@link ListFeature} hold up paging.
+	 */
+	private static Executor pageExecutor;
+
+	private final PagedDataSource<T> source;
+
+	private final Executor executor;
+
+	private final int pageSize;
+
+	private final PageWindow window;
+
+	private final Handler handler = new Handler();
+
+	private final Map<Integer, List<T>> pages = new HashMap<Integer, List<T>>();
+
+	/** Pages requested, but not delivered yet. */
+	private final Set<Integer> requested = new HashSet<Integer>();
+
+	private int count;
+
+	/**
+	 * Incremented by every refresh, so that loads of stale data are dropped.
+	 */
+	private volatile int generation;
+
+	/** The wanted pages, as seen by the loading thread. */
+	private volatile int wantedFirst;
+
+	private volatile int wantedLast = -1;
+
+	/**
+	 * @param source
+	 *            the data
+	 * @param pageSize
+	 *            the number of rows per page
+	 * @param maxPages
+	 *            the number of pages kept in memory, at least 3
+	 */
+	public PagedAdapter(PagedDataSource<T> source, int pageSize, int maxPages) {
+		this(source, pageSize, maxPages, getPageExecutor());
+	}
+
+	PagedAdapter(PagedDataSource<T> source, int pageSize, int maxPages,
+			Executor executor) {
+		this.source = source;
+		this.pageSize = pageSize;
+		this.executor = executor;
+		window = new PageWindow(pageSize, maxPages);
+	}
+
+	static synchronized Executor getPageExecutor() {
+		if (pageExecutor == null) {
+			pageExecutor = ListFeature.newLoadExecutor("actimo-pages");
+		}
+		return pageExecutor;
+	}
+
+	/**
+	 * Drops all the pages and reloads the row count, e.g. after the data has
+	 * changed.
+	 */
+	public void refresh() {
+		final int current = ++generation;
+		pages.clear();
+		requested.clear();
+		window.reset();
+		publishWanted();
+		count = 0;
+		notifyDataSetChanged();
+
+		executor.execute(new Runnable() {
+			public void run() {
+				if (current != generation) {
+					return;
+				}
+				try {
+					final int loaded = source.getCount();
+					handler.post(new Runnable() {
+						public void run() {
+							if (current == generation) {
+								count = loaded;
+								notifyDataSetChanged();
+							}
+						}
+					});
+				} catch (Throwable t) {
+					postFailure(current, t);
+				}
+			}
+		});
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the row, or <code>null</code> if its page is not loaded yet;
+	 *         the page is then requested.
+	 */
+	public T getItem(int position) {
+		int page = position / pageSize;
+		List<T> rows = pages.get(page);
+		if (rows == null) {
+			request(page);
+			return null;
+		}
+		int index = position - page * pageSize;
+		return index < rows.size() ? rows.get(index) : null;
+	}
+
+	public long getItemId(int position) {
+		return position;
+	}
+
+	public final View getView(int position, View convertView, ViewGroup parent) {
+		return getView(position, getItem(position), convertView, parent);
+	}
+
+	/**
+	 * Creates or binds the view of a row.
+	 *
+	 * @param position
+	 *            the position of the row
+	 * @param item
+	 *            the row, or <code>null</code> for a placeholder; the view
+	 *            is rebound once the row is loaded
+	 * @param convertView
+	 *            the old view to reuse, if possible
+	 * @param parent
+	 *            the parent
+	 * @return the view
+	 */
+	protected abstract View getView(int position, T item, View convertView,
+			ViewGroup parent);
+
+	/**
+	 * Called on the UI thread when the data source has failed. The row count
+	 * is then 0 until the next refresh, a page is requested again the next
+	 * time it is needed. Does nothing by default.
+	 *
+	 * @param failure
+	 *            the exception thrown by the data source
+	 */
+	protected void onLoadFailed(Throwable failure) {
+	}
+
+	public void onScroll(AbsListView view, int firstVisibleItem,
+			int visibleItemCount, int totalItemCount) {
+		int headers = 0;
+		if (view instanceof ListView) {
+			headers = ((ListView) view).getHeaderViewsCount();
+		}
+		window.onScroll(Math.max(firstVisibleItem - headers, 0),
+				visibleItemCount, count, SystemClock.uptimeMillis());
+		publishWanted();
+
+		Iterator<Integer> loaded = pages.keySet().iterator();
+		while (loaded.hasNext()) {
+			if (!window.isWanted(loaded.next())) {
+				loaded.remove();
+			}
+		}
+
+		// visible pages first, then the nearest ones in the direction of
+		// scrolling; the loading thread takes them in this order
+		for (int page = window.getFirstVisiblePage(); page <= window
+				.getLastVisiblePage(); page++) {
+			request(page);
+		}
+		if (window.isScrollingBack()) {
+			for (int page = window.getFirstVisiblePage() - 1; page >= window
+					.getFirstPage(); page--) {
+				request(page);
+			}
+			for (int page = window.getLastVisiblePage() + 1; page <= window
+					.getLastPage(); page++) {
+				request(page);
+			}
+		} else {
+			for (int page = window.getLastVisiblePage() + 1; page <= window
+					.getLastPage(); page++) {
+				request(page);
+			}
+			for (int page = window.getFirstVisiblePage() - 1; page >= window
+					.getFirstPage(); page--) {
+				request(page);
+			}
+		}
+	}
+
+	public void onScrollStateChanged(AbsListView view, int scrollState) {
+		if (scrollState == SCROLL_STATE_IDLE) {
+			window.onIdle();
+		}
+	}
+
+	/**
+	 * @param position
+	 *            the position of a row
+	 * @return whether the row is in memory.
+	 */
+	public boolean isLoaded(int position) {
+		return pages.containsKey(position / pageSize);
+	}
+
+	/**
+	 * @return the number of pages in memory.
+	 */
+	public int getLoadedPageCount() {
+		return pages.size();
+	}
+
+	private void publishWanted() {
+		wantedFirst = window.getFirstPage();
+		wantedLast = window.getLastPage();
+	}
+
+	private void request(final int page) {
+		if (page * pageSize >= count || pages.containsKey(page)
+				|| !requested.add(page)) {
+			return;
+		}
+
+		final int current = generation;
+		final int start = page * pageSize;
+		final int size = Math.min(pageSize, count - start);
+		executor.execute(new Runnable() {
+			public void run() {
+				if (current != generation || !isStillWanted(page)) {
+					handler.post(new Runnable() {
+						public void run() {
+							if (current == generation) {
+								requested.remove(page);
+								// scrolled back to it since the check
+								if (window.isWanted(page)) {
+									request(page);
+								}
+							}
+						}
+					});
+					return;
+				}
+				try {
+					final List<T> rows = source.loadPage(start, size);
+					handler.post(new Runnable() {
+						public void run() {
+							deliver(current, page, rows);
+						}
+					});
+				} catch (Throwable t) {
+					postFailure(current, t);
+					handler.post(new Runnable() {
+						public void run() {
+							if (current == generation) {
+								requested.remove(page);
+							}
+						}
+					});
+				}
+			}
+		});
+	}
+
+	/**
+	 * Pages skipped by a fast scroll are not loaded at all. A page requested
+	 * by {@link #getItem(int)} before the first scroll event is always
+	 * loaded.
+	 */
+	private boolean isStillWanted(int page) {
+		int last = wantedLast;
+		return last == -1 || (page >= wantedFirst && page <= last);
+	}
+
+	private void deliver(int loadGeneration, int page, List<T> rows) {
+		if (loadGeneration != generation) {
+			return;
+		}
+		requested.remove(page);
+		if (wantedLast != -1 && !window.isWanted(page)) {
+			return;
+		}
+		pages.put(page, rows);
+		if (wantedLast == -1 || window.isVisible(page)) {
+			notifyDataSetChanged();
+		}
+	}
+
+	private void postFailure(final int loadGeneration, final Throwable failure) {
+		handler.post(new Runnable() {
+			public void run() {
+				if (loadGeneration == generation) {
+					onLoadFailed(failure);
+				}
+			}
+		});
+	}
+
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+import java.util.List;
+
+/**
+ * Provides the rows of a {@link PagedAdapter} page by page. Called on a
+ * background thread.
+ *
+ * @param <T>
+ *            the item type
+ * @author m.koziarkiewicz
+ *
+ */
+public interface PagedDataSource<T> {
+
+	/**
+	 * @return the total number of rows.
+	 * @throws Exception
+	 *             if the count cannot be determined
+	 */
+	public int getCount() throws Exception;
+
+	/**
+	 * @param start
+	 *            the position of the first row
+	 * @param count
+	 *            the number of rows, fewer only at the end of the data
+	 * @return the rows; the list is not modified afterwards.
+	 * @throws Exception
+	 *             if the rows cannot be loaded
+	 */
+	public List<T> loadPage(int start, int count) throws Exception;
+
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.actimo.feature.core.AbstractFeature;
+import org.actimo.feature.core.ConfigurationStableFeature;
+import org.actimo.feature.memory.LruMemoryCache;
+import org.actimo.feature.memory.ManagedCache;
+import org.actimo.feature.memory.MemoryBudget;
+import org.actimo.feature.memory.SizeEstimator;
+
+import android.graphics.Bitmap;
+
+/**
+ * Gives access to a process-wide LRU cache of bitmaps, shared by all the
+ * activities that add this feature, and to a pool of bitmaps for reuse.
+ * Other features reach it with
+ * <code>getFeature(BitmapCacheFeature.class)</code>.
+ * 
+ * <p>
+ * Both the cache and the pool are registered with {@link MemoryBudget}, the
+ * pool at a lower priority, so they are bounded by the shared budget and
+ * trimmed when the application goes to the background and on low memory. Cached bitmaps are never
+ * recycled, since they may still be displayed; pooled ones are, when
+ * trimmed. Thread-safe.
+ * 
+ * @author m.koziarkiewicz
+ * 
+ */
+public class BitmapCacheFeature extends AbstractFeature implements
+		ConfigurationStableFeature {
+
+	/** Name of the cache in {@link MemoryBudget}. */
+	public static final String CACHE_NAME = "org.actimo.bitmaps";
+
+	/** Name of the pool in {@link MemoryBudget}. */
+	public static final String POOL_NAME = "org.actimo.bitmaps.pool";
+
+	private static final int CACHE_PRIORITY = 0;
+
+	private static final int POOL_PRIORITY = -1;
+
+	private static final SizeEstimator<Bitmap> BITMAP_SIZE = new SizeEstimator<Bitmap>() {
+		public long sizeOf(Bitmap value) {
+			return (long) value.getRowBytes() * value.getHeight();
+		}
+	};
+
+	/**
+	 * The shared cache and pool, created and registered on first use.
+	 */
+	private static final class Shared {
+		private static final AtomicLong HITS = new AtomicLong();
+		private static final AtomicLong MISSES = new AtomicLong();
+		private static final AtomicLong EVICTIONS = new AtomicLong();
+
+		private static final LruMemoryCache<String, Bitmap> CACHE = new LruMemoryCache<String, Bitmap>(
+				BITMAP_SIZE, MemoryBudget.get()) {
+			@Override
+			protected void onEvicted(String key, Bitmap value) {
+				EVICTIONS.incrementAndGet();
+			}
+		};
+
+		private static final Pool POOL = new Pool();
+
+		static {
+			MemoryBudget.get().register(CACHE_NAME, CACHE, CACHE_PRIORITY);
+			MemoryBudget.get().register(POOL_NAME, POOL, POOL_PRIORITY);
+		}
+	}
+
+	@Override
+	protected void onSetActivity() {
+		if (getActivity() != null) {
+			MemoryBudget.get().initialize(getActivity());
+		}
+	}
+
+	/**
+	 * @param key
+	 *            the key
+	 * @return the cached bitmap, or <code>null</code> if none.
+	 */
+	public Bitmap get(String key) {
+		Bitmap bitmap = Shared.CACHE.get(key);
+		(bitmap == null ? Shared.MISSES : Shared.HITS).incrementAndGet();
+		return bitmap;
+	}
+
+	/**
+	 * Caches a bitmap, possibly evicting others to stay within the budget.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param bitmap
+	 *            the bitmap
+	 */
+	public void put(String key, Bitmap bitmap) {
+		Shared.CACHE.put(key, bitmap);
+	}
+
+	/**
+	 * @param key
+	 *            the key
+	 * @return the removed bitmap, or <code>null</code> if none.
+	 */
+	public Bitmap remove(String key) {
+		return Shared.CACHE.remove(key);
+	}
+
+	/**
+	 * Get a mutable bitmap, reused from the pool if one of the right size and
+	 * configuration is available, otherwise created.
+	 * 
+	 * @param width
+	 *            the width
+	 * @param height
+	 *            the height
+	 * @param config
+	 *            the configuration
+	 * @return a mutable bitmap, cleared to transparent
+	 */
+	public Bitmap obtain(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = Shared.POOL.take(width, height, config);
+		if (bitmap == null) {
+			return Bitmap.createBitmap(width, height, config);
+		}
+		bitmap.eraseColor(0);
+		return bitmap;
+	}
+
+	/**
+	 * Gives a bitmap up for reuse by {@link #obtain(int, int, Bitmap.Config)}.
+	 * The caller must not use it anymore. Immutable and recycled bitmaps are
+	 * ignored.
+	 * 
+	 * @param bitmap
+	 *            the bitmap
+	 */
+	public void release(Bitmap bitmap) {
+		if (bitmap.isMutable() && !bitmap.isRecycled()) {
+			Shared.POOL.give(bitmap);
+			MemoryBudget.get().enforce();
+		}
+	}
+
+	/**
+	 * @return the number of {@link #get(String)} calls that found a bitmap.
+	 */
+	public long getHitCount() {
+		return Shared.HITS.get();
+	}
+
+	/**
+	 * @return the number of {@link #get(String)} calls that found nothing.
+	 */
+	public long getMissCount() {
+		return Shared.MISSES.get();
+	}
+
+	/**
+	 * @return the number of bitmaps evicted from the cache to save memory.
+	 */
+	public long getEvictionCount() {
+		return Shared.EVICTIONS.get();
+	}
+
+	/**
+	 * @return the size of the cached bitmaps, in bytes.
+	 */
+	public long getCacheSize() {
+		return Shared.CACHE.size();
+	}
+
+	/**
+	 * @return the size of the pooled bitmaps, in bytes.
+	 */
+	public long getPoolSize() {
+		return Shared.POOL.size();
+	}
+
+	public void onReattach() {
+		// the cache is process-wide, nothing is bound to the activity
+	}
+
+	/**
+	 * Bitmaps given up for reuse, the oldest trimmed first.
+	 */
+	private static final class Pool implements ManagedCache {
+
+		/** In the order of release. */
+		private final List<Bitmap> bitmaps = new ArrayList<Bitmap>();
+
+		private long size;
+
+		synchronized void give(Bitmap bitmap) {
+			bitmaps.add(bitmap);
+			size += BITMAP_SIZE.sizeOf(bitmap);
+		}
+
+		synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+			for (int i = bitmaps.size() - 1; i >= 0; i--) {
+				Bitmap bitmap = bitmaps.get(i);
+				if (bitmap.getWidth() == width && bitmap.getHeight() == height
+						&& bitmap.getConfig() == config) {
+					bitmaps.remove(i);
+					size -= BITMAP_SIZE.sizeOf(bitmap);
+					return bitmap;
+				}
+			}
+			return null;
+		}
+
+		public synchronized long size() {
+			return size;
+		}
+
+		public synchronized void trimToSize(long maxSize) {
+			while (size > maxSize && !bitmaps.isEmpty()) {
+				Bitmap bitmap = bitmaps.remove(0);
+				size -= BITMAP_SIZE.sizeOf(bitmap);
+				bitmap.recycle();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import android.hardware.SensorEvent;
+
+/**
+ * A {@link SingleSensorFeature} running the sensor data through a
+ * {@link SensorPipeline}; only the samples passing all of its stages reach
+ * {@link #onSample(long, float[])}.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public abstract class FilteredSensorFeature extends SingleSensorFeature {
+
+	private final SensorPipeline pipeline;
+
+	/**
+	 * Create a new filtered sensor feature with default delay.
+	 *
+	 * @param sensorType
+	 *            type, from {@link android.hardware.Sensor}
+	 * @param pipeline
+	 *            the filters
+	 */
+	public FilteredSensorFeature(int sensorType, SensorPipeline pipeline) {
+		this(sensorType, -1, pipeline);
+	}
+
+	/**
+	 * Create a new filtered sensor feature.
+	 *
+	 * @param sensorType
+	 *            type, from {@link android.hardware.Sensor}
+	 * @param delay
+	 *            delay, from {@link android.hardware.SensorManager}
+	 * @param pipeline
+	 *            the filters
+	 */
+	public FilteredSensorFeature(int sensorType, int delay,
+			SensorPipeline pipeline) {
+		super(sensorType, delay);
+		this.pipeline = pipeline;
+	}
+
+	public final void onSensorChanged(SensorEvent event) {
+		if (pipeline.process(event.timestamp, event.values)) {
+			onSample(pipeline.getTimestamp(), pipeline.getOutput());
+		}
+	}
+
+	@Override
+	public void onResume() {
+		// stale filter state would distort the first samples
+		pipeline.reset();
+		super.onResume();
+	}
+
+	/**
+	 * Called with every sample which has passed the pipeline.
+	 *
+	 * @param timestamp
+	 *            the timestamp, in nanoseconds
+	 * @param values
+	 *            the filtered values; the array is reused, so it should not
+	 *            be kept
+	 */
+	protected abstract void onSample(long timestamp, float[] values);
+
+	public SensorPipeline getPipeline() {
+		return pipeline;
+	}
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import org.actimo.feature.core.AbstractFeature;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+/**
+ * A feature that collects data from several sensors while the activity is
+ * resumed. Sensor events are delivered on a dedicated thread, away from the
+ * UI, and copied into a {@link SensorSampleBuffer} per sensor, which
+ * consumers drain at their own pace. Subclasses may also process the samples
+ * as they arrive, in {@link #onSample(int, long, float[])}.
+ * 
+ * @author m.koziarkiewicz
+ * 
+ */
+public class MultiSensorFeature extends AbstractFeature {
+
+	private static final int DEFAULT_DELAY = SensorManager.SENSOR_DELAY_GAME;
+
+	private static final int DEFAULT_CAPACITY = 256;
+
+	/** Enough for all the sensor types but the rotation vector. */
+	private static final int DEFAULT_VALUES_PER_SAMPLE = 3;
+
+	private final int[] sensorTypes;
+
+	private final int delay;
+
+	private final SensorSampleBuffer[] buffers;
+
+	private SensorManager sensorManager;
+
+	private Sensor[] sensors;
+
+	private HandlerThread thread;
+
+	private final SensorEventListener listener = new SensorEventListener() {
+		public void onSensorChanged(SensorEvent event) {
+			feedSample(event.sensor.getType(), event.timestamp, event.values);
+		}
+
+		public void onAccuracyChanged(Sensor sensor, int accuracy) {
+			// not buffered
+		}
+	};
+
+	/**
+	 * Create a new feature with the default delay and buffers.
+	 * 
+	 * @param sensorTypes
+	 *            types, from {@link Sensor}
+	 */
+	public MultiSensorFeature(int... sensorTypes) {
+		this(sensorTypes, DEFAULT_DELAY, DEFAULT_CAPACITY,
+				DEFAULT_VALUES_PER_SAMPLE);
+	}
+
+	/**
+	 * Create a new feature.
+	 * 
+	 * @param sensorTypes
+	 *            types, from {@link Sensor}
+	 * @param delay
+	 *            delay, from {@link SensorManager}
+	 * @param capacity
+	 *            the number of samples buffered per sensor
+	 * @param valuesPerSample
+	 *            the number of values buffered per sample
+	 */
+	public MultiSensorFeature(int[] sensorTypes, int delay, int capacity,
+			int valuesPerSample) {
+		super();
+		this.delay = delay;
+		this.sensorTypes = sensorTypes.clone();
+		buffers = new SensorSampleBuffer[sensorTypes.length];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = new SensorSampleBuffer(capacity, valuesPerSample);
+		}
+	}
+
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		sensorManager = (SensorManager) getActivity().getSystemService(
+				Context.SENSOR_SERVICE);
+		sensors = new Sensor[sensorTypes.length];
+		for (int i = 0; i < sensorTypes.length; i++) {
+			sensors[i] = sensorManager.getDefaultSensor(sensorTypes[i]);
+		}
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+		thread = new HandlerThread("actimo-sensors");
+		thread.start();
+		Handler handler = new Handler(thread.getLooper());
+		for (Sensor sensor : sensors) {
+			if (sensor != null) {
+				sensorManager.registerListener(listener, sensor, delay,
+						handler);
+			}
+		}
+	}
+
+	@Override
+	public void onPause() {
+		super.onPause();
+		sensorManager.unregisterListener(listener);
+		thread.quit();
+		thread = null;
+	}
+
+	/**
+	 * Buffers and processes a sample as if it had been delivered by the
+	 * sensor, e.g. one read from a {@link SensorReplay}. Samples of the types
+	 * not requested are ignored. Should be called on a single thread, which
+	 * stands in for the sensor thread.
+	 * 
+	 * @param sensorType
+	 *            type, from {@link Sensor}
+	 * @param timestamp
+	 *            the timestamp, in nanoseconds
+	 * @param values
+	 *            the values
+	 */
+	public void feedSample(int sensorType, long timestamp, float[] values) {
+		SensorSampleBuffer buffer = bufferFor(sensorType);
+		if (buffer != null) {
+			buffer.write(timestamp, values);
+			onSample(sensorType, timestamp, values);
+		}
+	}
+
+	/**
+	 * Called on the sensor thread with every sample, after it has been
+	 * buffered. Does nothing by default.
+	 * 
+	 * @param sensorType
+	 *            type, from {@link Sensor}
+	 * @param timestamp
+	 *            the timestamp, in nanoseconds
+	 * @param values
+	 *            the values; the array belongs to the event and should not
+	 *            be kept
+	 */
+	protected void onSample(int sensorType, long timestamp, float[] values) {
+	}
+
+	/**
+	 * @param sensorType
+	 *            type, from {@link Sensor}
+	 * @return whether the device has a sensor of the type. Valid after
+	 *         {@link #onCreate(Bundle)}.
+	 */
+	public boolean hasSensor(int sensorType) {
+		for (int i = 0; i < sensorTypes.length; i++) {
+			if (sensorTypes[i] == sensorType) {
+				return sensors[i] != null;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param sensorType
+	 *            type, from {@link Sensor}
+	 * @return the buffer of the sensor, or <code>null</code> if the type was
+	 *         not requested.
+	 */
+	public SensorSampleBuffer bufferFor(int sensorType) {
+		for (int i = 0; i < sensorTypes.length; i++) {
+			if (sensorTypes[i] == sensorType) {
+				return buffers[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the thread the events are delivered on, or <code>null</code>
+	 *         while the activity is not resumed.
+	 */
+	HandlerThread getSensorThread() {
+		return thread;
+	}
+
+}
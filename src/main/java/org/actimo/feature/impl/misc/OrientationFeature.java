@@ -0,0 +1,111 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+
+/**
+ * A feature tracking the orientation of the device, fused from the
+ * accelerometer and the magnetic field sensor on the sensor thread of a
+ * {@link MultiSensorFeature}. The latest orientation is read with
+ * {@link #readOrientation(float[])} from any thread, without locking or
+ * allocating.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public class OrientationFeature extends MultiSensorFeature {
+
+	private static final float DEFAULT_TIME_CONSTANT = 0.1f;
+
+	/** The samples are consumed as they arrive, the buffers stay small. */
+	private static final int BUFFER_CAPACITY = 1;
+
+	private final OrientationFusion fusion;
+
+	/**
+	 * Odd while the snapshot is being written. The snapshot fields are
+	 * volatile as well, so that the sequence check is sound.
+	 */
+	private volatile int sequence;
+
+	private volatile long timestamp;
+
+	private volatile float azimuth;
+
+	private volatile float pitch;
+
+	private volatile float roll;
+
+	/**
+	 * Create a new feature with the game delay and light smoothing.
+	 */
+	public OrientationFeature() {
+		this(SensorManager.SENSOR_DELAY_GAME, DEFAULT_TIME_CONSTANT);
+	}
+
+	/**
+	 * Create a new feature.
+	 *
+	 * @param delay
+	 *            delay, from {@link SensorManager}
+	 * @param timeConstant
+	 *            the time constant of the low-pass filter applied to the
+	 *            sensor data, in seconds; 0 disables it
+	 */
+	public OrientationFeature(int delay, float timeConstant) {
+		super(new int[] { Sensor.TYPE_ACCELEROMETER,
+				Sensor.TYPE_MAGNETIC_FIELD }, delay, BUFFER_CAPACITY, 3);
+		fusion = new OrientationFusion(timeConstant);
+	}
+
+	@Override
+	public void onResume() {
+		// the sensor thread is started, and sees the reset state, only now
+		fusion.reset();
+		super.onResume();
+	}
+
+	@Override
+	protected void onSample(int sensorType, long timestamp, float[] values) {
+		if (fusion.onSample(sensorType, timestamp, values)) {
+			float[] result = fusion.getOrientation();
+			sequence++;
+			this.timestamp = timestamp;
+			azimuth = result[0];
+			pitch = result[1];
+			roll = result[2];
+			sequence++;
+		}
+	}
+
+	/**
+	 * Reads the latest orientation.
+	 *
+	 * @param out
+	 *            receives the azimuth, pitch and roll, in radians, as from
+	 *            {@link SensorManager#getOrientation(float[], float[])}
+	 * @return the timestamp of the orientation, in nanoseconds, or 0 if it
+	 *         is not known yet.
+	 */
+	public long readOrientation(float[] out) {
+		while (true) {
+			int before = sequence;
+			if ((before & 1) == 0) {
+				long readTimestamp = timestamp;
+				out[0] = azimuth;
+				out[1] = pitch;
+				out[2] = roll;
+				if (sequence == before) {
+					return readTimestamp;
+				}
+			}
+			Thread.yield();
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import android.hardware.Sensor;
+
+/**
+ * Fuses accelerometer and magnetic field samples into the rotation matrix and
+ * the orientation of the device, the same way
+ * <code>SensorManager.getRotationMatrix()</code> and
+ * <code>getOrientation()</code> do, but in plain Java and into preallocated
+ * arrays. Both inputs may be smoothed by a low-pass filter first. Not
+ * thread-safe; see {@link OrientationFeature} for a feature built on it.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public final class OrientationFusion {
+
+	/** Below this, the field is too weak or parallel to gravity. */
+	private static final float MIN_HORIZONTAL_NORM = 0.1f;
+
+	private final SensorPipeline gravityPipeline;
+
+	private final SensorPipeline geomagneticPipeline;
+
+	private final float[] gravity = new float[3];
+
+	private final float[] geomagnetic = new float[3];
+
+	private boolean hasGravity;
+
+	private boolean hasGeomagnetic;
+
+	private final float[] rotation = new float[9];
+
+	private final float[] orientation = new float[3];
+
+	/**
+	 * Create a new fusion without smoothing.
+	 */
+	public OrientationFusion() {
+		this(0f);
+	}
+
+	/**
+	 * Create a new fusion.
+	 *
+	 * @param timeConstant
+	 *            the time constant of the low-pass filter applied to both
+	 *            inputs, in seconds; 0 disables it
+	 */
+	public OrientationFusion(float timeConstant) {
+		if (timeConstant > 0) {
+			gravityPipeline = new SensorPipeline(3, SensorFilters.lowPass(3,
+					timeConstant));
+			geomagneticPipeline = new SensorPipeline(3, SensorFilters.lowPass(
+					3, timeConstant));
+		} else {
+			gravityPipeline = new SensorPipeline(3);
+			geomagneticPipeline = new SensorPipeline(3);
+		}
+	}
+
+	/**
+	 * Takes in a sample and updates the orientation, once samples of both
+	 * sensors are available.
+	 *
+	 * @param sensorType
+	 *            {@link Sensor#TYPE_ACCELEROMETER} or
+	 *            {@link Sensor#TYPE_MAGNETIC_FIELD}, other types are ignored
+	 * @param timestamp
+	 *            the timestamp, in nanoseconds
+	 * @param values
+	 *            the values
+	 * @return whether the orientation has been updated.
+	 */
+	public boolean onSample(int sensorType, long timestamp, float[] values) {
+		if (sensorType == Sensor.TYPE_ACCELEROMETER) {
+			gravityPipeline.process(timestamp, values);
+			System.arraycopy(gravityPipeline.getOutput(), 0, gravity, 0, 3);
+			hasGravity = true;
+		} else if (sensorType == Sensor.TYPE_MAGNETIC_FIELD) {
+			geomagneticPipeline.process(timestamp, values);
+			System.arraycopy(geomagneticPipeline.getOutput(), 0, geomagnetic,
+					0, 3);
+			hasGeomagnetic = true;
+		} else {
+			return false;
+		}
+		return hasGravity && hasGeomagnetic && fuse();
+	}
+
+	/**
+	 * @return whether the inputs have been usable.
+	 */
+	private boolean fuse() {
+		float ax = gravity[0], ay = gravity[1], az = gravity[2];
+		float ex = geomagnetic[0], ey = geomagnetic[1], ez = geomagnetic[2];
+
+		// east, perpendicular to both gravity and the field
+		float hx = ey * az - ez * ay;
+		float hy = ez * ax - ex * az;
+		float hz = ex * ay - ey * ax;
+		float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+		if (normH < MIN_HORIZONTAL_NORM) {
+			return false;
+		}
+		float invH = 1f / normH;
+		hx *= invH;
+		hy *= invH;
+		hz *= invH;
+
+		float invA = 1f / (float) Math.sqrt(ax * ax + ay * ay + az * az);
+		ax *= invA;
+		ay *= invA;
+		az *= invA;
+
+		// north
+		float mx = ay * hz - az * hy;
+		float my = az * hx - ax * hz;
+		float mz = ax * hy - ay * hx;
+
+		rotation[0] = hx;
+		rotation[1] = hy;
+		rotation[2] = hz;
+		rotation[3] = mx;
+		rotation[4] = my;
+		rotation[5] = mz;
+		rotation[6] = ax;
+		rotation[7] = ay;
+		rotation[8] = az;
+
+		orientation[0] = (float) Math.atan2(rotation[1], rotation[4]);
+		orientation[1] = (float) Math.asin(-rotation[7]);
+		orientation[2] = (float) Math.atan2(-rotation[6], rotation[8]);
+		return true;
+	}
+
+	/**
+	 * Forgets all the samples and the filter state.
+	 */
+	public void reset() {
+		gravityPipeline.reset();
+		geomagneticPipeline.reset();
+		hasGravity = false;
+		hasGeomagnetic = false;
+	}
+
+	/**
+	 * @return the last rotation matrix, row-major 3x3, as from
+	 *         <code>SensorManager.getRotationMatrix()</code>. The array is
+	 *         reused.
+	 */
+	public float[] getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * @return the last azimuth, pitch and roll, in radians, as from
+	 *         <code>SensorManager.getOrientation()</code>. The array is
+	 *         reused.
+	 */
+	public float[] getOrientation() {
+		return orientation;
+	}
+
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+/**
+ * A stateful stage of a {@link SensorPipeline}. Implementations keep all
+ * their state in arrays allocated on construction, so processing a sample
+ * allocates nothing. See {@link SensorFilters} for the stock ones.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public interface SensorFilter {
+
+	/**
+	 * Processes a single sample in place.
+	 *
+	 * @param timestamp
+	 *            the timestamp of the sample, in nanoseconds
+	 * @param values
+	 *            the values, as many as the pipeline dimension
+	 * @return whether the sample is passed on; if not, the following stages
+	 *         are skipped.
+	 */
+	public boolean process(long timestamp, float[] values);
+
+	/**
+	 * Clears the state, as if no sample had been processed yet.
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+/**
+ * Factory of the stock {@link SensorFilter}s. Every filter works on a fixed
+ * number of values per sample, given on creation, and should be used by a
+ * single pipeline only.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public final class SensorFilters {
+
+	private static final float NANOS_PER_SECOND = 1e9f;
+
+	private SensorFilters() {
+	}
+
+	/**
+	 * Creates a first-order low-pass filter. The smoothing factor is derived
+	 * from the time between samples, so the cut-off does not depend on the
+	 * sensor rate.
+	 *
+	 * @param dimension
+	 *            the number of values per sample
+	 * @param timeConstant
+	 *            the time constant, in seconds
+	 */
+	public static SensorFilter lowPass(int dimension, float timeConstant) {
+		return new LowPass(dimension, timeConstant, false);
+	}
+
+	/**
+	 * Creates a first-order high-pass filter, i.e. the input minus its
+	 * low-pass. Useful e.g. to remove gravity from accelerometer data.
+	 *
+	 * @param dimension
+	 *            the number of values per sample
+	 * @param timeConstant
+	 *            the time constant, in seconds
+	 */
+	public static SensorFilter highPass(int dimension, float timeConstant) {
+		return new LowPass(dimension, timeConstant, true);
+	}
+
+	/**
+	 * Creates a filter passing only every n-th sample.
+	 *
+	 * @param factor
+	 *            the n
+	 */
+	public static SensorFilter decimation(int factor) {
+		return new Decimation(factor);
+	}
+
+	/**
+	 * Creates a moving median filter, removing spikes.
+	 *
+	 * @param dimension
+	 *            the number of values per sample
+	 * @param window
+	 *            the number of samples the median is taken from
+	 */
+	public static SensorFilter median(int dimension, int window) {
+		return new Median(dimension, window);
+	}
+
+	/**
+	 * Creates a filter passing only the samples at which the magnitude of the
+	 * values rises to or above a threshold. The filter rearms once the
+	 * magnitude falls below the threshold again.
+	 *
+	 * @param threshold
+	 *            the magnitude threshold
+	 */
+	public static SensorFilter threshold(float threshold) {
+		return new Threshold(threshold);
+	}
+
+	private static void checkPositive(int value, String name) {
+		if (value <= 0) {
+			throw new IllegalArgumentException("The " + name
+					+ " has to be positive");
+		}
+	}
+
+	private static final class LowPass implements SensorFilter {
+
+		private final float timeConstant;
+
+		private final boolean highPass;
+
+		private final float[] state;
+
+		private long lastTimestamp;
+
+		private boolean started;
+
+		LowPass(int dimension, float timeConstant, boolean highPass) {
+			checkPositive(dimension, "dimension");
+			this.timeConstant = timeConstant;
+			this.highPass = highPass;
+			state = new float[dimension];
+		}
+
+		public boolean process(long timestamp, float[] values) {
+			if (!started) {
+				System.arraycopy(values, 0, state, 0, state.length);
+				started = true;
+			} else {
+				float dt = (timestamp - lastTimestamp) / NANOS_PER_SECOND;
+				float alpha = dt > 0 ? dt / (timeConstant + dt) : 0;
+				for (int i = 0; i < state.length; i++) {
+					state[i] += alpha * (values[i] - state[i]);
+				}
+			}
+			lastTimestamp = timestamp;
+
+			for (int i = 0; i < state.length; i++) {
+				values[i] = highPass ? values[i] - state[i] : state[i];
+			}
+			return true;
+		}
+
+		public void reset() {
+			started = false;
+		}
+
+	}
+
+	private static final class Decimation implements SensorFilter {
+
+		private final int factor;
+
+		private int counter;
+
+		Decimation(int factor) {
+			checkPositive(factor, "factor");
+			this.factor = factor;
+		}
+
+		public boolean process(long timestamp, float[] values) {
+			boolean passed = counter == 0;
+			counter = (counter + 1) % factor;
+			return passed;
+		}
+
+		public void reset() {
+			counter = 0;
+		}
+
+	}
+
+	private static final class Median implements SensorFilter {
+
+		private final int dimension;
+
+		private final int window;
+
+		/** Indexed by <code>value * window + position</code>. */
+		private final float[] history;
+
+		private final float[] sorted;
+
+		private int position;
+
+		private int filled;
+
+		Median(int dimension, int window) {
+			checkPositive(dimension, "dimension");
+			checkPositive(window, "window");
+			this.dimension = dimension;
+			this.window = window;
+			history = new float[dimension * window];
+			sorted = new float[window];
+		}
+
+		public boolean process(long timestamp, float[] values) {
+			if (filled < window) {
+				filled++;
+			}
+			for (int i = 0; i < dimension; i++) {
+				int base = i * window;
+				history[base + position] = values[i];
+
+				// insertion sort, the windows are small
+				for (int j = 0; j < filled; j++) {
+					float value = history[base + j];
+					int k = j;
+					while (k > 0 && sorted[k - 1] > value) {
+						sorted[k] = sorted[k - 1];
+						k--;
+					}
+					sorted[k] = value;
+				}
+				values[i] = sorted[filled / 2];
+			}
+			position = (position + 1) % window;
+			return true;
+		}
+
+		public void reset() {
+			position = 0;
+			filled = 0;
+		}
+
+	}
+
+	private static final class Threshold implements SensorFilter {
+
+		private final float squaredThreshold;
+
+		private boolean armed = true;
+
+		Threshold(float threshold) {
+			squaredThreshold = threshold * threshold;
+		}
+
+		public boolean process(long timestamp, float[] values) {
+			float squared = 0;
+			for (float value : values) {
+				squared += value * value;
+			}
+
+			if (squared < squaredThreshold) {
+				armed = true;
+				return false;
+			}
+			if (armed) {
+				armed = false;
+				return true;
+			}
+			return false;
+		}
+
+		public void reset() {
+			armed = true;
+		}
+
+	}
+
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+/**
+ * Shares a single {@link SensorManager} registration per sensor type among
+ * all the listeners of the process. The sensor is registered at the fastest
+ * delay requested by any subscriber, and unregistered when the last one
+ * unsubscribes. Every subscriber receives the samples at roughly the delay it
+ * has requested itself. Thread-safe; events are delivered on the main thread.
+ *
+ * <p>
+ * {@link SingleSensorFeature}s use the hub once
+ * {@link SingleSensorFeature#setShared(boolean)} has been called.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public final class SensorHub {
+
+	/**
+	 * Nominal sampling periods of the SENSOR_DELAY_* constants, in
+	 * nanoseconds.
+	 */
+	private static final long[] PERIODS = { 0L, 20000000L, 66667000L,
+			200000000L };
+
+	/** Samples arriving up to this share of the period early are delivered. */
+	private static final int JITTER_DIVISOR = 4;
+
+	private static final class Holder {
+		private static final SensorHub INSTANCE = new SensorHub();
+	}
+
+	private final Map<Integer, Channel> channels;
+
+	private SensorManager sensorManager;
+
+	private SensorHub() {
+		this(null);
+	}
+
+	/**
+	 * @param sensorManager
+	 *            the manager to register with, or <code>null</code> to use
+	 *            the one of the first subscriber's context
+	 */
+	SensorHub(SensorManager sensorManager) {
+		channels = new HashMap<Integer, Channel>();
+		this.sensorManager = sensorManager;
+	}
+
+	/**
+	 * @return the hub instance
+	 */
+	public static SensorHub get() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Subscribes a listener to the default sensor of a type, or changes the
+	 * delay of an existing subscription.
+	 *
+	 * @param context
+	 *            any context; only the application context is kept
+	 * @param sensorType
+	 *            type, from {@link Sensor}
+	 * @param delay
+	 *            delay, from {@link SensorManager}
+	 * @param listener
+	 *            the listener
+	 * @return whether the sensor is registered; <code>false</code> if the
+	 *         device has no such sensor or it cannot be registered, in which
+	 *         case the listener is not subscribed.
+	 */
+	public synchronized boolean subscribe(Context context, int sensorType,
+			int delay, SensorEventListener listener) {
+		if (sensorManager == null) {
+			sensorManager = (SensorManager) context.getApplicationContext()
+					.getSystemService(Context.SENSOR_SERVICE);
+		}
+
+		Channel channel = channels.get(sensorType);
+		if (channel == null) {
+			Sensor sensor = sensorManager.getDefaultSensor(sensorType);
+			if (sensor == null) {
+				return false;
+			}
+			channel = new Channel(sensor);
+			channels.put(sensorType, channel);
+		}
+		channel.put(listener, delay);
+		if (channel.updateRegistration()) {
+			return true;
+		}
+		unsubscribe(sensorType, listener);
+		return false;
+	}
+
+	/**
+	 * Removes a subscription; does nothing if there is none.
+	 *
+	 * @param sensorType
+	 *            type, from {@link Sensor}
+	 * @param listener
+	 *            the listener
+	 */
+	public synchronized void unsubscribe(int sensorType,
+			SensorEventListener listener) {
+		Channel channel = channels.get(sensorType);
+		if (channel == null || !channel.remove(listener)) {
+			return;
+		}
+		channel.updateRegistration();
+		if (channel.subscribers.length == 0) {
+			channels.remove(sensorType);
+		}
+	}
+
+	/**
+	 * @param sensorType
+	 *            type, from {@link Sensor}
+	 * @return the number of listeners subscribed to the sensor.
+	 */
+	public synchronized int getSubscriberCount(int sensorType) {
+		Channel channel = channels.get(sensorType);
+		return channel == null ? 0 : channel.subscribers.length;
+	}
+
+	/**
+	 * @param sensorType
+	 *            type, from {@link Sensor}
+	 * @return the delay the sensor is registered with, or -1 if it is not.
+	 */
+	public synchronized int getRegisteredDelay(int sensorType) {
+		Channel channel = channels.get(sensorType);
+		return channel == null ? -1 : channel.registeredDelay;
+	}
+
+	private static long periodOf(int delay) {
+		return delay >= 0 && delay < PERIODS.length ? PERIODS[delay] : 0L;
+	}
+
+	/**
+	 * A subscription, with the timestamp of the last sample delivered to it.
+	 */
+	private static final class Subscriber {
+
+		private final SensorEventListener listener;
+
+		private final int delay;
+
+		private final long minInterval;
+
+		private long lastTimestamp = Long.MIN_VALUE;
+
+		Subscriber(SensorEventListener listener, int delay) {
+			this.listener = listener;
+			this.delay = delay;
+			long period = periodOf(delay);
+			minInterval = period - period / JITTER_DIVISOR;
+		}
+
+	}
+
+	/**
+	 * The registration of a single sensor, fanning its events out.
+	 */
+	private final class Channel implements SensorEventListener {
+
+		private final Sensor sensor;
+
+		/** Copy-on-write, so that events can be delivered without locking. */
+		private volatile Subscriber[] subscribers = new Subscriber[0];
+
+		private int registeredDelay = -1;
+
+		Channel(Sensor sensor) {
+			this.sensor = sensor;
+		}
+
+		private int indexOf(SensorEventListener listener) {
+			for (int i = 0; i < subscribers.length; i++) {
+				if (subscribers[i].listener == listener) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void put(SensorEventListener listener, int delay) {
+			Subscriber[] current = subscribers;
+			int index = indexOf(listener);
+			Subscriber[] updated;
+			if (index == -1) {
+				updated = new Subscriber[current.length + 1];
+				System.arraycopy(current, 0, updated, 0, current.length);
+				index = current.length;
+			} else {
+				updated = current.clone();
+			}
+			updated[index] = new Subscriber(listener, delay);
+			subscribers = updated;
+		}
+
+		boolean remove(SensorEventListener listener) {
+			Subscriber[] current = subscribers;
+			int index = indexOf(listener);
+			if (index == -1) {
+				return false;
+			}
+			Subscriber[] updated = new Subscriber[current.length - 1];
+			System.arraycopy(current, 0, updated, 0, index);
+			System.arraycopy(current, index + 1, updated, index,
+					updated.length - index);
+			subscribers = updated;
+			return true;
+		}
+
+		/**
+		 * (Re-)registers the sensor at the fastest requested delay, or
+		 * unregisters it if nobody is subscribed.
+		 * 
+		 * @return <code>false</code> if the sensor could not be registered.
+		 */
+		boolean updateRegistration() {
+			int delay = -1;
+			for (Subscriber subscriber : subscribers) {
+				if (delay == -1 || subscriber.delay < delay) {
+					delay = subscriber.delay;
+				}
+			}
+			if (delay == registeredDelay) {
+				return true;
+			}
+
+			if (registeredDelay != -1) {
+				sensorManager.unregisterListener(this);
+				registeredDelay = -1;
+			}
+			if (delay != -1) {
+				if (!sensorManager.registerListener(this, sensor, delay)) {
+					return false;
+				}
+				registeredDelay = delay;
+			}
+			return true;
+		}
+
+		public void onSensorChanged(SensorEvent event) {
+			for (Subscriber subscriber : subscribers) {
+				if (subscriber.lastTimestamp == Long.MIN_VALUE
+						|| event.timestamp - subscriber.lastTimestamp >= subscriber.minInterval) {
+					subscriber.lastTimestamp = event.timestamp;
+					subscriber.listener.onSensorChanged(event);
+				}
+			}
+		}
+
+		public void onAccuracyChanged(Sensor sensor, int accuracy) {
+			for (Subscriber subscriber : subscribers) {
+				subscriber.listener.onAccuracyChanged(sensor, accuracy);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+/**
+ * A chain of {@link SensorFilter}s with a fixed number of values per sample.
+ * Samples are copied into a preallocated array which the stages then modify
+ * in place. Not thread-safe; a pipeline is meant to be fed from the thread
+ * receiving the sensor events or draining a {@link SensorSampleBuffer}.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public final class SensorPipeline {
+
+	private final SensorFilter[] stages;
+
+	private final float[] output;
+
+	private long timestamp;
+
+	/**
+	 * @param dimension
+	 *            the number of values per sample; further ones are ignored,
+	 *            missing ones are 0
+	 * @param stages
+	 *            the stages, in order
+	 */
+	public SensorPipeline(int dimension, SensorFilter... stages) {
+		if (dimension <= 0) {
+			throw new IllegalArgumentException(
+					"The dimension has to be positive");
+		}
+		this.stages = stages.clone();
+		output = new float[dimension];
+	}
+
+	/**
+	 * Runs a sample through the stages.
+	 *
+	 * @param timestamp
+	 *            the timestamp, in nanoseconds
+	 * @param values
+	 *            the values
+	 * @return whether the sample has passed all the stages, in which case the
+	 *         result is available from {@link #getOutput()}.
+	 */
+	public boolean process(long timestamp, float[] values) {
+		return process(timestamp, values, 0, values.length);
+	}
+
+	/**
+	 * Runs a sample through the stages; handy for batches drained from a
+	 * {@link SensorSampleBuffer}.
+	 *
+	 * @param timestamp
+	 *            the timestamp, in nanoseconds
+	 * @param values
+	 *            the array holding the values
+	 * @param offset
+	 *            the index of the first value
+	 * @param length
+	 *            the number of values
+	 * @return whether the sample has passed all the stages, in which case the
+	 *         result is available from {@link #getOutput()}.
+	 */
+	public boolean process(long timestamp, float[] values, int offset,
+			int length) {
+		int copied = Math.min(length, output.length);
+		System.arraycopy(values, offset, output, 0, copied);
+		for (int i = copied; i < output.length; i++) {
+			output[i] = 0;
+		}
+
+		this.timestamp = timestamp;
+		for (SensorFilter stage : stages) {
+			if (!stage.process(timestamp, output)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Resets all the stages.
+	 */
+	public void reset() {
+		for (SensorFilter stage : stages) {
+			stage.reset();
+		}
+	}
+
+	/**
+	 * @return the values of the last processed sample. The array is reused
+	 *         by every call to <code>process()</code>, so it should not be
+	 *         kept or modified.
+	 */
+	public float[] getOutput() {
+		return output;
+	}
+
+	/**
+	 * @return the timestamp of the last processed sample.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getDimension() {
+		return output.length;
+	}
+
+}
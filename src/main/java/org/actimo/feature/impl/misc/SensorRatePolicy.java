@@ -0,0 +1,50 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+/**
+ * Decides the sampling rate of a {@link SingleSensorFeature} in adaptive
+ * mode. Called on the UI thread; the sample callback is invoked for every
+ * event, so it should neither allocate nor block. See
+ * {@link StabilityRatePolicy} for the stock implementation.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public interface SensorRatePolicy {
+
+	/**
+	 * @return the delay, from {@link android.hardware.SensorManager}, to
+	 *         register with when the activity is resumed.
+	 */
+	public int getInitialDelay();
+
+	/**
+	 * @param timestamp
+	 *            the timestamp of the sample, in nanoseconds
+	 * @param values
+	 *            the values of the sample
+	 * @param currentDelay
+	 *            the delay currently in use
+	 * @return the delay to use from now on.
+	 */
+	public int onSample(long timestamp, float[] values, int currentDelay);
+
+	/**
+	 * @param hasFocus
+	 *            whether the window has focus now
+	 * @param currentDelay
+	 *            the delay currently in use
+	 * @return the delay to use from now on.
+	 */
+	public int onWindowFocusChanged(boolean hasFocus, int currentDelay);
+
+	/**
+	 * Clears the state, called when the sensor is registered.
+	 */
+	public void reset();
+
+}
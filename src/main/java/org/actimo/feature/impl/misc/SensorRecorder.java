@@ -0,0 +1,167 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records sensor samples into an append-only, memory-mapped binary file,
+ * read back by {@link SensorReplay}. The file is mapped in chunks, so
+ * recording a sample is a couple of memory writes; only moving to the next
+ * chunk touches the file system, and nothing is synced to storage before
+ * {@link #close()}, so recording is safe on the sensor delivery thread. The
+ * sample count in the header is kept up to date, so a recording which has
+ * not been closed, e.g. because the process was killed, is still readable;
+ * the mapped pages are written back by the system either way.
+ *
+ * <p>
+ * The format is little-endian: a header of {@link #MAGIC}, the format
+ * version, the sensor type, the number of values per sample and the sample
+ * count, all ints, followed by the samples, each a long timestamp and the
+ * float values. Not thread-safe.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public final class SensorRecorder {
+
+	/** Identifies recordings, "ASNR". */
+	public static final int MAGIC = 0x41534E52;
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 5 * 4;
+
+	static final int COUNT_OFFSET = 4 * 4;
+
+	private static final int SAMPLES_PER_CHUNK = 4096;
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final int valuesPerSample;
+
+	private final int sampleSize;
+
+	private final MappedByteBuffer header;
+
+	private MappedByteBuffer chunk;
+
+	private long chunkStart;
+
+	private int count;
+
+	/**
+	 * Creates a new recording, replacing the file if it exists.
+	 *
+	 * @param target
+	 *            the file
+	 * @param sensorType
+	 *            type, from {@link android.hardware.Sensor}
+	 * @param valuesPerSample
+	 *            the number of values recorded per sample, further ones are
+	 *            ignored
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	public SensorRecorder(File target, int sensorType, int valuesPerSample)
+			throws IOException {
+		if (valuesPerSample <= 0) {
+			throw new IllegalArgumentException(
+					"The number of values has to be positive");
+		}
+		this.valuesPerSample = valuesPerSample;
+		sampleSize = sampleSize(valuesPerSample);
+
+		file = new RandomAccessFile(target, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(sensorType)
+				.putInt(valuesPerSample).putInt(0);
+
+		chunkStart = HEADER_SIZE;
+		mapChunk();
+	}
+
+	static int sampleSize(int valuesPerSample) {
+		return 8 + 4 * valuesPerSample;
+	}
+
+	private void mapChunk() throws IOException {
+		chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart,
+				(long) SAMPLES_PER_CHUNK * sampleSize);
+		chunk.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Appends a sample.
+	 *
+	 * @param timestamp
+	 *            the timestamp, in nanoseconds
+	 * @param values
+	 *            the values; missing ones are recorded as 0
+	 * @throws IOException
+	 *             if the file cannot be extended
+	 */
+	public void write(long timestamp, float[] values) throws IOException {
+		if (chunk == null) {
+			throw new IllegalStateException("The recording has been closed");
+		}
+		if (!chunk.hasRemaining()) {
+			chunkStart += chunk.capacity();
+			mapChunk();
+		}
+
+		chunk.putLong(timestamp);
+		int recorded = Math.min(values.length, valuesPerSample);
+		for (int i = 0; i < recorded; i++) {
+			chunk.putFloat(values[i]);
+		}
+		for (int i = recorded; i < valuesPerSample; i++) {
+			chunk.putFloat(0);
+		}
+		header.putInt(COUNT_OFFSET, ++count);
+	}
+
+	/**
+	 * @return the number of samples recorded so far.
+	 */
+	public int getSampleCount() {
+		return count;
+	}
+
+	/**
+	 * Flushes the recording and trims the file to the recorded samples. Does
+	 * nothing if already closed.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void close() throws IOException {
+		if (chunk == null) {
+			return;
+		}
+		try {
+			chunk.force();
+			header.force();
+			chunk = null;
+			channel.truncate(HEADER_SIZE + (long) count * sampleSize);
+		} finally {
+			channel.close();
+			file.close();
+		}
+	}
+
+}
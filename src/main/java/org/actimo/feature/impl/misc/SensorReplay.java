@@ -0,0 +1,236 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+
+/**
+ * Reads a recording made by {@link SensorRecorder}, either sample by sample
+ * with {@link #next()}, or by feeding it to a {@link SensorEventListener} such
+ * as a {@link SingleSensorFeature}, or to a {@link MultiSensorFeature}, at the
+ * original or a changed speed. Needs
+ * no sensor, so sensor processing can be tested and benchmarked off the
+ * device. Reading allocates nothing per sample. Not thread-safe.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public final class SensorReplay {
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private final MappedByteBuffer buffer;
+
+	private final int sensorType;
+
+	private final int valuesPerSample;
+
+	private final int sampleCount;
+
+	private final float[] values;
+
+	private long timestamp;
+
+	private int position;
+
+	private long startTimestamp;
+
+	private long startNanos;
+
+	/**
+	 * Opens a recording.
+	 *
+	 * @param source
+	 *            the file
+	 * @throws IOException
+	 *             if the file cannot be read or is not a recording
+	 */
+	public SensorReplay(File source) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(source, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			// the mapping stays valid
+			file.close();
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buffer.capacity() < SensorRecorder.HEADER_SIZE
+				|| buffer.getInt() != SensorRecorder.MAGIC) {
+			throw new IOException("Not a sensor recording: " + source);
+		}
+		int version = buffer.getInt();
+		if (version != SensorRecorder.VERSION) {
+			throw new IOException("Unsupported recording version " + version
+					+ ": " + source);
+		}
+		sensorType = buffer.getInt();
+		valuesPerSample = buffer.getInt();
+		int recorded = buffer.getInt();
+		if (valuesPerSample <= 0 || recorded < 0) {
+			throw new IOException("Corrupt recording header: " + source);
+		}
+		int stored = (buffer.capacity() - SensorRecorder.HEADER_SIZE)
+				/ SensorRecorder.sampleSize(valuesPerSample);
+		sampleCount = Math.min(recorded, stored);
+		values = new float[valuesPerSample];
+	}
+
+	/**
+	 * Moves to the next sample.
+	 *
+	 * @return <code>false</code> if there are no more samples.
+	 */
+	public boolean next() {
+		if (position == sampleCount) {
+			return false;
+		}
+		timestamp = buffer.getLong();
+		for (int i = 0; i < valuesPerSample; i++) {
+			values[i] = buffer.getFloat();
+		}
+		position++;
+		return true;
+	}
+
+	/**
+	 * Moves back to the beginning of the recording.
+	 */
+	public void rewind() {
+		buffer.position(SensorRecorder.HEADER_SIZE);
+		position = 0;
+	}
+
+	/**
+	 * Feeds the remaining samples to a listener on the calling thread,
+	 * blocking until done. A single event instance is reused for all the
+	 * samples; its <code>sensor</code> field is not set, so listeners reading
+	 * it, like the one of a {@link MultiSensorFeature}, cannot be fed this way.
+	 *
+	 * @param listener
+	 *            the listener
+	 * @param speed
+	 *            the playback speed, 1 for the original timing, 2 for twice as
+	 *            fast etc.; 0 replays without any pauses
+	 * @return the number of samples fed; less than the remaining ones if the
+	 *         thread has been interrupted.
+	 * @see #replay(MultiSensorFeature, float)
+	 */
+	public int replay(SensorEventListener listener, float speed) {
+		SensorEvent event = newEvent(valuesPerSample);
+		int fed = 0;
+		while (next() && awaitSample(fed, speed)) {
+			event.timestamp = timestamp;
+			System.arraycopy(values, 0, event.values, 0, valuesPerSample);
+			listener.onSensorChanged(event);
+			fed++;
+		}
+		return fed;
+	}
+
+	/**
+	 * Feeds the remaining samples to a feature on the calling thread, as
+	 * samples of the recorded sensor type, blocking until done.
+	 *
+	 * @param feature
+	 *            the feature
+	 * @param speed
+	 *            the playback speed, as for
+	 *            {@link #replay(SensorEventListener, float)}
+	 * @return the number of samples fed; less than the remaining ones if the
+	 *         thread has been interrupted.
+	 */
+	public int replay(MultiSensorFeature feature, float speed) {
+		int fed = 0;
+		while (next() && awaitSample(fed, speed)) {
+			feature.feedSample(sensorType, timestamp, values);
+			fed++;
+		}
+		return fed;
+	}
+
+	/**
+	 * Sleeps until the current sample is due.
+	 *
+	 * @return <code>false</code> if the thread has been interrupted.
+	 */
+	private boolean awaitSample(int fed, float speed) {
+		if (speed <= 0) {
+			return true;
+		}
+		if (fed == 0) {
+			startTimestamp = timestamp;
+			startNanos = System.nanoTime();
+			return true;
+		}
+		long due = startNanos + (long) ((timestamp - startTimestamp) / speed);
+		long wait = due - System.nanoTime();
+		if (wait > 0) {
+			try {
+				Thread.sleep(wait / NANOS_PER_MILLI,
+						(int) (wait % NANOS_PER_MILLI));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * SensorEvent only has a package-private constructor.
+	 */
+	private static SensorEvent newEvent(int size) {
+		try {
+			Constructor<SensorEvent> constructor = SensorEvent.class
+					.getDeclaredConstructor(int.class);
+			constructor.setAccessible(true);
+			return constructor.newInstance(size);
+		} catch (Exception e) {
+			throw new IllegalStateException(
+					"Cannot create a sensor event for replay", e);
+		}
+	}
+
+	/**
+	 * @return the timestamp of the current sample, in nanoseconds.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the values of the current sample. The array is reused for every
+	 *         sample.
+	 */
+	public float[] getValues() {
+		return values;
+	}
+
+	public int getSensorType() {
+		return sensorType;
+	}
+
+	public int getValuesPerSample() {
+		return valuesPerSample;
+	}
+
+	public int getSampleCount() {
+		return sampleCount;
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+/**
+ * A fixed-size ring buffer of sensor samples, each a timestamp and a fixed
+ * number of values, stored in preallocated primitive arrays. Neither writing
+ * nor draining allocates. When full, the oldest samples are overwritten.
+ * Thread-safe, meant for one writing and one draining thread.
+ * 
+ * @author m.koziarkiewicz
+ * 
+ */
+public final class SensorSampleBuffer {
+
+	private final int capacity;
+
+	private final int valuesPerSample;
+
+	private final long[] timestamps;
+
+	private final float[] values;
+
+	/** Index of the oldest sample. */
+	private int head;
+
+	private int count;
+
+	private long dropped;
+
+	/**
+	 * @param capacity
+	 *            the number of samples kept
+	 * @param valuesPerSample
+	 *            the number of values kept per sample, further ones are
+	 *            ignored
+	 */
+	public SensorSampleBuffer(int capacity, int valuesPerSample) {
+		if (capacity <= 0 || valuesPerSample <= 0) {
+			throw new IllegalArgumentException(
+					"The capacity and the number of values have to be positive");
+		}
+		this.capacity = capacity;
+		this.valuesPerSample = valuesPerSample;
+		timestamps = new long[capacity];
+		values = new float[capacity * valuesPerSample];
+	}
+
+	/**
+	 * Appends a sample, overwriting the oldest one if full.
+	 * 
+	 * @param timestamp
+	 *            the timestamp, in nanoseconds
+	 * @param sample
+	 *            the values; missing ones are stored as 0
+	 */
+	public synchronized void write(long timestamp, float[] sample) {
+		int index;
+		if (count == capacity) {
+			index = head;
+			head = (head + 1) % capacity;
+			dropped++;
+		} else {
+			index = (head + count) % capacity;
+			count++;
+		}
+
+		timestamps[index] = timestamp;
+		int offset = index * valuesPerSample;
+		int copied = Math.min(sample.length, valuesPerSample);
+		System.arraycopy(sample, 0, values, offset, copied);
+		for (int i = copied; i < valuesPerSample; i++) {
+			values[offset + i] = 0;
+		}
+	}
+
+	/**
+	 * Moves the oldest samples out of the buffer.
+	 * 
+	 * @param timestampsOut
+	 *            receives the timestamps
+	 * @param valuesOut
+	 *            receives the values, {@link #getValuesPerSample()} per
+	 *            sample
+	 * @param maxSamples
+	 *            the maximum number of samples to move; the arrays have to
+	 *            be large enough for it
+	 * @return the number of samples moved
+	 */
+	public synchronized int drain(long[] timestampsOut, float[] valuesOut,
+			int maxSamples) {
+		int drained = Math.min(maxSamples, count);
+		for (int i = 0; i < drained; i++) {
+			int index = (head + i) % capacity;
+			timestampsOut[i] = timestamps[index];
+			System.arraycopy(values, index * valuesPerSample, valuesOut, i
+					* valuesPerSample, valuesPerSample);
+		}
+		head = (head + drained) % capacity;
+		count -= drained;
+		return drained;
+	}
+
+	/**
+	 * Discards all the samples.
+	 */
+	public synchronized void clear() {
+		head = 0;
+		count = 0;
+	}
+
+	/**
+	 * @return the number of samples waiting to be drained.
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * @return the number of samples overwritten before being drained.
+	 */
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getValuesPerSample() {
+		return valuesPerSample;
+	}
+
+}
@@ -5,16 +5,37 @@
  */
 package org.actimo.feature.impl.misc;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.actimo.feature.core.AbstractFeature;
 
 import android.content.Context;
 import android.hardware.Sensor;
+import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 /**
  * A feature that allows one to use data from a single sensor.
+ * 
+ * <p>
+ * By default the sensor is sampled at a fixed delay. With a
+ * {@link SensorRatePolicy} set, the delay is adapted to the signal and the
+ * window focus instead, and the time spent at every delay is tracked.
+ * 
+ * <p>
+ * Samples can also be recorded into a file with
+ * {@link #startRecording(File, int)}, and replayed through
+ * {@link #onSensorChanged(SensorEvent)} by a {@link SensorReplay}.
+ * 
+ * <p>
+ * Features set to {@link #setShared(boolean) shared} register through the
+ * {@link SensorHub}, along with all the other shared listeners of the same
+ * sensor type in the process.
+ * 
  * @author m.koziarkiewicz
  *
  */
@@ -22,6 +43,9 @@ public abstract class SingleSensorFeature extends AbstractFeature implements Sen
 
 	private static final int DEFAULT_DELAY = SensorManager.SENSOR_DELAY_NORMAL;
 	
+	/** SENSOR_DELAY_FASTEST to SENSOR_DELAY_NORMAL. */
+	private static final int DELAY_COUNT = 4;
+	
 	private SensorManager sensorManager;
 	
 	protected Sensor sensor;
@@ -30,6 +54,40 @@ public abstract class SingleSensorFeature extends AbstractFeature implements Sen
 
 	private int sensorType;
 	
+	private SensorRatePolicy ratePolicy;
+	
+	private int currentDelay = -1;
+	
+	private long currentDelaySince;
+	
+	private final long[] millisAtDelay = new long[DELAY_COUNT];
+	
+	private int rateChanges;
+	
+	private SensorRecorder recorder;
+	
+	private boolean shared;
+	
+	/**
+	 * Stands in for the feature with the sensor manager, so that samples can be
+	 * observed by the rate policy.
+	 */
+	private final SensorEventListener listener = new SensorEventListener() {
+		public void onSensorChanged(SensorEvent event) {
+			if (recorder != null) {
+				record(event);
+			}
+			SingleSensorFeature.this.onSensorChanged(event);
+			if (ratePolicy != null && currentDelay != -1) {
+				applyDelay(ratePolicy.onSample(event.timestamp, event.values, currentDelay));
+			}
+		}
+
+		public void onAccuracyChanged(Sensor sensor, int accuracy) {
+			SingleSensorFeature.this.onAccuracyChanged(sensor, accuracy);
+		}
+	};
+	
 	/**
 	 * Create a new sensor feature with default delay.
 	 * @param sensorType type, from {@link SensorManager}
@@ -60,17 +118,201 @@ public abstract class SingleSensorFeature extends AbstractFeature implements Sen
 	@Override
 	public void onResume() {
 		super.onResume();
-		sensorManager.registerListener(this, sensor, delay);
+		if (ratePolicy != null) {
+			ratePolicy.reset();
+			register(ratePolicy.getInitialDelay());
+		} else {
+			register(delay);
+		}
 	}
 	
 	@Override
 	public void onPause() {
 		super.onPause();
-		sensorManager.unregisterListener(this);
+		unregister();
+	}
+	
+	@Override
+	public void onWindowFocusChanged(boolean hasFocus) {
+		super.onWindowFocusChanged(hasFocus);
+		if (ratePolicy != null && currentDelay != -1) {
+			applyDelay(ratePolicy.onWindowFocusChanged(hasFocus, currentDelay));
+		}
+	}
+	
+	@Override
+	public void onDestroy() {
+		stopRecording();
+		super.onDestroy();
 	}
 	
 	public void onAccuracyChanged(Sensor sensor, int accuracy) {
 		//default no-op implementation, since not every sensor requires this
 	}
 	
+	/**
+	 * Sets the policy adapting the sampling rate; applied on the next resume.
+	 * @param ratePolicy the policy, or <code>null</code> for the fixed delay
+	 */
+	public void setRatePolicy(SensorRatePolicy ratePolicy) {
+		this.ratePolicy = ratePolicy;
+	}
+	
+	public SensorRatePolicy getRatePolicy() {
+		return ratePolicy;
+	}
+	
+	/**
+	 * Sets whether the sensor is registered through the {@link SensorHub}.
+	 * @param shared whether to share the registration
+	 */
+	public void setShared(boolean shared) {
+		if (shared == this.shared) {
+			return;
+		}
+		int registered = currentDelay;
+		unregister();
+		this.shared = shared;
+		if (registered != -1) {
+			register(registered);
+		}
+	}
+	
+	public boolean isShared() {
+		return shared;
+	}
+	
+	/**
+	 * @return the delay the sensor is registered with, or -1 if it is not,
+	 *         including when the device has no such sensor or the
+	 *         registration has failed.
+	 */
+	public int getCurrentDelay() {
+		return currentDelay;
+	}
+	
+	/**
+	 * @param delay delay, from {@link SensorManager}
+	 * @return the time the sensor has been registered with the delay, in
+	 *         milliseconds; 0 for other delays, which are not tracked.
+	 */
+	public long getTimeAtDelay(int delay) {
+		if (delay < 0 || delay >= DELAY_COUNT) {
+			return 0;
+		}
+		long millis = millisAtDelay[delay];
+		if (delay == currentDelay) {
+			millis += SystemClock.elapsedRealtime() - currentDelaySince;
+		}
+		return millis;
+	}
+	
+	/**
+	 * @return the number of times the delay has been changed by the rate policy.
+	 */
+	public int getRateChangeCount() {
+		return rateChanges;
+	}
+	
+	/**
+	 * Clears the rate statistics.
+	 */
+	public void resetRateStats() {
+		for (int i = 0; i < DELAY_COUNT; i++) {
+			millisAtDelay[i] = 0;
+		}
+		currentDelaySince = SystemClock.elapsedRealtime();
+		rateChanges = 0;
+	}
+	
+	/**
+	 * Starts recording the samples received from the sensor, replacing any
+	 * previous recording. The recording stops at the latest when the feature
+	 * is destroyed.
+	 * @param file the target file
+	 * @param valuesPerSample the number of values recorded per sample
+	 * @throws IOException if the file cannot be created
+	 */
+	public void startRecording(File file, int valuesPerSample) throws IOException {
+		stopRecording();
+		recorder = new SensorRecorder(file, sensorType, valuesPerSample);
+	}
+	
+	/**
+	 * Stops recording, if it is in progress.
+	 */
+	public void stopRecording() {
+		if (recorder != null) {
+			try {
+				recorder.close();
+			} catch (IOException e) {
+				// the samples written so far remain readable
+			}
+			recorder = null;
+		}
+	}
+	
+	/**
+	 * @return whether the samples are being recorded; recording stops by
+	 * itself if the file cannot be written.
+	 */
+	public boolean isRecording() {
+		return recorder != null;
+	}
+	
+	private void record(SensorEvent event) {
+		try {
+			recorder.write(event.timestamp, event.values);
+		} catch (IOException e) {
+			stopRecording();
+		}
+	}
+	
+	private void applyDelay(int newDelay) {
+		if (newDelay != currentDelay) {
+			if (shared) {
+				// the hub updates the subscription in place
+				endDelayPeriod();
+			} else {
+				unregister();
+			}
+			register(newDelay);
+			rateChanges++;
+		}
+	}
+	
+	private void register(int newDelay) {
+		boolean registered;
+		if (shared) {
+			registered = SensorHub.get().subscribe(getActivity(), sensorType, newDelay, listener);
+		} else {
+			registered = sensor != null && sensorManager.registerListener(listener, sensor, newDelay);
+		}
+		if (!registered) {
+			// no sensor, or it cannot be used; nothing to unregister later
+			return;
+		}
+		currentDelay = newDelay;
+		currentDelaySince = SystemClock.elapsedRealtime();
+	}
+	
+	private void unregister() {
+		if (currentDelay == -1) {
+			return;
+		}
+		if (shared) {
+			SensorHub.get().unsubscribe(sensorType, listener);
+		} else {
+			sensorManager.unregisterListener(listener);
+		}
+		endDelayPeriod();
+	}
+	
+	private void endDelayPeriod() {
+		if (currentDelay < DELAY_COUNT) {
+			millisAtDelay[currentDelay] += SystemClock.elapsedRealtime() - currentDelaySince;
+		}
+		currentDelay = -1;
+	}
+	
 }
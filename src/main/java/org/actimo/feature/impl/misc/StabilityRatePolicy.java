@@ -0,0 +1,117 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import android.hardware.SensorManager;
+
+/**
+ * A {@link SensorRatePolicy} sampling at an active rate while the signal
+ * changes, falling back to an idle rate once it has been stable for a while,
+ * and to an unfocused rate while the window does not have focus. Any value
+ * changing by more than the threshold between consecutive samples counts as
+ * activity.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public class StabilityRatePolicy implements SensorRatePolicy {
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private final int activeDelay;
+
+	private final int idleDelay;
+
+	private final int unfocusedDelay;
+
+	private final float threshold;
+
+	private final long stableNanos;
+
+	private final float[] previous = new float[3];
+
+	private int previousLength;
+
+	private long lastActive;
+
+	private boolean focused = true;
+
+	/**
+	 * Create a new policy with {@link SensorManager#SENSOR_DELAY_GAME} when
+	 * active, {@link SensorManager#SENSOR_DELAY_NORMAL} when idle or
+	 * unfocused.
+	 *
+	 * @param threshold
+	 *            the change counted as activity, in the units of the sensor
+	 * @param stableMillis
+	 *            how long the signal has to be stable to go idle
+	 */
+	public StabilityRatePolicy(float threshold, long stableMillis) {
+		this(SensorManager.SENSOR_DELAY_GAME,
+				SensorManager.SENSOR_DELAY_NORMAL,
+				SensorManager.SENSOR_DELAY_NORMAL, threshold, stableMillis);
+	}
+
+	/**
+	 * Create a new policy.
+	 *
+	 * @param activeDelay
+	 *            delay when active, from {@link SensorManager}
+	 * @param idleDelay
+	 *            delay when stable, from {@link SensorManager}
+	 * @param unfocusedDelay
+	 *            delay when the window does not have focus, from
+	 *            {@link SensorManager}
+	 * @param threshold
+	 *            the change counted as activity, in the units of the sensor
+	 * @param stableMillis
+	 *            how long the signal has to be stable to go idle
+	 */
+	public StabilityRatePolicy(int activeDelay, int idleDelay,
+			int unfocusedDelay, float threshold, long stableMillis) {
+		this.activeDelay = activeDelay;
+		this.idleDelay = idleDelay;
+		this.unfocusedDelay = unfocusedDelay;
+		this.threshold = threshold;
+		this.stableNanos = stableMillis * NANOS_PER_MILLI;
+	}
+
+	public int getInitialDelay() {
+		return focused ? activeDelay : unfocusedDelay;
+	}
+
+	public int onSample(long timestamp, float[] values, int currentDelay) {
+		int length = Math.min(values.length, previous.length);
+		if (previousLength != length) {
+			// first sample
+			lastActive = timestamp;
+		} else {
+			for (int i = 0; i < length; i++) {
+				if (Math.abs(values[i] - previous[i]) > threshold) {
+					lastActive = timestamp;
+					break;
+				}
+			}
+		}
+		System.arraycopy(values, 0, previous, 0, length);
+		previousLength = length;
+
+		if (!focused) {
+			return unfocusedDelay;
+		}
+		return timestamp - lastActive > stableNanos ? idleDelay : activeDelay;
+	}
+
+	public int onWindowFocusChanged(boolean hasFocus, int currentDelay) {
+		focused = hasFocus;
+		return hasFocus ? activeDelay : unfocusedDelay;
+	}
+
+	public void reset() {
+		previousLength = 0;
+	}
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.memory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache, sized by a {@link SizeEstimator} and trimmed
+ * by the {@link MemoryBudget} it is registered with. Thread-safe.
+ *
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the value type
+ * @author m.koziarkiewicz
+ *
+ */
+public class LruMemoryCache<K, V> implements ManagedCache {
+
+	private final LinkedHashMap<K, V> entries;
+
+	private final SizeEstimator<? super V> estimator;
+
+	private final MemoryBudget budget;
+
+	private long size;
+
+	/**
+	 * @param estimator
+	 *            sizes the values
+	 * @param budget
+	 *            notified when the cache grows, or <code>null</code> for an
+	 *            unbounded cache
+	 */
+	public LruMemoryCache(SizeEstimator<? super V> estimator,
+			MemoryBudget budget) {
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+		this.estimator = estimator;
+		this.budget = budget;
+	}
+
+	/**
+	 * @param key
+	 *            the key
+	 * @return the cached value, or <code>null</code> if none.
+	 */
+	public synchronized V get(K key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Caches a value, possibly evicting others to stay within the budget.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 */
+	public void put(K key, V value) {
+		synchronized (this) {
+			V previous = entries.put(key, value);
+			if (previous != null) {
+				size -= estimator.sizeOf(previous);
+			}
+			size += estimator.sizeOf(value);
+		}
+		if (budget != null) {
+			budget.enforce();
+		}
+	}
+
+	/**
+	 * @param key
+	 *            the key
+	 * @return the removed value, or <code>null</code> if none.
+	 */
+	public synchronized V remove(K key) {
+		V removed = entries.remove(key);
+		if (removed != null) {
+			size -= estimator.sizeOf(removed);
+		}
+		return removed;
+	}
+
+	/**
+	 * Evicts all the entries.
+	 */
+	public void clear() {
+		trimToSize(0);
+	}
+
+	public synchronized long size() {
+		return size;
+	}
+
+	public synchronized void trimToSize(long maxSize) {
+		Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+		while (size > maxSize && eldest.hasNext()) {
+			Map.Entry<K, V> entry = eldest.next();
+			eldest.remove();
+			size -= estimator.sizeOf(entry.getValue());
+			onEvicted(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Called with the lock of the cache held when an entry is evicted to save
+	 * memory. Does nothing by default.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 */
+	protected void onEvicted(K key, V value) {
+	}
+
+}
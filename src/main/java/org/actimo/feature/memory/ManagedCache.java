@@ -0,0 +1,32 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.memory;
+
+/**
+ * A cache whose memory use is governed by {@link MemoryBudget}.
+ * Implementations have to be thread-safe, and must not call the budget while
+ * holding their own lock.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public interface ManagedCache {
+
+	/**
+	 * @return the estimated size of the cached entries, in bytes.
+	 */
+	public long size();
+
+	/**
+	 * Evicts entries, least valuable first, until the size is at most the
+	 * given one.
+	 *
+	 * @param maxSize
+	 *            the size to trim to, in bytes
+	 */
+	public void trimToSize(long maxSize);
+
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.memory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.actimo.activity.core.FeatureManager;
+import org.actimo.activity.core.MemoryListener;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+/**
+ * Keeps the caches of all features, registered by name, within a common
+ * memory budget. When the budget is exceeded, and when memory is needed
+ * elsewhere, entries are evicted from the caches of the lowest priority
+ * first. Thread-safe.
+ *
+ * <p>
+ * The features using the budget size it from the memory class of the device,
+ * see {@link #initialize(Context)}. The budget registers itself with
+ * {@link FeatureManager#addMemoryListener(MemoryListener)} on first use, and
+ * trims the caches when the application goes to the background and on low
+ * memory.
+ *
+ * @author m.koziarkiewicz
+ *
+ */
+public final class MemoryBudget implements MemoryListener {
+
+	/** The share of the heap given to the caches by default. */
+	private static final int HEAP_SHARE_DIVISOR = 4;
+
+	/**
+	 * The share of the budget the caches are trimmed to when the application
+	 * goes to the background.
+	 */
+	private static final int BACKGROUND_SHARE_DIVISOR = 2;
+
+	private static final class Holder {
+		private static final MemoryBudget INSTANCE = new MemoryBudget();
+
+		static {
+			FeatureManager.addMemoryListener(INSTANCE);
+		}
+	}
+
+	private final Map<String, Registration> caches;
+
+	/** The registrations in the ascending order of priority. */
+	private final List<Registration> byPriority;
+
+	private long budget;
+
+	private boolean initialized;
+
+	private MemoryBudget() {
+		caches = new HashMap<String, Registration>();
+		byPriority = new ArrayList<Registration>();
+		budget = Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return the budget instance
+	 */
+	public static MemoryBudget get() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Sizes the budget to a quarter of the heap available to the application,
+	 * unless it is already set. Called by the features using the budget once
+	 * they have an activity; only the first call has any effect.
+	 *
+	 * @param context
+	 *            any context
+	 */
+	public synchronized void initialize(Context context) {
+		if (initialized) {
+			return;
+		}
+		initialized = true;
+
+		ActivityManager activityManager = (ActivityManager) context
+				.getSystemService(Context.ACTIVITY_SERVICE);
+		int memoryClass = activityManager == null ? 0 : activityManager
+				.getMemoryClass();
+		if (memoryClass > 0) {
+			budget = memoryClass * 1024L * 1024L / HEAP_SHARE_DIVISOR;
+		}
+	}
+
+	/**
+	 * Sets the budget explicitly, trimming the caches if necessary.
+	 *
+	 * @param bytes
+	 *            the budget, in bytes
+	 */
+	public void setBudget(long bytes) {
+		synchronized (this) {
+			initialized = true;
+			budget = bytes;
+		}
+		enforce();
+	}
+
+	/**
+	 * @return the budget, in bytes.
+	 */
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Registers a cache. Caches of lower priority are trimmed first.
+	 *
+	 * @param name
+	 *            the name, under which other features find the cache
+	 * @param cache
+	 *            the cache
+	 * @param priority
+	 *            the priority
+	 * @throws IllegalStateException
+	 *             if a cache of this name is already registered.
+	 */
+	public synchronized void register(String name, ManagedCache cache,
+			int priority) {
+		if (caches.containsKey(name)) {
+			throw new IllegalStateException("Cache '" + name
+					+ "' already registered!");
+		}
+
+		Registration registration = new Registration(cache, priority);
+		caches.put(name, registration);
+		int position = byPriority.size();
+		while (position > 0 && byPriority.get(position - 1).priority > priority) {
+			position--;
+		}
+		byPriority.add(position, registration);
+	}
+
+	/**
+	 * @param name
+	 *            the name
+	 * @return the cache registered under the name, or <code>null</code> if
+	 *         none.
+	 */
+	public synchronized ManagedCache getCache(String name) {
+		Registration registration = caches.get(name);
+		return registration == null ? null : registration.cache;
+	}
+
+	/**
+	 * Unregisters a cache, leaving its contents intact.
+	 *
+	 * @param name
+	 *            the name
+	 */
+	public synchronized void unregister(String name) {
+		Registration registration = caches.remove(name);
+		if (registration != null) {
+			byPriority.remove(registration);
+		}
+	}
+
+	/**
+	 * @return the total size of the registered caches, in bytes.
+	 */
+	public synchronized long size() {
+		long size = 0;
+		for (int i = 0; i < byPriority.size(); i++) {
+			size += byPriority.get(i).cache.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Trims the caches if they exceed the budget. Called by caches that have
+	 * grown.
+	 */
+	public void enforce() {
+		trimTo(getBudget());
+	}
+
+	/**
+	 * Trims the caches to half the budget, as the application is no longer
+	 * visible.
+	 */
+	public void onBackground() {
+		trimTo(getBudget() / BACKGROUND_SHARE_DIVISOR);
+	}
+
+	/**
+	 * Empties the caches.
+	 */
+	public void onLowMemory() {
+		trimTo(0);
+	}
+
+	/**
+	 * Trims the caches, the lowest priority first, until their total size is
+	 * at most the given one.
+	 *
+	 * @param target
+	 *            the total size to trim to, in bytes
+	 */
+	public synchronized void trimTo(long target) {
+		long excess = size() - target;
+		for (int i = 0; i < byPriority.size() && excess > 0; i++) {
+			ManagedCache cache = byPriority.get(i).cache;
+			long before = cache.size();
+			cache.trimToSize(Math.max(0, before - excess));
+			excess -= before - cache.size();
+		}
+	}
+
+	private static final class Registration {
+		private final ManagedCache cache;
+		private final int priority;
+
+		Registration(ManagedCache cache, int priority) {
+			this.cache = cache;
+			this.priority = priority;
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.memory;
+
+/**
+ * Estimates the memory taken by cached values.
+ *
+ * @param <V>
+ *            the value type
+ * @author m.koziarkiewicz
+ *
+ */
+public interface SizeEstimator<V> {
+
+	/**
+	 * @param value
+	 *            the value
+	 * @return its estimated size, in bytes; must not change while cached.
+	 */
+	public long sizeOf(V value);
+
+}
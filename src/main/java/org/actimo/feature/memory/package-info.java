@@ -0,0 +1,4 @@
+/**
+ * Memory budgeting of the caches kept by features.
+ */
+package org.actimo.feature.memory;
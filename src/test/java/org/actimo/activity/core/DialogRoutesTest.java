@@ -0,0 +1,106 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.actimo.feature.core.AbstractFeature;
+import org.actimo.feature.core.Feature;
+import org.junit.Test;
+
+/**
+ * Unit test for the dialog id table of FeatureManager.
+ * @author m.koziarkiewicz
+ *
+ */
+public class DialogRoutesTest {
+
+	/** The capacity of a new table. */
+	private static final int CAPACITY = 8;
+
+	@Test
+	public void testCollidingIdsAreKeptApart() {
+		int[] ids = collidingIds(3);
+		Feature[] owners = { new Owner(), new Owner(), new Owner() };
+		DialogRoutes routes = new DialogRoutes();
+		for (int i = 0; i < ids.length; i++) {
+			Assert.assertNull(routes.put(ids[i], owners[i]));
+		}
+		for (int i = 0; i < ids.length; i++) {
+			Assert.assertSame(owners[i], routes.get(ids[i]));
+		}
+
+		// from the middle of the probe sequence, then its start
+		Assert.assertSame(owners[1], routes.remove(ids[1]));
+		Assert.assertNull(routes.get(ids[1]));
+		Assert.assertSame(owners[2], routes.get(ids[2]));
+		Assert.assertSame(owners[0], routes.remove(ids[0]));
+		Assert.assertSame(owners[2], routes.get(ids[2]));
+		Assert.assertNull(routes.remove(ids[0]));
+
+		Assert.assertNull(routes.put(ids[1], owners[1]));
+		Assert.assertSame(owners[2], routes.put(ids[2], owners[0]));
+		Assert.assertSame(owners[1], routes.get(ids[1]));
+		Assert.assertSame(owners[0], routes.get(ids[2]));
+	}
+
+	@Test
+	public void testGrowsKeepingAllEntries() {
+		DialogRoutes routes = new DialogRoutes();
+		Feature[] owners = new Feature[100];
+		for (int i = 0; i < owners.length; i++) {
+			owners[i] = new Owner();
+			Assert.assertNull(routes.put(i * CAPACITY, owners[i]));
+		}
+		for (int i = 0; i < owners.length; i++) {
+			Assert.assertSame(owners[i], routes.get(i * CAPACITY));
+		}
+		Assert.assertNull(routes.get(1));
+	}
+
+	@Test
+	public void testMatchesMapUnderRandomUse() {
+		Random random = new Random(42);
+		Feature[] owners = { new Owner(), new Owner(), new Owner() };
+		Map<Integer, Feature> expected = new HashMap<Integer, Feature>();
+		DialogRoutes routes = new DialogRoutes();
+
+		// few enough ids for long probe sequences, and some resizing
+		for (int i = 0; i < 20000; i++) {
+			int id = random.nextInt(64) - 8;
+			if (random.nextInt(3) == 0) {
+				Assert.assertSame(expected.remove(id), routes.remove(id));
+			} else {
+				Feature owner = owners[random.nextInt(owners.length)];
+				Assert.assertSame(expected.put(id, owner), routes.put(id, owner));
+			}
+			int probe = random.nextInt(64) - 8;
+			Assert.assertSame(expected.get(probe), routes.get(probe));
+		}
+	}
+
+	/**
+	 * @return ids that all start probing at the same slot of a new table.
+	 */
+	private static int[] collidingIds(int count) {
+		int[] ids = new int[count];
+		int home = DialogRoutes.hash(0) & (CAPACITY - 1);
+		int found = 0;
+		for (int id = 0; found < count; id++) {
+			if ((DialogRoutes.hash(id) & (CAPACITY - 1)) == home) {
+				ids[found++] = id;
+			}
+		}
+		return ids;
+	}
+
+	private static class Owner extends AbstractFeature {}
+
+}
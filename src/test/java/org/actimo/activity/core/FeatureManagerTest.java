@@ -0,0 +1,741 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.activity.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.actimo.feature.core.AbstractFeature;
+import org.actimo.feature.core.AsyncInitFeature;
+import org.actimo.feature.core.ConfigurationStableFeature;
+import org.actimo.feature.core.Feature;
+import org.actimo.feature.core.FeatureFactory;
+import org.actimo.feature.dialogs.DialogFeature;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.os.Bundle;
+import android.view.MotionEvent;
+
+import com.sun.management.ThreadMXBean;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import com.xtremelabs.robolectric.shadows.ShadowMotionEvent;
+
+/**
+ * Unit test for the dispatch engine of FeatureManager.
+ * @author m.koziarkiewicz
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FeatureManagerTest {
+
+	private static final int DISPATCH_COUNT = 10000;
+
+	private FeatureManager manager;
+
+	private TouchFeature[] touchFeatures;
+
+	@Before
+	public void setUp() throws Exception {
+		manager = new FeatureManager(new Activity());
+		touchFeatures = new TouchFeature[] { new Touch1(), new Touch2(),
+				new Touch3(), new Touch4(), new Touch5(), new Touch6(),
+				new Touch7(), new Touch8() };
+		for (TouchFeature feature : touchFeatures) {
+			manager.addFeature(feature);
+		}
+		// features with nothing to say about touch events
+		manager.addFeature(new Quiet1());
+		manager.addFeature(new Quiet2());
+	}
+
+	@Test
+	public void testTouchDispatchDoesNotAllocate() throws Exception {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported()
+				&& threads.isThreadAllocatedMemoryEnabled());
+
+		MotionEvent event = ShadowMotionEvent.obtain(0, 0, 0, 0, 0, 0);
+		long threadId = Thread.currentThread().getId();
+
+		// warm-up, so that nothing gets lazily initialized while measuring
+		for (int i = 0; i < DISPATCH_COUNT; i++) {
+			manager.onTouchEvent(false, event);
+		}
+
+		long before = threads.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < DISPATCH_COUNT; i++) {
+			manager.onTouchEvent(false, event);
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+		// leaves room for the constant cost of the measurement itself, while
+		// any per-dispatch allocation would take at least DISPATCH_COUNT bytes
+		Assert.assertTrue("Dispatch allocated " + allocated + " bytes",
+				allocated < DISPATCH_COUNT);
+
+		for (TouchFeature feature : touchFeatures) {
+			Assert.assertEquals(2 * DISPATCH_COUNT, feature.touches);
+		}
+	}
+
+	@Test
+	public void testRemovedFeatureIsNotDispatched() throws Exception {
+		MotionEvent event = ShadowMotionEvent.obtain(0, 0, 0, 0, 0, 0);
+
+		manager.removeFeature(touchFeatures[0]);
+		manager.onTouchEvent(false, event);
+
+		Assert.assertEquals(0, touchFeatures[0].touches);
+		Assert.assertEquals(1, touchFeatures[1].touches);
+		Assert.assertNull(manager.getFeatures().get(Touch1.class));
+	}
+
+	@Test
+	public void testRemovalDuringDispatchIsSafe() throws Exception {
+		MotionEvent event = ShadowMotionEvent.obtain(0, 0, 0, 0, 0, 0);
+		RemovingFeature remover = new RemovingFeature(touchFeatures[7]);
+		manager.addFeature(remover, 1);
+
+		manager.onTouchEvent(false, event);
+		// the dispatch in progress still reached it, while still attached
+		Assert.assertEquals(1, touchFeatures[7].touches);
+		Assert.assertNotNull(remover.activityAfterRemoval);
+		Assert.assertNull(touchFeatures[7].getActivity());
+
+		manager.onTouchEvent(false, event);
+		Assert.assertEquals(1, touchFeatures[7].touches);
+		Assert.assertEquals(2, touchFeatures[6].touches);
+
+		// detached, so it can come back
+		manager.addFeature(touchFeatures[7]);
+		manager.onTouchEvent(false, event);
+		Assert.assertEquals(2, touchFeatures[7].touches);
+	}
+
+	@Test
+	public void testHotAddedFeatureFollowsLifecycle() throws Exception {
+		manager.onCreate(null);
+		manager.onStart();
+
+		LifecycleFeature feature = new LifecycleFeature();
+		manager.addFeature(feature);
+		Assert.assertEquals("onCreateonStart", feature.calls);
+
+		manager.onResume();
+		manager.removeFeature(feature);
+		Assert.assertEquals("onCreateonStartonResumeonPauseonStoponDestroy",
+				feature.calls);
+	}
+
+	@Test
+	public void testFeatureIsOnlyCalledForOverriddenCallbacks()
+			throws Exception {
+		Assert.assertEquals(0, FeatureCallback.subscriptionsOf(Quiet1.class));
+		LifecycleFeature lifecycle = new LifecycleFeature();
+		manager.addFeature(lifecycle);
+
+		// every call to a feature goes through its timing wrapper
+		manager.setProfilingEnabled(true);
+		MotionEvent event = ShadowMotionEvent.obtain(0, 0, 0, 0, 0, 0);
+		manager.onCreate(null);
+		manager.onStart();
+		manager.onResume();
+		manager.onPostResume();
+		manager.onUserInteraction();
+		manager.onWindowFocusChanged(true);
+		manager.onTouchEvent(false, event);
+		manager.onTrackballEvent(false, event);
+		manager.onKeyDown(false, 0, null);
+		manager.onBackPressed();
+		manager.onLowMemory();
+		manager.onPause();
+		manager.onStop();
+		manager.onDestroy();
+
+		Set<FeatureCallback> overridden = EnumSet.of(FeatureCallback.ON_CREATE,
+				FeatureCallback.ON_START, FeatureCallback.ON_RESUME,
+				FeatureCallback.ON_PAUSE, FeatureCallback.ON_STOP,
+				FeatureCallback.ON_DESTROY);
+		for (DispatchProfiler.Record record : manager.getProfiler().snapshot()) {
+			Class<?> featureClass = record.getFeatureClass();
+			Assert.assertNotSame(Quiet1.class, featureClass);
+			Assert.assertNotSame(Quiet2.class, featureClass);
+			if (featureClass == LifecycleFeature.class) {
+				Assert.assertTrue(record.getCallback().name(),
+						overridden.contains(record.getCallback()));
+			} else {
+				Assert.assertEquals(FeatureCallback.ON_TOUCH_EVENT,
+						record.getCallback());
+			}
+		}
+		Assert.assertEquals("onCreateonStartonResumeonPauseonStoponDestroy",
+				lifecycle.calls);
+	}
+
+	@Test
+	public void testChangesDuringDispatchWaitForItToFinish()
+			throws Exception {
+		LifecycleFeature createdLate = new LifecycleFeature();
+		manager.addFeature(new AddingFeature(createdLate, true));
+		manager.onCreate(null);
+		Assert.assertEquals("onCreate", createdLate.calls);
+
+		manager.onStart();
+		LifecycleFeature resumedLate = new LifecycleFeature() {};
+		manager.addFeature(new AddingFeature(resumedLate, false) {});
+		manager.onResume();
+		Assert.assertEquals("onCreateonStartonResume", resumedLate.calls);
+		Assert.assertEquals("onCreateonStartonResume", createdLate.calls);
+
+		RemovingFeature remover = new RemovingFeature(createdLate);
+		manager.addFeature(remover, 1);
+		manager.onTouchEvent(false, ShadowMotionEvent.obtain(0, 0, 0, 0, 0, 0));
+		Assert.assertNotNull(remover.activityAfterRemoval);
+		Assert.assertNull(createdLate.getActivity());
+		Assert.assertEquals("onCreateonStartonResumeonPauseonStoponDestroy",
+				createdLate.calls);
+	}
+
+	@Test
+	public void testLookupBySupertype() throws Exception {
+		Assert.assertSame(touchFeatures[0],
+				manager.getFeature(TouchFeature.class));
+
+		TouchFeature[] matches = manager.getFeatures(TouchFeature.class);
+		Assert.assertEquals(touchFeatures.length, matches.length);
+		Assert.assertSame(matches, manager.getFeatures(TouchFeature.class));
+
+		manager.removeFeature(touchFeatures[0]);
+		Assert.assertSame(touchFeatures[1],
+				manager.getFeature(TouchFeature.class));
+		Assert.assertEquals(touchFeatures.length - 1,
+				manager.getFeatures(TouchFeature.class).length);
+		Assert.assertEquals(0, manager.getFeatures(Runnable.class).length);
+	}
+
+	@Test
+	public void testDialogIsRoutedToOwner() throws Exception {
+		DialogPoller poller = new DialogPoller();
+		TestDialogFeature owner = new TestDialogFeature();
+		manager.addFeature(poller);
+		manager.addFeature(owner);
+
+		manager.onCreateDialog(owner.getDialogId());
+		manager.onPrepareDialog(owner.getDialogId(), null);
+		Assert.assertEquals(1, owner.created);
+		Assert.assertEquals(1, owner.prepared);
+		Assert.assertEquals(0, poller.polls);
+
+		manager.onCreateDialog(1);
+		Assert.assertEquals(1, poller.polls);
+		Assert.assertEquals(1, owner.created);
+
+		manager.removeFeature(owner);
+		manager.onCreateDialog(owner.getDialogId());
+		Assert.assertEquals(2, poller.polls);
+	}
+
+	@Test
+	public void testBackgroundIsReportedWhenNoActivityIsStarted()
+			throws Exception {
+		final int[] backgrounds = new int[1];
+		MemoryListener listener = new MemoryListener() {
+			public void onBackground() {
+				backgrounds[0]++;
+			}
+
+			public void onLowMemory() {
+			}
+		};
+		// other tests leave their managers started
+		int othersStarted = FeatureManager.startedActivities;
+		FeatureManager.startedActivities = 0;
+		FeatureManager.addMemoryListener(listener);
+		try {
+			FeatureManager next = new FeatureManager(new Activity());
+			manager.onStart();
+			// forward navigation: the next activity starts first
+			next.onStart();
+			manager.onStop();
+			Assert.assertEquals(0, backgrounds[0]);
+
+			next.onStop();
+			Assert.assertEquals(1, backgrounds[0]);
+			manager.onStop();
+			Assert.assertEquals(1, backgrounds[0]);
+		} finally {
+			FeatureManager.removeMemoryListener(listener);
+			FeatureManager.startedActivities = othersStarted;
+		}
+	}
+
+	@Test
+	public void testDialogFeatureIsNotSubscribedToTeardown() throws Exception {
+		long teardown = FeatureCallback.ON_DESTROY.mask()
+				| FeatureCallback.ON_LOW_MEMORY.mask();
+		Assert.assertEquals(0L, FeatureCallback
+				.subscriptionsOf(TestDialogFeature.class) & teardown);
+
+		// the manager still lets it release and drop the dialog
+		TestDialogFeature owner = new TestDialogFeature();
+		manager.addFeature(owner);
+		manager.onCreate(null);
+		manager.onCreateDialog(owner.getDialogId());
+		manager.onLowMemory();
+		manager.onDestroy();
+		Assert.assertEquals(1, owner.created);
+	}
+
+	@Test
+	public void testEveryFeatureRetainsItsInstance() throws Exception {
+		Assert.assertEquals("activity",
+				manager.onRetainNonConfigurationInstance("activity"));
+
+		manager.addFeature(new Retaining1());
+		manager.addFeature(new Retaining2());
+		Object last = manager.onRetainNonConfigurationInstance("activity");
+
+		Assert.assertEquals("activity",
+				RetainedInstance.activityInstance(last));
+		Assert.assertEquals("Retaining1",
+				RetainedInstance.featureInstance(last, Retaining1.class));
+		Assert.assertEquals("Retaining2",
+				RetainedInstance.featureInstance(last, Retaining2.class));
+		Assert.assertNull(RetainedInstance.featureInstance(last, Touch1.class));
+	}
+
+	@Test
+	public void testStableFeatureSurvivesConfigurationChange()
+			throws Exception {
+		LifecycleFeature stable = new StableFeature();
+		manager.addFeature(stable, 2);
+		manager.onCreate(null);
+		Object last = manager.onRetainNonConfigurationInstance(null);
+		manager.onDestroy();
+		Assert.assertEquals("onCreate", stable.calls);
+
+		Activity recreated = new Activity();
+		FeatureManager next = new FeatureManager(recreated);
+		next.addFeature(new Touch1());
+		final int[] created = new int[1];
+		next.addFeature(StableFeature.class,
+				new FeatureFactory<StableFeature>() {
+					public StableFeature create() {
+						created[0]++;
+						return new StableFeature();
+					}
+				}, 2);
+		next.reattachRetainedFeatures(last);
+		next.onCreate(null);
+		next.onStart();
+
+		Assert.assertSame(stable, next.getFeature(StableFeature.class));
+		Assert.assertSame(recreated, stable.getActivity());
+		Assert.assertEquals(0, created[0]);
+		Assert.assertEquals("onCreateonReattachonStart", stable.calls);
+	}
+
+	@Test
+	public void testUnwantedStableFeatureIsDestroyed() throws Exception {
+		LifecycleFeature stable = new StableFeature();
+		manager.addFeature(stable);
+		manager.onCreate(null);
+		Object last = manager.onRetainNonConfigurationInstance(null);
+		manager.onDestroy();
+
+		FeatureManager next = new FeatureManager(new Activity());
+		next.reattachRetainedFeatures(last);
+		next.onCreate(null);
+
+		Assert.assertEquals("onCreateonDestroy", stable.calls);
+		Assert.assertNull(stable.getActivity());
+		Assert.assertNull(next.getFeature(StableFeature.class));
+	}
+
+	@Test
+	public void testReattachedFeatureIsNotInitializedAgain() throws Exception {
+		StableInitFeature stable = new StableInitFeature();
+		manager.addFeature(stable);
+		manager.startInitialization();
+		manager.onCreate(null);
+		manager.awaitInitialization();
+		Object last = manager.onRetainNonConfigurationInstance(null);
+		manager.onDestroy();
+
+		FeatureManager next = new FeatureManager(new Activity());
+		next.addFeature(new StableInitFeature());
+		next.reattachRetainedFeatures(last);
+		next.startInitialization();
+		next.onCreate(null);
+		next.awaitInitialization();
+
+		Assert.assertSame(stable, next.getFeature(StableInitFeature.class));
+		Assert.assertEquals(1, stable.initializations);
+	}
+
+	@Test
+	public void testFirstConsumerStopsDispatch() throws Exception {
+		MotionEvent event = ShadowMotionEvent.obtain(0, 0, 0, 0, 0, 0);
+		manager.setDispatchPolicy(DispatchPolicy.FIRST_CONSUMER);
+		TouchFeature consumer = new ConsumingFeature();
+		manager.addFeature(consumer, 1);
+
+		Assert.assertTrue(manager.onTouchEvent(false, event));
+		Assert.assertEquals(1, consumer.touches);
+		Assert.assertEquals(0, touchFeatures[0].touches);
+
+		// handled by the activity as well, which does not stop the features
+		Assert.assertTrue(manager.onTouchEvent(true, event));
+		Assert.assertEquals(2, consumer.touches);
+		Assert.assertEquals(0, touchFeatures[0].touches);
+
+		manager.removeFeature(consumer);
+		Assert.assertTrue(manager.onTouchEvent(true, event));
+		Assert.assertFalse(manager.onTouchEvent(false, event));
+		Assert.assertEquals(2, touchFeatures[0].touches);
+		Assert.assertEquals(2, touchFeatures[7].touches);
+
+		manager.setDispatchPolicy(DispatchPolicy.BROADCAST);
+		manager.addFeature(consumer, 1);
+		manager.onTouchEvent(false, event);
+		Assert.assertEquals(3, consumer.touches);
+		Assert.assertEquals(3, touchFeatures[0].touches);
+	}
+
+	@Test
+	public void testLazyFeatureIsCreatedByFirstCallback() throws Exception {
+		final int[] created = new int[1];
+		manager.addFeature(LifecycleFeature.class,
+				new FeatureFactory<LifecycleFeature>() {
+					public LifecycleFeature create() {
+						created[0]++;
+						return new LifecycleFeature();
+					}
+				});
+
+		// not implemented by the feature
+		manager.onUserInteraction();
+		Assert.assertNull(manager.getFeatures().get(LifecycleFeature.class));
+		Assert.assertEquals(0, created[0]);
+
+		manager.onCreate(null);
+		manager.onStart();
+		Assert.assertEquals(1, created[0]);
+
+		LifecycleFeature feature = manager.getFeature(LifecycleFeature.class);
+		Assert.assertSame(feature, manager.getFeature(LifecycleFeature.class));
+		Assert.assertEquals(1, created[0]);
+		Assert.assertEquals("onCreateonStart", feature.calls);
+	}
+
+	@Test
+	public void testLazyFeatureCatchesUpWithLifecycle() throws Exception {
+		Bundle state = new Bundle();
+		manager.onCreate(state);
+		manager.onStart();
+		manager.onResume();
+
+		manager.addFeature(LifecycleFeature.class,
+				new FeatureFactory<LifecycleFeature>() {
+					public LifecycleFeature create() {
+						return new LifecycleFeature();
+					}
+				});
+		LifecycleFeature feature = manager.getFeature(LifecycleFeature.class);
+
+		// its own part of the saved state
+		Assert.assertNotNull(feature.createdWith);
+		Assert.assertNotSame(state, feature.createdWith);
+		Assert.assertEquals("onCreateonStartonResume", feature.calls);
+
+		manager.onPause();
+		Assert.assertEquals("onCreateonStartonResumeonPause", feature.calls);
+	}
+
+	@Test
+	public void testLazyFeatureIsNotCreatedToBeBroughtDown() throws Exception {
+		final int[] created = new int[1];
+		manager.addFeature(TeardownFeature.class,
+				new FeatureFactory<TeardownFeature>() {
+					public TeardownFeature create() {
+						created[0]++;
+						return new TeardownFeature();
+					}
+				});
+
+		manager.onCreate(null);
+		manager.onStart();
+		manager.onResume();
+		manager.onLowMemory();
+		manager.onPause();
+		manager.onSaveInstanceState(new Bundle());
+		manager.onStop();
+		manager.onRetainNonConfigurationInstance(null);
+		manager.onDestroy();
+		Assert.assertEquals(0, created[0]);
+	}
+
+	@Test
+	public void testAsyncInitializationCompletesBeforeBarrier() throws Exception {
+		SlowInitFeature feature = new SlowInitFeature();
+		manager.addFeature(feature);
+
+		manager.startInitialization();
+		manager.onCreate(null);
+		manager.awaitInitialization();
+
+		Assert.assertNotNull(feature.initThread);
+		Assert.assertNotSame(Thread.currentThread(), feature.initThread);
+	}
+
+	@Test
+	public void testProfilerRecordsDispatchedCallbacks() throws Exception {
+		MotionEvent event = ShadowMotionEvent.obtain(0, 0, 0, 0, 0, 0);
+		manager.setProfilingEnabled(true);
+		manager.onTouchEvent(false, event);
+		manager.onTouchEvent(false, event);
+		manager.setProfilingEnabled(false);
+		manager.onTouchEvent(false, event);
+
+		Assert.assertEquals(3, touchFeatures[0].touches);
+		int records = 0;
+		for (DispatchProfiler.Record record : manager.getProfiler().snapshot()) {
+			Assert.assertEquals(FeatureCallback.ON_TOUCH_EVENT,
+					record.getCallback());
+			Assert.assertEquals(2, record.getCount());
+			records++;
+		}
+		Assert.assertEquals(touchFeatures.length, records);
+	}
+
+	/**
+	 * Counts the touch events it receives. The feature map is keyed by class,
+	 * hence the subclasses below.
+	 */
+	private abstract static class TouchFeature extends AbstractFeature {
+		private int touches;
+
+		@Override
+		public boolean onTouchEvent(MotionEvent event) {
+			touches++;
+			return false;
+		}
+	}
+
+	private static class Touch1 extends TouchFeature {}
+	private static class Touch2 extends TouchFeature {}
+	private static class Touch3 extends TouchFeature {}
+	private static class Touch4 extends TouchFeature {}
+	private static class Touch5 extends TouchFeature {}
+	private static class Touch6 extends TouchFeature {}
+	private static class Touch7 extends TouchFeature {}
+	private static class Touch8 extends TouchFeature {}
+
+	private static class ConsumingFeature extends TouchFeature {
+		@Override
+		public boolean onTouchEvent(MotionEvent event) {
+			super.onTouchEvent(event);
+			return true;
+		}
+	}
+
+	private static class LifecycleFeature extends AbstractFeature {
+		private String calls = "";
+		private Bundle createdWith;
+
+		@Override
+		public void onCreate(Bundle savedInstanceState) {
+			createdWith = savedInstanceState;
+			calls += "onCreate";
+		}
+
+		@Override
+		public void onStart() {
+			calls += "onStart";
+		}
+
+		@Override
+		public void onResume() {
+			calls += "onResume";
+		}
+
+		@Override
+		public void onPause() {
+			calls += "onPause";
+		}
+
+		@Override
+		public void onStop() {
+			calls += "onStop";
+		}
+
+		@Override
+		public void onDestroy() {
+			calls += "onDestroy";
+		}
+	}
+
+	/** Implements only the callbacks that bring a feature down. */
+	private static class TeardownFeature extends AbstractFeature {
+		@Override
+		public void onPause() {
+		}
+
+		@Override
+		public void onStop() {
+		}
+
+		@Override
+		public void onDestroy() {
+		}
+
+		@Override
+		public void onSaveInstanceState(Bundle outState) {
+		}
+
+		@Override
+		public void onLowMemory() {
+		}
+
+		@Override
+		public Object onRetainNonConfigurationInstance() {
+			return null;
+		}
+	}
+
+	private static class StableFeature extends LifecycleFeature implements
+			ConfigurationStableFeature {
+		public void onReattach() {
+			((LifecycleFeature) this).calls += "onReattach";
+		}
+	}
+
+	/**
+	 * Removes another feature, and then itself, on the first touch event.
+	 */
+	private class RemovingFeature extends AbstractFeature {
+		private final Feature removed;
+		private Activity activityAfterRemoval;
+
+		RemovingFeature(Feature removed) {
+			this.removed = removed;
+		}
+
+		@Override
+		public boolean onTouchEvent(MotionEvent event) {
+			manager.removeFeature(removed);
+			manager.removeFeature(this);
+			activityAfterRemoval = removed.getActivity();
+			return false;
+		}
+	}
+
+	/**
+	 * Adds another feature in onCreate() or in onResume().
+	 */
+	private class AddingFeature extends AbstractFeature {
+		private final Feature added;
+		private final boolean inCreate;
+
+		AddingFeature(Feature added, boolean inCreate) {
+			this.added = added;
+			this.inCreate = inCreate;
+		}
+
+		@Override
+		public void onCreate(Bundle savedInstanceState) {
+			if (inCreate) {
+				manager.addFeature(added);
+			}
+		}
+
+		@Override
+		public void onResume() {
+			if (!inCreate) {
+				manager.addFeature(added);
+			}
+		}
+	}
+
+	private static class SlowInitFeature extends AbstractFeature implements
+			AsyncInitFeature {
+		private Thread initThread;
+
+		public void onCreateAsync() {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			initThread = Thread.currentThread();
+		}
+	}
+
+	private static class StableInitFeature extends AbstractFeature implements
+			AsyncInitFeature, ConfigurationStableFeature {
+		private int initializations;
+
+		public void onCreateAsync() {
+			initializations++;
+		}
+
+		public void onReattach() {
+		}
+	}
+
+	private static class TestDialogFeature extends DialogFeature {
+		private int created;
+		private int prepared;
+
+		@Override
+		protected String getId() {
+			return "FeatureManagerTest";
+		}
+
+		@Override
+		protected Dialog createDialog() {
+			created++;
+			return null;
+		}
+
+		@Override
+		protected void prepareDialog(Dialog dialog) {
+			prepared++;
+		}
+	}
+
+	private static class DialogPoller extends AbstractFeature {
+		private int polls;
+
+		@Override
+		public Dialog onCreateDialog(int id) {
+			polls++;
+			return null;
+		}
+	}
+
+	private static class Retaining1 extends AbstractFeature {
+		@Override
+		public Object onRetainNonConfigurationInstance() {
+			return getClass().getSimpleName();
+		}
+	}
+
+	private static class Retaining2 extends Retaining1 {}
+
+	private static class Quiet1 extends AbstractFeature {}
+	private static class Quiet2 extends AbstractFeature {}
+
+}
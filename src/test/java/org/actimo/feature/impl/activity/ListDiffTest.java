@@ -0,0 +1,101 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for ListDiff.
+ * @author m.koziarkiewicz
+ *
+ */
+public class ListDiffTest {
+
+	/** Items are "id:contents". */
+	private static final ItemMatcher<String> MATCHER = new ItemMatcher<String>() {
+		public boolean isSameItem(String oldItem, String newItem) {
+			return id(oldItem).equals(id(newItem));
+		}
+
+		public boolean hasSameContents(String oldItem, String newItem) {
+			return oldItem.equals(newItem);
+		}
+	};
+
+	private static String id(String item) {
+		return item.substring(0, item.indexOf(':'));
+	}
+
+	@Test
+	public void testContentChangeIsNotStructural() {
+		ListDiff diff = ListDiff.compute(Arrays.asList("a:1", "b:1", "c:1"),
+				Arrays.asList("a:1", "b:2", "c:1"), MATCHER);
+		Assert.assertFalse(diff.hasStructuralChanges());
+		Assert.assertEquals(1, diff.getChangedCount());
+		Assert.assertTrue(diff.isChanged(1));
+	}
+
+	@Test
+	public void testMatchesAreALongestCommonSubsequence() {
+		Random random = new Random(7);
+		for (int round = 0; round < 500; round++) {
+			List<String> oldItems = randomList(random);
+			List<String> newItems = randomList(random);
+			ListDiff diff = ListDiff.compute(oldItems, newItems, MATCHER);
+
+			int matched = 0;
+			int last = -1;
+			for (int i = 0; i < oldItems.size(); i++) {
+				int j = diff.getNewPosition(i);
+				if (j != -1) {
+					Assert.assertTrue(j > last);
+					Assert.assertEquals(id(oldItems.get(i)), id(newItems.get(j)));
+					Assert.assertEquals(!oldItems.get(i).equals(newItems.get(j)),
+							diff.isChanged(j));
+					last = j;
+					matched++;
+				}
+			}
+			Assert.assertEquals(lcs(oldItems, newItems), matched);
+		}
+	}
+
+	@Test
+	public void testTooManyEditsReplaceEverything() {
+		ListDiff diff = ListDiff.compute(Arrays.asList("a:1", "b:1", "c:1", "d:1"),
+				Arrays.asList("d:1", "c:1", "b:1", "a:1"), MATCHER, 2);
+		Assert.assertEquals(4, diff.getChangedCount());
+		Assert.assertEquals(-1, diff.getNewPosition(3));
+	}
+
+	private static List<String> randomList(Random random) {
+		List<String> items = new ArrayList<String>();
+		int size = random.nextInt(20);
+		for (int i = 0; i < size; i++) {
+			items.add((char) ('a' + random.nextInt(6)) + ":" + random.nextInt(2));
+		}
+		return items;
+	}
+
+	private static int lcs(List<String> a, List<String> b) {
+		int[][] lengths = new int[a.size() + 1][b.size() + 1];
+		for (int i = a.size() - 1; i >= 0; i--) {
+			for (int j = b.size() - 1; j >= 0; j--) {
+				lengths[i][j] = id(a.get(i)).equals(id(b.get(j))) ? lengths[i + 1][j + 1] + 1
+						: Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+			}
+		}
+		return lengths[0][0];
+	}
+
+}
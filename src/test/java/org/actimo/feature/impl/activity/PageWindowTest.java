@@ -0,0 +1,55 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the pages wanted by PageWindow.
+ * @author m.koziarkiewicz
+ *
+ */
+public class PageWindowTest {
+
+	private static final int PAGE_SIZE = 50;
+
+	private static final int COUNT = 100000;
+
+	@Test
+	public void testPrefetchFollowsScrollDirectionAndSpeed() {
+		PageWindow window = new PageWindow(PAGE_SIZE, 8);
+		window.onScroll(1000, 10, COUNT, 0);
+		Assert.assertEquals(20, window.getFirstVisiblePage());
+		Assert.assertEquals(19, window.getFirstPage());
+		Assert.assertEquals(21, window.getLastPage());
+
+		// 1000 rows per second down
+		window.onScroll(1100, 10, COUNT, 100);
+		window.onScroll(1200, 10, COUNT, 200);
+		Assert.assertTrue(window.getVelocity() > 0);
+		Assert.assertEquals(23, window.getFirstPage());
+		Assert.assertEquals(24 + 6, window.getLastPage());
+
+		// and up
+		window.onIdle();
+		window.onScroll(1100, 10, COUNT, 300);
+		Assert.assertTrue(window.isScrollingBack());
+		Assert.assertTrue(window.getFirstPage() < 21);
+		Assert.assertEquals(23, window.getLastPage());
+	}
+
+	@Test
+	public void testWindowIsClampedToTheData() {
+		PageWindow window = new PageWindow(PAGE_SIZE, 8);
+		window.onScroll(0, 10, 120, 0);
+		Assert.assertEquals(0, window.getFirstPage());
+		Assert.assertEquals(1, window.getLastPage());
+		Assert.assertFalse(window.isWanted(3));
+	}
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.activity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit test for the page loading of PagedAdapter.
+ * @author m.koziarkiewicz
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PagedAdapterTest {
+
+	private static final int PAGE_SIZE = 10;
+
+	private static final int COUNT = 100;
+
+	private QueuedExecutor executor;
+
+	private List<Integer> loadedStarts;
+
+	private PagedAdapter<Integer> adapter;
+
+	@Before
+	public void setUp() throws Exception {
+		executor = new QueuedExecutor();
+		loadedStarts = new ArrayList<Integer>();
+		PagedDataSource<Integer> source = new PagedDataSource<Integer>() {
+			public int getCount() {
+				return COUNT;
+			}
+
+			public List<Integer> loadPage(int start, int count) {
+				loadedStarts.add(start);
+				List<Integer> rows = new ArrayList<Integer>();
+				for (int i = 0; i < count; i++) {
+					rows.add(start + i);
+				}
+				return rows;
+			}
+		};
+		adapter = new PagedAdapter<Integer>(source, PAGE_SIZE, 4, executor) {
+			@Override
+			protected View getView(int position, Integer item,
+					View convertView, ViewGroup parent) {
+				return convertView;
+			}
+		};
+		adapter.refresh();
+		executor.runAll();
+		Assert.assertEquals(COUNT, adapter.getCount());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Robolectric.unPauseMainLooper();
+	}
+
+	@Test
+	public void testWantedPagesAreLoaded() throws Exception {
+		Assert.assertNull(adapter.getItem(5));
+		adapter.onScroll(null, 0, PAGE_SIZE, COUNT);
+		executor.runAll();
+
+		Assert.assertEquals(Integer.valueOf(5), adapter.getItem(5));
+		Assert.assertTrue(adapter.isLoaded(PAGE_SIZE));
+		Assert.assertFalse(adapter.isLoaded(2 * PAGE_SIZE));
+		// each page once, the visible one first
+		Assert.assertEquals(2, loadedStarts.size());
+		Assert.assertEquals(Integer.valueOf(0), loadedStarts.get(0));
+
+		adapter.onScroll(null, 5 * PAGE_SIZE, PAGE_SIZE, COUNT);
+		executor.runAll();
+		Assert.assertTrue(adapter.isLoaded(5 * PAGE_SIZE));
+		Assert.assertFalse(adapter.isLoaded(0));
+		Assert.assertTrue(adapter.getLoadedPageCount() <= 4);
+	}
+
+	@Test
+	public void testSkippedPageIsLoadedWhenScrolledBackTo() throws Exception {
+		adapter.onScroll(null, 0, PAGE_SIZE, COUNT);
+		adapter.onScroll(null, 5 * PAGE_SIZE, PAGE_SIZE, COUNT);
+
+		// the loading thread skips the first page, but the list is back on
+		// it before the UI thread hears of that
+		Robolectric.pauseMainLooper();
+		executor.runAll();
+		Assert.assertFalse(loadedStarts.contains(0));
+		adapter.onScroll(null, 0, PAGE_SIZE, COUNT);
+		Robolectric.unPauseMainLooper();
+
+		executor.runAll();
+		Assert.assertTrue(loadedStarts.contains(0));
+		Assert.assertTrue(adapter.isLoaded(0));
+	}
+
+	@Test
+	public void testPagesLoadOffTheListThread() throws Exception {
+		Assert.assertNotSame(ListFeature.getLoadExecutor(),
+				PagedAdapter.getPageExecutor());
+	}
+
+	/**
+	 * Runs the tasks when told to, on the calling thread.
+	 */
+	private static class QueuedExecutor implements Executor {
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			while (!tasks.isEmpty()) {
+				tasks.remove(0).run();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import junit.framework.Assert;
+
+import org.actimo.feature.memory.MemoryBudget;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.graphics.Bitmap;
+
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import com.xtremelabs.robolectric.internal.Implementation;
+import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.shadows.ShadowBitmap;
+
+/**
+ * Unit test for the cache and pool of BitmapCacheFeature.
+ * @author m.koziarkiewicz
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BitmapCacheFeatureTest {
+
+	/** The size of a 10x10 ARGB_8888 bitmap. */
+	private static final int SIZE = 10 * 10 * 4;
+
+	private BitmapCacheFeature feature;
+
+	@Before
+	public void setUp() throws Exception {
+		Robolectric.bindShadowClass(PoolableShadowBitmap.class);
+		feature = new BitmapCacheFeature();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		// the cache and the pool are process-wide
+		MemoryBudget.get().trimTo(0);
+		MemoryBudget.get().setBudget(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void testReleasedBitmapIsReused() throws Exception {
+		Bitmap bitmap = feature.obtain(10, 10, Bitmap.Config.ARGB_8888);
+		feature.release(bitmap);
+		Assert.assertEquals(SIZE, feature.getPoolSize());
+
+		Assert.assertSame(bitmap,
+				feature.obtain(10, 10, Bitmap.Config.ARGB_8888));
+		Assert.assertEquals(0, feature.getPoolSize());
+		Assert.assertNotSame(bitmap,
+				feature.obtain(10, 10, Bitmap.Config.ARGB_8888));
+	}
+
+	@Test
+	public void testPoolRejectsMismatchedBitmaps() throws Exception {
+		Bitmap bitmap = feature.obtain(10, 10, Bitmap.Config.ARGB_8888);
+		feature.release(bitmap);
+
+		Assert.assertNotSame(bitmap,
+				feature.obtain(10, 20, Bitmap.Config.ARGB_8888));
+		Assert.assertNotSame(bitmap,
+				feature.obtain(20, 10, Bitmap.Config.ARGB_8888));
+		Assert.assertNotSame(bitmap,
+				feature.obtain(10, 10, Bitmap.Config.RGB_565));
+		Assert.assertEquals(SIZE, feature.getPoolSize());
+
+		// neither immutable nor recycled bitmaps are pooled
+		Bitmap immutable = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+		shadow(immutable).mutable = false;
+		feature.release(immutable);
+		Bitmap recycled = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+		recycled.recycle();
+		feature.release(recycled);
+		Assert.assertEquals(SIZE, feature.getPoolSize());
+	}
+
+	@Test
+	public void testPoolIsEvictedBeforeCache() throws Exception {
+		MemoryBudget.get().setBudget(2 * SIZE);
+		long evictions = feature.getEvictionCount();
+		Bitmap first = feature.obtain(10, 10, Bitmap.Config.ARGB_8888);
+		Bitmap pooled = feature.obtain(10, 10, Bitmap.Config.ARGB_8888);
+		feature.put("first", first);
+		feature.release(pooled);
+		Assert.assertEquals(SIZE, feature.getPoolSize());
+
+		// the pool makes room first, recycling what it held
+		Bitmap second = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+		feature.put("second", second);
+		Assert.assertEquals(0, feature.getPoolSize());
+		Assert.assertTrue(pooled.isRecycled());
+		Assert.assertEquals(2 * SIZE, feature.getCacheSize());
+		Assert.assertEquals(evictions, feature.getEvictionCount());
+
+		// then the least recently used cached bitmap, which is not recycled
+		feature.get("first");
+		feature.put("third", Bitmap.createBitmap(10, 10,
+				Bitmap.Config.ARGB_8888));
+		Assert.assertNull(feature.get("second"));
+		Assert.assertSame(first, feature.get("first"));
+		Assert.assertFalse(second.isRecycled());
+		Assert.assertEquals(0, feature.getPoolSize());
+		Assert.assertEquals(evictions + 1, feature.getEvictionCount());
+	}
+
+	private static PoolableShadowBitmap shadow(Bitmap bitmap) {
+		return (PoolableShadowBitmap) Robolectric.shadowOf(bitmap);
+	}
+
+	/**
+	 * Adds what the pool looks at to the stock shadow.
+	 */
+	@Implements(Bitmap.class)
+	public static class PoolableShadowBitmap extends ShadowBitmap {
+		private Bitmap.Config config;
+		private boolean mutable = true;
+		private boolean recycled;
+
+		@Implementation
+		public static Bitmap createBitmap(int width, int height,
+				Bitmap.Config config) {
+			Bitmap bitmap = ShadowBitmap.createBitmap(width, height, config);
+			shadow(bitmap).config = config;
+			return bitmap;
+		}
+
+		@Implementation
+		public Bitmap.Config getConfig() {
+			return config;
+		}
+
+		@Implementation
+		public boolean isMutable() {
+			return mutable;
+		}
+
+		@Implementation
+		public int getRowBytes() {
+			return getWidth() * (config == Bitmap.Config.RGB_565 ? 2 : 4);
+		}
+
+		@Implementation
+		public void eraseColor(int color) {
+		}
+
+		@Implementation
+		public void recycle() {
+			recycled = true;
+		}
+
+		@Implementation
+		public boolean isRecycled() {
+			return recycled;
+		}
+	}
+
+}
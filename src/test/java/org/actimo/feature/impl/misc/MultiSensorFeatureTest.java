@@ -0,0 +1,121 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.app.Activity;
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.os.HandlerThread;
+
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+import com.xtremelabs.robolectric.internal.Implementation;
+import com.xtremelabs.robolectric.internal.Implements;
+
+/**
+ * Unit test for the sensor thread and the buffers of MultiSensorFeature.
+ * @author m.koziarkiewicz
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MultiSensorFeatureTest {
+
+	private SensorManager sensorManager;
+
+	private MultiSensorFeature feature;
+
+	@Before
+	public void setUp() throws Exception {
+		Robolectric.bindShadowClass(QuitRecordingShadowHandlerThread.class);
+		sensorManager = RecordingShadowSensorManager.newSensorManager();
+		RecordingShadowSensorManager.shadow(sensorManager).missing
+				.add(Sensor.TYPE_MAGNETIC_FIELD);
+		feature = new MultiSensorFeature(Sensor.TYPE_ACCELEROMETER,
+				Sensor.TYPE_MAGNETIC_FIELD);
+		feature.setActivity(new Activity() {
+			@Override
+			public Object getSystemService(String name) {
+				return Context.SENSOR_SERVICE.equals(name) ? sensorManager
+						: super.getSystemService(name);
+			}
+		});
+		feature.onCreate(null);
+	}
+
+	@Test
+	public void testThreadLivesWhileResumed() throws Exception {
+		RecordingShadowSensorManager sensors = RecordingShadowSensorManager
+				.shadow(sensorManager);
+		Assert.assertTrue(feature.hasSensor(Sensor.TYPE_ACCELEROMETER));
+		Assert.assertFalse(feature.hasSensor(Sensor.TYPE_MAGNETIC_FIELD));
+		Assert.assertNull(feature.getSensorThread());
+
+		feature.onResume();
+		HandlerThread first = feature.getSensorThread();
+		Assert.assertNotNull(first);
+		Assert.assertTrue(first.getState() != Thread.State.NEW);
+		Assert.assertFalse(shadow(first).quit);
+		// only the sensor present is registered, with a handler for the thread
+		Assert.assertEquals(1, sensors.registrations);
+		Assert.assertEquals(1, sensors.handlers.size());
+		Assert.assertNotNull(sensors.handlers.values().iterator().next());
+
+		feature.onPause();
+		Assert.assertNull(feature.getSensorThread());
+		Assert.assertTrue(shadow(first).quit);
+		Assert.assertTrue(sensors.delays.isEmpty());
+
+		// every resume gets a thread of its own
+		feature.onResume();
+		HandlerThread second = feature.getSensorThread();
+		Assert.assertNotSame(first, second);
+		Assert.assertTrue(second.getState() != Thread.State.NEW);
+		Assert.assertEquals(2, sensors.registrations);
+		feature.onPause();
+		Assert.assertTrue(shadow(second).quit);
+	}
+
+	@Test
+	public void testFedSamplesAreBufferedByType() throws Exception {
+		feature.feedSample(Sensor.TYPE_ACCELEROMETER, 1L,
+				new float[] { 1, 2, 3 });
+		feature.feedSample(Sensor.TYPE_MAGNETIC_FIELD, 2L,
+				new float[] { 4, 5, 6 });
+		feature.feedSample(Sensor.TYPE_LIGHT, 3L, new float[] { 7 });
+
+		Assert.assertEquals(1,
+				feature.bufferFor(Sensor.TYPE_ACCELEROMETER).size());
+		Assert.assertEquals(1,
+				feature.bufferFor(Sensor.TYPE_MAGNETIC_FIELD).size());
+		Assert.assertNull(feature.bufferFor(Sensor.TYPE_LIGHT));
+	}
+
+	private static QuitRecordingShadowHandlerThread shadow(HandlerThread thread) {
+		return (QuitRecordingShadowHandlerThread) Robolectric.shadowOf_(thread);
+	}
+
+	/**
+	 * Records whether the thread has been asked to quit.
+	 */
+	@Implements(HandlerThread.class)
+	public static class QuitRecordingShadowHandlerThread {
+		private boolean quit;
+
+		@Implementation
+		public boolean quit() {
+			quit = true;
+			return true;
+		}
+	}
+
+}
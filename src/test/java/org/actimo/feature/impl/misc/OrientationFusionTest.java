@@ -0,0 +1,50 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import android.hardware.Sensor;
+
+/**
+ * Unit test for the orientation computed by OrientationFusion.
+ * @author m.koziarkiewicz
+ *
+ */
+public class OrientationFusionTest {
+
+	private static final float DELTA = 1e-4f;
+
+	@Test
+	public void testAzimuthOfFlatDevice() {
+		OrientationFusion fusion = new OrientationFusion();
+		Assert.assertFalse(fusion.onSample(Sensor.TYPE_ACCELEROMETER, 0L,
+				new float[] { 0, 0, 9.81f }));
+
+		// the field points to the top of the device: facing north
+		Assert.assertTrue(fusion.onSample(Sensor.TYPE_MAGNETIC_FIELD, 1L,
+				new float[] { 0, 22, -40 }));
+		Assert.assertEquals(0f, fusion.getOrientation()[0], DELTA);
+		Assert.assertEquals(0f, fusion.getOrientation()[1], DELTA);
+		Assert.assertEquals(0f, fusion.getOrientation()[2], DELTA);
+
+		// the field points to the left of the device: facing east
+		Assert.assertTrue(fusion.onSample(Sensor.TYPE_MAGNETIC_FIELD, 2L,
+				new float[] { -22, 0, -40 }));
+		Assert.assertEquals((float) Math.PI / 2, fusion.getOrientation()[0], DELTA);
+	}
+
+	@Test
+	public void testFieldParallelToGravityIsRejected() {
+		OrientationFusion fusion = new OrientationFusion();
+		fusion.onSample(Sensor.TYPE_ACCELEROMETER, 0L, new float[] { 0, 0, 9.81f });
+		Assert.assertFalse(fusion.onSample(Sensor.TYPE_MAGNETIC_FIELD, 1L,
+				new float[] { 0, 0, -40 }));
+	}
+
+}
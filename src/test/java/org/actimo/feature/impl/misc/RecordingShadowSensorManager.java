@@ -0,0 +1,97 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.internal.Implementation;
+import com.xtremelabs.robolectric.internal.Implements;
+
+/**
+ * A sensor manager shadow with a sensor of every type, which records the
+ * listeners registered with it.
+ * @author m.koziarkiewicz
+ *
+ */
+@Implements(SensorManager.class)
+public class RecordingShadowSensorManager {
+
+	final Map<Integer, Sensor> sensors = new HashMap<Integer, Sensor>();
+
+	final Map<SensorEventListener, Integer> delays = new HashMap<SensorEventListener, Integer>();
+
+	final Map<SensorEventListener, Handler> handlers = new HashMap<SensorEventListener, Handler>();
+
+	/** Types reported as missing. */
+	final Set<Integer> missing = new HashSet<Integer>();
+
+	/** Whether registrations fail, as they do with a busy sensor. */
+	boolean rejecting;
+
+	int registrations;
+
+	static SensorManager newSensorManager() {
+		Robolectric.bindShadowClass(RecordingShadowSensorManager.class);
+		return Robolectric.newInstanceOf(SensorManager.class);
+	}
+
+	static RecordingShadowSensorManager shadow(SensorManager sensorManager) {
+		return (RecordingShadowSensorManager) Robolectric
+				.shadowOf_(sensorManager);
+	}
+
+	@Implementation
+	public Sensor getDefaultSensor(int type) {
+		if (missing.contains(type)) {
+			return null;
+		}
+		Sensor sensor = sensors.get(type);
+		if (sensor == null) {
+			sensor = Robolectric.newInstanceOf(Sensor.class);
+			sensors.put(type, sensor);
+		}
+		return sensor;
+	}
+
+	@Implementation
+	public boolean registerListener(SensorEventListener listener,
+			Sensor sensor, int rate) {
+		return registerListener(listener, sensor, rate, null);
+	}
+
+	@Implementation
+	public boolean registerListener(SensorEventListener listener,
+			Sensor sensor, int rate, Handler handler) {
+		if (rejecting) {
+			return false;
+		}
+		delays.put(listener, rate);
+		handlers.put(listener, handler);
+		registrations++;
+		return true;
+	}
+
+	@Implementation
+	public void unregisterListener(SensorEventListener listener) {
+		delays.remove(listener);
+		handlers.remove(listener);
+	}
+
+	@Implementation
+	public void unregisterListener(SensorEventListener listener, Sensor sensor) {
+		unregisterListener(listener);
+	}
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the stock sensor filters.
+ * @author m.koziarkiewicz
+ *
+ */
+public class SensorFiltersTest {
+
+	private static final long PERIOD = 10000000L;
+
+	@Test
+	public void testMedianRemovesSpikes() {
+		SensorPipeline pipeline = new SensorPipeline(1,
+				SensorFilters.median(1, 3));
+		float[] input = { 1, 1, 50, 1, 2, 2 };
+		float[] expected = { 1, 1, 1, 1, 2, 2 };
+		for (int i = 0; i < input.length; i++) {
+			Assert.assertTrue(pipeline.process(i * PERIOD, new float[] { input[i] }));
+			Assert.assertEquals(expected[i], pipeline.getOutput()[0], 0f);
+		}
+	}
+
+	@Test
+	public void testHighPassRemovesConstantComponent() {
+		SensorPipeline pipeline = new SensorPipeline(3,
+				SensorFilters.highPass(3, 0.05f));
+		float[] gravity = { 0, 0, 9.81f };
+		for (int i = 0; i < 200; i++) {
+			pipeline.process(i * PERIOD, gravity);
+		}
+		Assert.assertEquals(0f, pipeline.getOutput()[2], 0.01f);
+	}
+
+	@Test
+	public void testDecimationAndThresholdChain() {
+		SensorPipeline pipeline = new SensorPipeline(1,
+				SensorFilters.decimation(2), SensorFilters.threshold(5));
+		float[] input = { 10, 10, 10, 0, 0, 0, 10, 0 };
+		boolean[] expected = { true, false, false, false, false, false, true, false };
+		for (int i = 0; i < input.length; i++) {
+			Assert.assertEquals("sample " + i, expected[i],
+					pipeline.process(i * PERIOD, new float[] { input[i] }));
+		}
+	}
+
+}
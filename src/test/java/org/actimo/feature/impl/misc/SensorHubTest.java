@@ -0,0 +1,142 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+import com.xtremelabs.robolectric.Robolectric;
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit test for the shared registrations of SensorHub.
+ * @author m.koziarkiewicz
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SensorHubTest {
+
+	private static final int TYPE = Sensor.TYPE_ACCELEROMETER;
+
+	/** Shorter than any of the nominal sampling periods. */
+	private static final long STEP = 20000000L;
+
+	private RecordingShadowSensorManager sensors;
+
+	private SensorHub hub;
+
+	@Before
+	public void setUp() throws Exception {
+		SensorManager sensorManager = RecordingShadowSensorManager
+				.newSensorManager();
+		sensors = RecordingShadowSensorManager.shadow(sensorManager);
+		hub = new SensorHub(sensorManager);
+	}
+
+	@Test
+	public void testSubscribersShareRegistration() throws Exception {
+		CountingListener slow = new CountingListener();
+		CountingListener fast = new CountingListener();
+		Assert.assertTrue(hub.subscribe(Robolectric.application, TYPE,
+				SensorManager.SENSOR_DELAY_NORMAL, slow));
+		Assert.assertTrue(hub.subscribe(Robolectric.application, TYPE,
+				SensorManager.SENSOR_DELAY_GAME, fast));
+
+		// a single listener, at the fastest delay
+		Assert.assertEquals(1, sensors.delays.size());
+		Assert.assertEquals(Integer.valueOf(SensorManager.SENSOR_DELAY_GAME),
+				sensors.delays.values().iterator().next());
+		Assert.assertEquals(SensorManager.SENSOR_DELAY_GAME,
+				hub.getRegisteredDelay(TYPE));
+		Assert.assertEquals(2, hub.getSubscriberCount(TYPE));
+
+		// the same delay does not register again
+		int registrations = sensors.registrations;
+		Assert.assertTrue(hub.subscribe(Robolectric.application, TYPE,
+				SensorManager.SENSOR_DELAY_NORMAL, new CountingListener()));
+		Assert.assertEquals(registrations, sensors.registrations);
+
+		hub.unsubscribe(TYPE, fast);
+		Assert.assertEquals(SensorManager.SENSOR_DELAY_NORMAL,
+				hub.getRegisteredDelay(TYPE));
+		Assert.assertEquals(1, sensors.delays.size());
+	}
+
+	@Test
+	public void testSubscribersAreThrottledToTheirDelay() throws Exception {
+		CountingListener fastest = new CountingListener();
+		CountingListener ui = new CountingListener();
+		hub.subscribe(Robolectric.application, TYPE,
+				SensorManager.SENSOR_DELAY_FASTEST, fastest);
+		hub.subscribe(Robolectric.application, TYPE,
+				SensorManager.SENSOR_DELAY_UI, ui);
+
+		SensorEventListener channel = sensors.delays.keySet().iterator()
+				.next();
+		SensorEvent event = Robolectric.newInstanceOf(SensorEvent.class);
+		for (int i = 0; i < 10; i++) {
+			event.timestamp = i * STEP;
+			channel.onSensorChanged(event);
+		}
+		Assert.assertEquals(10, fastest.events);
+		// at 0, 60, 120 and 180 ms
+		Assert.assertEquals(4, ui.events);
+	}
+
+	@Test
+	public void testLastUnsubscribeUnregisters() throws Exception {
+		CountingListener first = new CountingListener();
+		CountingListener second = new CountingListener();
+		hub.subscribe(Robolectric.application, TYPE,
+				SensorManager.SENSOR_DELAY_UI, first);
+		hub.subscribe(Robolectric.application, TYPE,
+				SensorManager.SENSOR_DELAY_UI, second);
+
+		hub.unsubscribe(TYPE, first);
+		hub.unsubscribe(TYPE, first);
+		Assert.assertEquals(1, sensors.delays.size());
+
+		hub.unsubscribe(TYPE, second);
+		Assert.assertTrue(sensors.delays.isEmpty());
+		Assert.assertEquals(-1, hub.getRegisteredDelay(TYPE));
+		Assert.assertEquals(0, hub.getSubscriberCount(TYPE));
+	}
+
+	@Test
+	public void testFailedRegistrationDoesNotSubscribe() throws Exception {
+		sensors.missing.add(Sensor.TYPE_LIGHT);
+		Assert.assertFalse(hub.subscribe(Robolectric.application,
+				Sensor.TYPE_LIGHT, SensorManager.SENSOR_DELAY_UI,
+				new CountingListener()));
+		Assert.assertEquals(0, hub.getSubscriberCount(Sensor.TYPE_LIGHT));
+
+		sensors.rejecting = true;
+		Assert.assertFalse(hub.subscribe(Robolectric.application, TYPE,
+				SensorManager.SENSOR_DELAY_UI, new CountingListener()));
+		Assert.assertEquals(0, hub.getSubscriberCount(TYPE));
+		Assert.assertEquals(-1, hub.getRegisteredDelay(TYPE));
+	}
+
+	private static class CountingListener implements SensorEventListener {
+		private int events;
+
+		public void onSensorChanged(SensorEvent event) {
+			events++;
+		}
+
+		public void onAccuracyChanged(Sensor sensor, int accuracy) {
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for SensorRecorder and SensorReplay round trips.
+ * @author m.koziarkiewicz
+ *
+ */
+public class SensorRecordingTest {
+
+	private static final int SENSOR_TYPE = 1;
+
+	/** More than a single mapped chunk. */
+	private static final int SAMPLES = 10000;
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("actimo-recording", ".bin");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		SensorRecorder recorder = new SensorRecorder(file, SENSOR_TYPE, 3);
+		for (int i = 0; i < SAMPLES; i++) {
+			recorder.write(i * 1000L, new float[] { i, -i, 0.5f * i });
+		}
+		recorder.close();
+
+		SensorReplay replay = new SensorReplay(file);
+		Assert.assertEquals(SENSOR_TYPE, replay.getSensorType());
+		Assert.assertEquals(SAMPLES, replay.getSampleCount());
+		for (int i = 0; i < SAMPLES; i++) {
+			Assert.assertTrue(replay.next());
+			Assert.assertEquals(i * 1000L, replay.getTimestamp());
+			Assert.assertEquals(-i, replay.getValues()[1], 0f);
+			Assert.assertEquals(0.5f * i, replay.getValues()[2], 0f);
+		}
+		Assert.assertFalse(replay.next());
+
+		replay.rewind();
+		Assert.assertTrue(replay.next());
+		Assert.assertEquals(0L, replay.getTimestamp());
+	}
+
+	@Test
+	public void testUnclosedRecordingIsReadable() throws Exception {
+		SensorRecorder recorder = new SensorRecorder(file, SENSOR_TYPE, 1);
+		recorder.write(1L, new float[] { 1, 2 });
+		recorder.write(2L, new float[0]);
+
+		SensorReplay replay = new SensorReplay(file);
+		Assert.assertEquals(2, replay.getSampleCount());
+		Assert.assertTrue(replay.next());
+		Assert.assertEquals(1f, replay.getValues()[0], 0f);
+		Assert.assertTrue(replay.next());
+		Assert.assertEquals(0f, replay.getValues()[0], 0f);
+		Assert.assertFalse(replay.next());
+		recorder.close();
+	}
+
+	@Test
+	public void testReplayToFeatureKeepsSensorType() throws Exception {
+		SensorRecorder recorder = new SensorRecorder(file, SENSOR_TYPE, 3);
+		for (int i = 0; i < 3; i++) {
+			recorder.write(i, new float[] { i, i, i });
+		}
+		recorder.close();
+
+		final int[] types = new int[3];
+		MultiSensorFeature feature = new MultiSensorFeature(SENSOR_TYPE) {
+			private int count;
+
+			@Override
+			protected void onSample(int sensorType, long timestamp,
+					float[] values) {
+				types[count++] = sensorType;
+			}
+		};
+		Assert.assertEquals(3, new SensorReplay(file).replay(feature, 0));
+		Assert.assertEquals(3, feature.bufferFor(SENSOR_TYPE).size());
+		for (int type : types) {
+			Assert.assertEquals(SENSOR_TYPE, type);
+		}
+	}
+
+	@Test
+	public void testCorruptHeaderIsRejected() throws Exception {
+		new SensorRecorder(file, SENSOR_TYPE, 3).close();
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		raw.seek(12);
+		raw.writeInt(0);
+		raw.close();
+
+		try {
+			new SensorReplay(file);
+			Assert.fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
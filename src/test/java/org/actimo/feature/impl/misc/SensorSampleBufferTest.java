@@ -0,0 +1,124 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for SensorSampleBuffer.
+ * @author m.koziarkiewicz
+ *
+ */
+public class SensorSampleBufferTest {
+
+	private static final int CAPACITY = 4;
+
+	@Test
+	public void testSamplesAreDrainedOldestFirst() {
+		SensorSampleBuffer buffer = new SensorSampleBuffer(CAPACITY, 2);
+		buffer.write(1L, new float[] { 1, -1 });
+		buffer.write(2L, new float[] { 2, -2 });
+		buffer.write(3L, new float[] { 3, -3 });
+
+		long[] timestamps = new long[CAPACITY];
+		float[] values = new float[CAPACITY * 2];
+		Assert.assertEquals(2, buffer.drain(timestamps, values, 2));
+		Assert.assertEquals(1L, timestamps[0]);
+		Assert.assertEquals(2L, timestamps[1]);
+		Assert.assertEquals(-1f, values[1], 0f);
+		Assert.assertEquals(2f, values[2], 0f);
+		Assert.assertEquals(1, buffer.size());
+
+		buffer.write(4L, new float[] { 4, -4 });
+		Assert.assertEquals(2, buffer.drain(timestamps, values, CAPACITY));
+		Assert.assertEquals(3L, timestamps[0]);
+		Assert.assertEquals(4L, timestamps[1]);
+		Assert.assertEquals(-4f, values[3], 0f);
+		Assert.assertEquals(0, buffer.size());
+		Assert.assertEquals(0, buffer.drain(timestamps, values, CAPACITY));
+	}
+
+	@Test
+	public void testWritesWrapAround() {
+		SensorSampleBuffer buffer = new SensorSampleBuffer(CAPACITY, 1);
+		long[] timestamps = new long[CAPACITY];
+		float[] values = new float[CAPACITY];
+		long next = 0;
+		// drain partially, so that the samples straddle the end of the array
+		for (int round = 0; round < 3 * CAPACITY; round++) {
+			long first = next - buffer.size();
+			buffer.write(next, new float[] { next });
+			next++;
+			buffer.write(next, new float[] { next });
+			next++;
+			Assert.assertEquals(1, buffer.drain(timestamps, values, 1));
+			Assert.assertEquals(first, timestamps[0]);
+			Assert.assertEquals(first, values[0], 0f);
+			if (buffer.size() == CAPACITY - 1) {
+				int drained = buffer.drain(timestamps, values, CAPACITY);
+				for (int i = 0; i < drained; i++) {
+					Assert.assertEquals(first + 1 + i, timestamps[i]);
+				}
+			}
+		}
+		Assert.assertEquals(0L, buffer.getDroppedCount());
+	}
+
+	@Test
+	public void testWriterLappingReaderDropsOldest() {
+		SensorSampleBuffer buffer = new SensorSampleBuffer(CAPACITY, 1);
+		for (int i = 0; i < 2 * CAPACITY + 1; i++) {
+			buffer.write(i, new float[] { i });
+		}
+		Assert.assertEquals(CAPACITY, buffer.size());
+		Assert.assertEquals(CAPACITY + 1, buffer.getDroppedCount());
+
+		long[] timestamps = new long[CAPACITY];
+		float[] values = new float[CAPACITY];
+		Assert.assertEquals(CAPACITY, buffer.drain(timestamps, values, CAPACITY));
+		for (int i = 0; i < CAPACITY; i++) {
+			Assert.assertEquals(CAPACITY + 1 + i, timestamps[i]);
+			Assert.assertEquals(CAPACITY + 1 + i, values[i], 0f);
+		}
+
+		// the count is cumulative, and not reset by draining
+		buffer.write(0L, new float[] { 0 });
+		Assert.assertEquals(CAPACITY + 1, buffer.getDroppedCount());
+	}
+
+	@Test
+	public void testSamplesArePaddedAndTruncated() {
+		SensorSampleBuffer buffer = new SensorSampleBuffer(CAPACITY, 3);
+		buffer.write(1L, new float[] { 1 });
+		buffer.write(2L, new float[] { 1, 2, 3, 4 });
+
+		long[] timestamps = new long[2];
+		float[] values = { 9, 9, 9, 9, 9, 9, 9 };
+		Assert.assertEquals(2, buffer.drain(timestamps, values, 2));
+		Assert.assertEquals(0f, values[1], 0f);
+		Assert.assertEquals(0f, values[2], 0f);
+		Assert.assertEquals(3f, values[5], 0f);
+		Assert.assertEquals(9f, values[6], 0f);
+	}
+
+	@Test
+	public void testClearDiscardsSamples() {
+		SensorSampleBuffer buffer = new SensorSampleBuffer(CAPACITY, 1);
+		buffer.write(1L, new float[] { 1 });
+		buffer.write(2L, new float[] { 2 });
+		buffer.clear();
+		Assert.assertEquals(0, buffer.size());
+
+		buffer.write(3L, new float[] { 3 });
+		long[] timestamps = new long[CAPACITY];
+		Assert.assertEquals(1,
+				buffer.drain(timestamps, new float[CAPACITY], CAPACITY));
+		Assert.assertEquals(3L, timestamps[0]);
+	}
+
+}
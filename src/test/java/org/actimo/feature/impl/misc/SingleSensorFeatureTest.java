@@ -0,0 +1,89 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.app.Activity;
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorManager;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+
+/**
+ * Unit test for the registration of SingleSensorFeature.
+ * @author m.koziarkiewicz
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SingleSensorFeatureTest {
+
+	private SensorManager sensorManager;
+
+	private RecordingShadowSensorManager sensors;
+
+	@Before
+	public void setUp() throws Exception {
+		sensorManager = RecordingShadowSensorManager.newSensorManager();
+		sensors = RecordingShadowSensorManager.shadow(sensorManager);
+	}
+
+	@Test
+	public void testRegisteredDelayIsTracked() throws Exception {
+		SingleSensorFeature feature = createFeature(Sensor.TYPE_ACCELEROMETER);
+		feature.onResume();
+		Assert.assertEquals(SensorManager.SENSOR_DELAY_UI,
+				feature.getCurrentDelay());
+		Assert.assertEquals(1, sensors.delays.size());
+
+		feature.onPause();
+		Assert.assertEquals(-1, feature.getCurrentDelay());
+		Assert.assertTrue(sensors.delays.isEmpty());
+	}
+
+	@Test
+	public void testFailedRegistrationIsNotTracked() throws Exception {
+		sensors.missing.add(Sensor.TYPE_LIGHT);
+		SingleSensorFeature missing = createFeature(Sensor.TYPE_LIGHT);
+		missing.onResume();
+		Assert.assertEquals(-1, missing.getCurrentDelay());
+		Assert.assertEquals(0, sensors.registrations);
+		missing.onPause();
+
+		sensors.rejecting = true;
+		SingleSensorFeature rejected = createFeature(Sensor.TYPE_ACCELEROMETER);
+		rejected.onResume();
+		Assert.assertEquals(-1, rejected.getCurrentDelay());
+		Assert.assertEquals(0L,
+				rejected.getTimeAtDelay(SensorManager.SENSOR_DELAY_UI));
+		rejected.onPause();
+		Assert.assertTrue(sensors.delays.isEmpty());
+	}
+
+	private SingleSensorFeature createFeature(int sensorType) {
+		SingleSensorFeature feature = new SingleSensorFeature(sensorType,
+				SensorManager.SENSOR_DELAY_UI) {
+			public void onSensorChanged(SensorEvent event) {
+			}
+		};
+		feature.setActivity(new Activity() {
+			@Override
+			public Object getSystemService(String name) {
+				return Context.SENSOR_SERVICE.equals(name) ? sensorManager
+						: super.getSystemService(name);
+			}
+		});
+		feature.onCreate(null);
+		return feature;
+	}
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.impl.misc;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import android.hardware.SensorManager;
+
+/**
+ * Unit test for the rate decisions of StabilityRatePolicy.
+ * @author m.koziarkiewicz
+ *
+ */
+public class StabilityRatePolicyTest {
+
+	private static final long MILLI = 1000000L;
+
+	@Test
+	public void testIdlesWhenStableAndWakesOnActivity() {
+		StabilityRatePolicy policy = new StabilityRatePolicy(
+				SensorManager.SENSOR_DELAY_GAME, SensorManager.SENSOR_DELAY_NORMAL,
+				SensorManager.SENSOR_DELAY_UI, 0.5f, 100);
+		int delay = policy.getInitialDelay();
+		Assert.assertEquals(SensorManager.SENSOR_DELAY_GAME, delay);
+
+		float[] still = { 0, 0, 9.8f };
+		for (long t = 0; t <= 150; t += 10) {
+			delay = policy.onSample(t * MILLI, still, delay);
+		}
+		Assert.assertEquals(SensorManager.SENSOR_DELAY_NORMAL, delay);
+
+		delay = policy.onSample(160 * MILLI, new float[] { 2, 0, 9.8f }, delay);
+		Assert.assertEquals(SensorManager.SENSOR_DELAY_GAME, delay);
+
+		delay = policy.onWindowFocusChanged(false, delay);
+		Assert.assertEquals(SensorManager.SENSOR_DELAY_UI, delay);
+		delay = policy.onSample(170 * MILLI, new float[] { 5, 0, 9.8f }, delay);
+		Assert.assertEquals(SensorManager.SENSOR_DELAY_UI, delay);
+	}
+
+}
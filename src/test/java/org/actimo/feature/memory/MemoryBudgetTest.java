@@ -0,0 +1,74 @@
+/**
+ * Copyright 2011 Actimo contributors.
+ * This project is subject to the 2-clause BSD License, as outlined
+ * in the LICENSE file.
+ */
+package org.actimo.feature.memory;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the eviction order of MemoryBudget.
+ * @author m.koziarkiewicz
+ *
+ */
+public class MemoryBudgetTest {
+
+	private static final SizeEstimator<byte[]> ARRAY_SIZE = new SizeEstimator<byte[]>() {
+		public long sizeOf(byte[] value) {
+			return value.length;
+		}
+	};
+
+	private MemoryBudget budget;
+
+	private LruMemoryCache<String, byte[]> low;
+
+	private LruMemoryCache<String, byte[]> high;
+
+	@Before
+	public void setUp() throws Exception {
+		budget = MemoryBudget.get();
+		low = new LruMemoryCache<String, byte[]>(ARRAY_SIZE, budget);
+		high = new LruMemoryCache<String, byte[]>(ARRAY_SIZE, budget);
+		budget.register("high", high, 1);
+		budget.register("low", low, 0);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		budget.unregister("low");
+		budget.unregister("high");
+		budget.setBudget(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void testOverflowEvictsLowestPriorityFirst() throws Exception {
+		budget.setBudget(300);
+		low.put("a", new byte[100]);
+		low.put("b", new byte[100]);
+		high.put("c", new byte[100]);
+		Assert.assertEquals(300, budget.size());
+
+		high.put("d", new byte[100]);
+		Assert.assertEquals(300, budget.size());
+		Assert.assertNull(low.get("a"));
+		Assert.assertNotNull(low.get("b"));
+		Assert.assertNotNull(high.get("c"));
+
+		// "c" was used more recently than "d"
+		budget.onBackground();
+		Assert.assertEquals(100, budget.size());
+		Assert.assertNull(high.get("d"));
+		Assert.assertNotNull(high.get("c"));
+
+		budget.onLowMemory();
+		Assert.assertEquals(0, budget.size());
+		Assert.assertSame(high, budget.getCache("high"));
+	}
+
+}